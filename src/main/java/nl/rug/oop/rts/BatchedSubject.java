@@ -0,0 +1,18 @@
+package nl.rug.oop.rts;
+
+/**
+ * Subject whose changes can be grouped into transactions, so its observers are notified once per transaction instead
+ * of once per change.
+ */
+public interface BatchedSubject extends Subject {
+    /**
+     * Begin a transaction. Until it is committed, observers are not notified. Transactions can be nested.
+     */
+    void beginChange();
+
+    /**
+     * Commit a transaction. When the outermost transaction is committed, every observer that missed a notification
+     * is notified once.
+     */
+    void commitChange();
+}
@@ -0,0 +1,79 @@
+package nl.rug.oop.rts;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Coalesces the notifications of one or more subjects. Outside a transaction, observers are notified right away.
+ * Inside a transaction, every observer that should be notified is remembered, and when the outermost transaction is
+ * committed, each of them is notified exactly once.
+ * Transactions can be nested. A batch is not thread safe, it should only be used by the thread that changes the model.
+ */
+public class ChangeBatch {
+    private int depth = 0;
+    private final Set<Observer> pending = new LinkedHashSet<>();
+    private final Runnable onCommit;
+
+    /**
+     * Constructor for a batch.
+     */
+    public ChangeBatch() {
+        this(() -> { });
+    }
+
+    /**
+     * Constructor for a batch that runs something whenever the outermost transaction is committed, before the
+     * observers are notified.
+     * @param onCommit What to run, for example delivering the changes that were collected during the transaction.
+     */
+    public ChangeBatch(Runnable onCommit) {
+        this.onCommit = onCommit;
+    }
+
+    /**
+     * Begin a transaction. Every call should be followed by a call to {@link #commit()}.
+     */
+    public void begin() {
+        depth++;
+    }
+
+    /**
+     * Commit a transaction. If it is the outermost one, the observers that were notified during it are notified once.
+     */
+    public void commit() {
+        if (depth == 0) {
+            throw new IllegalStateException("No transaction to commit");
+        }
+        depth--;
+        if (depth > 0) {
+            return;
+        }
+        onCommit.run();
+        // copy first, an observer might start a new transaction.
+        List<Observer> toNotify = new ArrayList<>(pending);
+        pending.clear();
+        for (Observer observer : toNotify) {
+            observer.update();
+        }
+    }
+
+    public boolean isOpen() {
+        return depth > 0;
+    }
+
+    /**
+     * Notify observers, or remember them until the transaction is committed.
+     * @param observers The observers.
+     */
+    public void notifyObservers(List<Observer> observers) {
+        if (depth > 0) {
+            pending.addAll(observers);
+            return;
+        }
+        for (Observer observer : observers) {
+            observer.update();
+        }
+    }
+}
@@ -2,12 +2,22 @@ package nl.rug.oop.rts;
 
 import nl.rug.oop.rts.graph.Graph;
 import nl.rug.oop.rts.simulation.Simulation;
+import nl.rug.oop.rts.simulation.events.AsyncEventSink;
+import nl.rug.oop.rts.swing.EventLogPanel;
 import nl.rug.oop.rts.swing.Frame;
 
 /**
  * Main class of the application. Add more details here.
  */
 public class Main {
+    /**
+     * The maximum amount of event messages waiting to be shown. Events beyond that are counted but not shown.
+     */
+    private static final int EVENT_QUEUE_CAPACITY = 1000;
+    /**
+     * The maximum amount of steps that can be rewound.
+     */
+    private static final int HISTORY_STEPS = 500;
 
     /**
      * Main function. Add more details here.
@@ -19,7 +29,9 @@ public class Main {
         Graph graph = new Graph();
         // TEMP: initializing graph
         // END TEMP
-        Simulation sim = new Simulation(graph);
-        Frame frame = new Frame(graph, sim);
+        EventLogPanel eventLog = new EventLogPanel();
+        Simulation sim = new Simulation(graph, new AsyncEventSink(EVENT_QUEUE_CAPACITY, eventLog));
+        sim.setHistorySize(HISTORY_STEPS);
+        Frame frame = new Frame(graph, sim, eventLog);
     }
 }
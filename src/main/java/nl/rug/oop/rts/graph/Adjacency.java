@@ -0,0 +1,110 @@
+package nl.rug.oop.rts.graph;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Index of the neighbours of a node: for every edge of the node, the node on the other side and the edge itself, kept
+ * in two parallel arrays. Looking up the neighbours does not walk the edges or allocate anything. Kept up to date by
+ * the node whenever an edge is added or removed.
+ * Nodes with many neighbours also keep the position of every neighbour in a map, so checking if a node is a neighbour
+ * takes constant time. Few neighbours are faster to scan, so small nodes do not have the map.
+ */
+class Adjacency {
+    /**
+     * The amount of neighbours above which their positions are kept in a map.
+     */
+    private static final int INDEXED_SIZE = 16;
+    private Node[] nodes = new Node[4];
+    private Edge[] edges = new Edge[4];
+    private int size = 0;
+    /**
+     * The first position of every neighbour, or null if there are too few neighbours to need it.
+     */
+    private Map<Node, Integer> positions;
+
+    /**
+     * Add a neighbour.
+     * @param node The node on the other side of the edge.
+     * @param edge The edge that leads to it.
+     */
+    void add(Node node, Edge edge) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            edges = Arrays.copyOf(edges, size * 2);
+        }
+        nodes[size] = node;
+        edges[size] = edge;
+        if (positions != null) {
+            positions.putIfAbsent(node, size);
+        }
+        size++;
+        if (positions == null && size > INDEXED_SIZE) {
+            indexPositions();
+        }
+    }
+
+    /**
+     * Remove the neighbour an edge leads to. The other neighbours keep their order, which is the order of the edges
+     * of the node, so seeded simulations pick the same neighbours as before.
+     * @param edge The edge.
+     */
+    void remove(Edge edge) {
+        for (int i = 0; i < size; i++) {
+            if (edges[i] == edge) {
+                size--;
+                System.arraycopy(nodes, i + 1, nodes, i, size - i);
+                System.arraycopy(edges, i + 1, edges, i, size - i);
+                nodes[size] = null;
+                edges[size] = null;
+                // the neighbours after the removed one moved, so their positions are counted again.
+                positions = null;
+                if (size > INDEXED_SIZE) {
+                    indexPositions();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Find the position of a neighbour.
+     * @param node The neighbour.
+     * @return The position, or -1 if the node is not a neighbour.
+     */
+    int indexOf(Node node) {
+        if (positions != null) {
+            Integer position = positions.get(node);
+            return position == null ? -1 : position;
+        }
+        for (int i = 0; i < size; i++) {
+            if (nodes[i] == node) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Put the first position of every neighbour in the map.
+     */
+    private void indexPositions() {
+        positions = new IdentityHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            positions.putIfAbsent(nodes[i], i);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    Node getNode(int index) {
+        return nodes[index];
+    }
+
+    Edge getEdge(int index) {
+        return edges[index];
+    }
+}
@@ -23,4 +23,23 @@ public interface ArmyLocation {
     List<Army> getArmiesPresent();
 
     List<ArmyLocation> getAdjacentLocations();
+
+    /**
+     * Let this location know that the amount of units of one of its armies changed.
+     * @param army The army.
+     * @param change The amount of units that were added, negative if units were removed.
+     */
+    void unitsChanged(Army army, int change);
+
+    int getArmiesNum(int teamNum);
+
+    int getUnitsNum(int teamNum);
+
+    /**
+     * Check if armies of both teams are present at this location, so a battle takes place here.
+     * @return Whether this location is contested.
+     */
+    default boolean isContested() {
+        return getArmiesNum(0) > 0 && getArmiesNum(1) > 0;
+    }
 }
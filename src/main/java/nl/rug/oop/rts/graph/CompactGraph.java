@@ -0,0 +1,650 @@
+package nl.rug.oop.rts.graph;
+
+import nl.rug.oop.rts.simulation.Army;
+import nl.rug.oop.rts.simulation.events.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact graph for maps with millions of locations, meant for headless simulations.
+ * Nodes and edges are numbers instead of objects. The positions of the nodes and the ends of the edges are kept in
+ * primitive arrays, and the neighbours of every node in compressed sparse row form: the neighbours of node n and the
+ * edges leading to them are at positions {@code adjacencyStart[n]} up to {@code adjacencyStart[n + 1]} of two shared
+ * arrays, in the order of the edges.
+ * Only locations that have armies or events get a {@link Location} object holding them; it is dropped again once it
+ * is empty. Like {@link Graph}, this graph keeps track of its occupied and contested locations and counts the armies
+ * and units of both teams. It has no observers or listeners. To show a compact graph, convert it with
+ * {@link #toGraph()}.
+ * The graph can be split into regions with {@link #partition(int)}. Every node belongs to a region and every edge to
+ * the region of its first node. The occupied and contested locations and the army counts are kept per region, so
+ * different threads can change the armies of different regions at the same time.
+ */
+public class CompactGraph {
+    private final int nodesNum;
+    private final int edgesNum;
+    private final int[] nodeX;
+    private final int[] nodeY;
+    /**
+     * For every edge, the two nodes it connects: edge e connects node {@code edgeNodes[2 * e]} and node
+     * {@code edgeNodes[2 * e + 1]}.
+     */
+    private final int[] edgeNodes;
+    private final int[] adjacencyStart;
+    private final int[] adjacentNodes;
+    private final int[] adjacentEdges;
+    /**
+     * The location objects of the nodes followed by those of the edges, null for empty locations.
+     */
+    private final Location[] locations;
+    /**
+     * For every node, the region it belongs to. Null if the graph is not partitioned.
+     */
+    private int[] nodeRegions;
+    private Region[] regions = {new Region()};
+
+    /**
+     * Constructor for compact graph. The arrays are used as they are instead of being copied.
+     * @param nodeX For every node, its x coordinate.
+     * @param nodeY For every node, its y coordinate.
+     * @param edgeNodes For every edge, the two nodes it connects, one after the other.
+     */
+    public CompactGraph(int[] nodeX, int[] nodeY, int[] edgeNodes) {
+        if (nodeX.length != nodeY.length || edgeNodes.length % 2 != 0) {
+            throw new IllegalArgumentException("Every node needs two coordinates and every edge two nodes");
+        }
+        this.nodesNum = nodeX.length;
+        this.edgesNum = edgeNodes.length / 2;
+        this.nodeX = nodeX;
+        this.nodeY = nodeY;
+        this.edgeNodes = edgeNodes;
+        this.adjacencyStart = new int[nodesNum + 1];
+        for (int node : edgeNodes) {
+            if (node < 0 || node >= nodesNum) {
+                throw new IllegalArgumentException("An edge connects node " + node + ", but there are only "
+                        + nodesNum + " nodes");
+            }
+            adjacencyStart[node + 1]++;
+        }
+        for (int node = 0; node < nodesNum; node++) {
+            adjacencyStart[node + 1] += adjacencyStart[node];
+        }
+        this.adjacentNodes = new int[edgeNodes.length];
+        this.adjacentEdges = new int[edgeNodes.length];
+        int[] filled = new int[nodesNum];
+        for (int edge = 0; edge < edgesNum; edge++) {
+            int node1 = edgeNodes[2 * edge];
+            int node2 = edgeNodes[2 * edge + 1];
+            addNeighbour(node1, node2, edge, filled);
+            addNeighbour(node2, node1, edge, filled);
+        }
+        this.locations = new Location[nodesNum + edgesNum];
+    }
+
+    /**
+     * Put a neighbour of a node in the next free position of its row.
+     * @param node The node.
+     * @param neighbour The neighbour.
+     * @param edge The edge that connects them.
+     * @param filled For every node, the amount of neighbours that were put in its row so far.
+     */
+    private void addNeighbour(int node, int neighbour, int edge, int[] filled) {
+        int position = adjacencyStart[node] + filled[node]++;
+        adjacentNodes[position] = neighbour;
+        adjacentEdges[position] = edge;
+    }
+
+    /**
+     * Create a compact graph with the same nodes, edges, events and armies as a graph. Nodes and edges are numbered
+     * in the order of the lists of the graph. The armies are copies that share their units with the originals until
+     * one of them changes. The names of the nodes and edges are not kept.
+     * @param graph The graph.
+     * @return The compact graph.
+     */
+    public static CompactGraph of(Graph graph) {
+        List<Node> nodes = graph.getNodes();
+        List<Edge> edges = graph.getEdges();
+        Map<ArmyLocation, Integer> numbers = new IdentityHashMap<>();
+        int[] nodeX = new int[nodes.size()];
+        int[] nodeY = new int[nodes.size()];
+        for (int node = 0; node < nodes.size(); node++) {
+            nodeX[node] = nodes.get(node).getPos().x;
+            nodeY[node] = nodes.get(node).getPos().y;
+            numbers.put(nodes.get(node), node);
+        }
+        int[] edgeNodes = new int[2 * edges.size()];
+        for (int edge = 0; edge < edges.size(); edge++) {
+            edgeNodes[2 * edge] = numbers.get(edges.get(edge).getNodes().get(0));
+            edgeNodes[2 * edge + 1] = numbers.get(edges.get(edge).getNodes().get(1));
+            numbers.put(edges.get(edge), nodes.size() + edge);
+        }
+        CompactGraph compact = new CompactGraph(nodeX, nodeY, edgeNodes);
+        for (Map.Entry<ArmyLocation, Integer> entry : numbers.entrySet()) {
+            for (Event event : entry.getKey().getEvents()) {
+                compact.getLocation(entry.getValue()).addEvent(event);
+            }
+        }
+        // copy the armies in the order the locations got them, so the copy keeps track of them in the same order.
+        for (ArmyLocation location : graph.getOccupiedLocations()) {
+            Location locationCopy = compact.getLocation(numbers.get(location));
+            for (Army army : location.getArmiesPresent()) {
+                Army armyCopy = army.copy(locationCopy);
+                armyCopy.setDestination(army.getOnWayTo() == null ? -1 : numbers.get(army.getOnWayTo()));
+                locationCopy.addArmy(armyCopy);
+            }
+        }
+        return compact;
+    }
+
+    /**
+     * Create a regular graph with the same nodes, edges, events and armies as this graph, for example to show it.
+     * This creates an object for every node and edge, so it is only meant for maps of the size that can be shown.
+     * The armies are copies that share their units with the originals until one of them changes.
+     * @return The graph. It has no observers.
+     */
+    public Graph toGraph() {
+        Graph graph = new Graph();
+        List<ArmyLocation> copies = new ArrayList<>(nodesNum + edgesNum);
+        for (int node = 0; node < nodesNum; node++) {
+            Node nodeCopy = new Node(node, "node" + node, nodeX[node], nodeY[node]);
+            graph.addNode(nodeCopy);
+            copies.add(nodeCopy);
+        }
+        for (int edge = 0; edge < edgesNum; edge++) {
+            Edge edgeCopy = new Edge(edge + 1, "edge" + (edge + 1), graph.getNodes().get(edgeNodes[2 * edge]),
+                    graph.getNodes().get(edgeNodes[2 * edge + 1]));
+            graph.addEdge(edgeCopy);
+            copies.add(edgeCopy);
+        }
+        for (int location = 0; location < locations.length; location++) {
+            if (locations[location] != null) {
+                for (Event event : locations[location].getEvents()) {
+                    copies.get(location).addEvent(event);
+                }
+            }
+        }
+        for (ArmyLocation location : getOccupiedLocations()) {
+            ArmyLocation locationCopy = copies.get(((Location) location).number);
+            for (Army army : location.getArmiesPresent()) {
+                Army armyCopy = army.copy(locationCopy);
+                armyCopy.setOnWayTo(army.getDestination() < 0 ? null : graph.getNodes().get(army.getDestination()));
+                locationCopy.addArmy(armyCopy);
+            }
+        }
+        return graph;
+    }
+
+    public int getNodesNum() {
+        return nodesNum;
+    }
+
+    public int getEdgesNum() {
+        return edgesNum;
+    }
+
+    public int getNodeX(int node) {
+        return nodeX[node];
+    }
+
+    public int getNodeY(int node) {
+        return nodeY[node];
+    }
+
+    /**
+     * Get one of the nodes an edge connects.
+     * @param edge The edge.
+     * @param end 0 for the first node, 1 for the second.
+     * @return The node.
+     */
+    public int getEdgeNode(int edge, int end) {
+        return edgeNodes[2 * edge + end];
+    }
+
+    /**
+     * Get the amount of nodes a node is connected to, one for every edge.
+     * @param node The node.
+     * @return The amount of adjacent nodes.
+     */
+    public int getAdjacentNodesNum(int node) {
+        return adjacencyStart[node + 1] - adjacencyStart[node];
+    }
+
+    /**
+     * Get one of the nodes a node is connected to. They are in the order of the edges.
+     * @param node The node.
+     * @param index The index of the adjacent node, from 0 up to {@link #getAdjacentNodesNum(int)}.
+     * @return The adjacent node.
+     */
+    public int getAdjacentNode(int node, int index) {
+        return adjacentNodes[adjacencyStart[node] + index];
+    }
+
+    /**
+     * Get the edge that leads to one of the nodes a node is connected to.
+     * @param node The node.
+     * @param index The index of the adjacent node, from 0 up to {@link #getAdjacentNodesNum(int)}.
+     * @return The edge between the node and {@link #getAdjacentNode(int, int)}.
+     */
+    public int getAdjacentEdge(int node, int index) {
+        return adjacentEdges[adjacencyStart[node] + index];
+    }
+
+    /**
+     * Get the edge that connects two nodes.
+     * @param node The first node.
+     * @param other The other node.
+     * @return The edge, or -1 if the nodes are not connected.
+     */
+    public int getEdgeTo(int node, int other) {
+        for (int position = adjacencyStart[node]; position < adjacencyStart[node + 1]; position++) {
+            if (adjacentNodes[position] == other) {
+                return adjacentEdges[position];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Split the graph into regions of about the same amount of nodes. Every region is grown from an unassigned node
+     * by visiting its neighbours breadth first, so the nodes of a region are close to each other and few edges cross
+     * between regions. The locations that are occupied are then kept track of in the order of their numbers.
+     * @param regionsNum The amount of regions.
+     */
+    public void partition(int regionsNum) {
+        if (regionsNum < 1) {
+            throw new IllegalArgumentException("There should be at least one region, but there were " + regionsNum);
+        }
+        int[] assigned = new int[nodesNum];
+        Arrays.fill(assigned, -1);
+        int[] queue = new int[nodesNum];
+        int next = 0;
+        int assignedNum = 0;
+        for (int region = 0; region < regionsNum; region++) {
+            // the remaining nodes are divided evenly over the remaining regions.
+            int size = (nodesNum - assignedNum) / (regionsNum - region);
+            int head = 0;
+            int tail = 0;
+            while (tail < size) {
+                if (head == tail) {
+                    while (assigned[next] >= 0) {
+                        next++;
+                    }
+                    assigned[next] = region;
+                    queue[tail++] = next;
+                }
+                int node = queue[head++];
+                for (int position = adjacencyStart[node]; position < adjacencyStart[node + 1] && tail < size;
+                        position++) {
+                    int neighbour = adjacentNodes[position];
+                    if (assigned[neighbour] < 0) {
+                        assigned[neighbour] = region;
+                        queue[tail++] = neighbour;
+                    }
+                }
+            }
+            assignedNum += size;
+        }
+        setRegions(assigned, regionsNum);
+    }
+
+    /**
+     * Split the graph into given regions.
+     * @param nodeRegions For every node, the region it belongs to, from 0 up to the amount of regions.
+     * @param regionsNum The amount of regions.
+     */
+    public void setRegions(int[] nodeRegions, int regionsNum) {
+        if (nodeRegions.length != nodesNum) {
+            throw new IllegalArgumentException("Every node needs a region");
+        }
+        this.nodeRegions = nodeRegions;
+        regions = new Region[regionsNum];
+        for (int region = 0; region < regionsNum; region++) {
+            regions[region] = new Region();
+        }
+        for (Location location : locations) {
+            if (location != null) {
+                for (Army army : location.armiesPresent) {
+                    count(location, army, 1);
+                }
+                locationChanged(location);
+            }
+        }
+    }
+
+    public int getRegionsNum() {
+        return regions.length;
+    }
+
+    public int getNodeRegion(int node) {
+        return nodeRegions == null ? 0 : nodeRegions[node];
+    }
+
+    public int getEdgeRegion(int edge) {
+        return getNodeRegion(edgeNodes[2 * edge]);
+    }
+
+    /**
+     * Get the location of a node, to add armies or events to it.
+     * @param node The node.
+     * @return The location.
+     */
+    public Location getNodeLocation(int node) {
+        return getLocation(node);
+    }
+
+    /**
+     * Get the location of an edge, to add armies or events to it.
+     * @param edge The edge.
+     * @return The location.
+     */
+    public Location getEdgeLocation(int edge) {
+        return getLocation(nodesNum + edge);
+    }
+
+    /**
+     * Get a location by its number without creating it.
+     * @param number The number of the location: the node, or the amount of nodes plus the edge.
+     * @return The location, or null if it has no armies or events.
+     */
+    public Location getLocationIfPresent(int number) {
+        return locations[number];
+    }
+
+    /**
+     * Get a location by its number, creating its object if the location is empty. Only the thread that changes the
+     * region of the location should call this.
+     * @param number The number of the location: the node, or the amount of nodes plus the edge.
+     * @return The location.
+     */
+    public Location getLocation(int number) {
+        if (locations[number] == null) {
+            locations[number] = new Location(number);
+        }
+        return locations[number];
+    }
+
+    /**
+     * Get the locations that have at least one army. If the graph is not partitioned, they are in the order in which
+     * they got their first army, otherwise region by region.
+     * @return A read-only view of the occupied locations, or a copy if the graph is partitioned.
+     */
+    public Set<ArmyLocation> getOccupiedLocations() {
+        if (regions.length == 1) {
+            return getOccupiedLocations(0);
+        }
+        Set<ArmyLocation> result = new LinkedHashSet<>();
+        for (Region region : regions) {
+            result.addAll(region.occupiedLocations);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Get the locations that have armies of both teams, so a battle takes place there.
+     * @return A read-only view of the contested locations, or a copy if the graph is partitioned.
+     */
+    public Set<ArmyLocation> getContestedLocations() {
+        if (regions.length == 1) {
+            return getContestedLocations(0);
+        }
+        Set<ArmyLocation> result = new LinkedHashSet<>();
+        for (Region region : regions) {
+            result.addAll(region.contestedLocations);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Get the locations of a region that have at least one army, in the order in which they got their first army.
+     * @param region The region.
+     * @return A read-only view of the occupied locations.
+     */
+    public Set<ArmyLocation> getOccupiedLocations(int region) {
+        return Collections.unmodifiableSet(regions[region].occupiedLocations);
+    }
+
+    /**
+     * Get the locations of a region that have armies of both teams.
+     * @param region The region.
+     * @return A read-only view of the contested locations.
+     */
+    public Set<ArmyLocation> getContestedLocations(int region) {
+        return Collections.unmodifiableSet(regions[region].contestedLocations);
+    }
+
+    /**
+     * Count the armies of a team in the whole graph. Should not be called while regions are being changed.
+     * @param teamNum The team.
+     * @return The amount of armies.
+     */
+    public int getArmiesNum(int teamNum) {
+        int armiesNum = 0;
+        for (Region region : regions) {
+            armiesNum += region.teamArmies[teamNum];
+        }
+        return armiesNum;
+    }
+
+    /**
+     * Count the units of a team in the whole graph. Should not be called while regions are being changed.
+     * @param teamNum The team.
+     * @return The amount of units.
+     */
+    public long getUnitsNum(int teamNum) {
+        long unitsNum = 0;
+        for (Region region : regions) {
+            unitsNum += region.teamUnits[teamNum];
+        }
+        return unitsNum;
+    }
+
+    /**
+     * Get the region a location belongs to.
+     * @param location The location.
+     * @return The region.
+     */
+    private Region regionOf(Location location) {
+        if (regions.length == 1) {
+            return regions[0];
+        }
+        return regions[location.isNode() ? getNodeRegion(location.number) : getEdgeRegion(location.getIndex())];
+    }
+
+    /**
+     * Add an army to the totals of its team in the region of its location, or take it out.
+     * @param location The location of the army.
+     * @param army The army.
+     * @param sign 1 to add the army, -1 to take it out.
+     */
+    private void count(Location location, Army army, int sign) {
+        Region region = regionOf(location);
+        int team = army.getFaction().getTeamNum();
+        region.teamArmies[team] += sign;
+        region.teamUnits[team] += (long) sign * army.getUnitsNum();
+    }
+
+    /**
+     * Update the occupied and contested locations after the armies at a location changed, and drop the location if
+     * it became empty.
+     * @param location The location.
+     */
+    private void locationChanged(Location location) {
+        Region region = regionOf(location);
+        if (location.getArmiesNum(0) + location.getArmiesNum(1) == 0) {
+            region.occupiedLocations.remove(location);
+            if (location.events.isEmpty()) {
+                locations[location.number] = null;
+            }
+        } else {
+            region.occupiedLocations.add(location);
+        }
+        if (location.isContested()) {
+            region.contestedLocations.add(location);
+        } else {
+            region.contestedLocations.remove(location);
+        }
+    }
+
+    /**
+     * The locations with armies and the army counts of one region. Only changed by one thread at a time.
+     */
+    private static class Region {
+        /**
+         * The locations that have at least one army, in the order in which they got their first army.
+         */
+        private final Set<ArmyLocation> occupiedLocations = new LinkedHashSet<>();
+        /**
+         * The locations that have armies of both teams, in the order in which they became contested.
+         */
+        private final Set<ArmyLocation> contestedLocations = new LinkedHashSet<>();
+        private final int[] teamArmies = new int[TeamCounts.TEAMS];
+        private final long[] teamUnits = new long[TeamCounts.TEAMS];
+    }
+
+    /**
+     * A node or edge of a compact graph that has armies or events. Locations are dropped once they are empty, so
+     * get them from the graph when needed instead of keeping them.
+     */
+    public final class Location implements ArmyLocation {
+        private final int number;
+        private final List<Army> armiesPresent = new ArrayList<>(2);
+        private List<Event> events = Collections.emptyList();
+        private final TeamCounts teamCounts = new TeamCounts();
+
+        /**
+         * Constructor for location.
+         * @param number The number of the location: the node, or the amount of nodes plus the edge.
+         */
+        private Location(int number) {
+            this.number = number;
+        }
+
+        /**
+         * Get the number of this location.
+         * @return The node, or the amount of nodes plus the edge.
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        public boolean isNode() {
+            return number < nodesNum;
+        }
+
+        /**
+         * Get the node or edge this location is.
+         * @return The node if this is a node, otherwise the edge.
+         */
+        public int getIndex() {
+            return isNode() ? number : number - nodesNum;
+        }
+
+        /**
+         * Make sure the graph knows this location again after it was dropped for being empty.
+         */
+        private void attach() {
+            if (locations[number] == null) {
+                locations[number] = this;
+            } else if (locations[number] != this) {
+                throw new IllegalStateException("Location " + number + " was dropped and replaced while it was kept");
+            }
+        }
+
+        @Override
+        public void addArmy(Army army) {
+            attach();
+            armiesPresent.add(army);
+            teamCounts.add(army);
+            count(this, army, 1);
+            locationChanged(this);
+        }
+
+        @Override
+        public void removeArmy(Army army) {
+            if (armiesPresent.remove(army)) {
+                teamCounts.remove(army);
+                count(this, army, -1);
+                locationChanged(this);
+            }
+        }
+
+        @Override
+        public void addEvent(Event event) {
+            attach();
+            if (events.isEmpty()) {
+                events = new ArrayList<>(1);
+            }
+            events.add(event);
+        }
+
+        @Override
+        public void removeEvent(Event event) {
+            if (events.remove(event)) {
+                locationChanged(this);
+            }
+        }
+
+        @Override
+        public List<Event> getEvents() {
+            return events;
+        }
+
+        @Override
+        public List<Army> getArmiesPresent() {
+            return armiesPresent;
+        }
+
+        /**
+         * Get the adjacent locations that have armies or events. Empty neighbours have no location object, and this
+         * does not create one, so it can be called from any region without changing the others.
+         * @return The adjacent locations that are present, in the order of the edges.
+         */
+        @Override
+        public List<ArmyLocation> getAdjacentLocations() {
+            List<ArmyLocation> result = new ArrayList<>();
+            if (isNode()) {
+                for (int position = adjacencyStart[number]; position < adjacencyStart[number + 1]; position++) {
+                    addIfPresent(result, nodesNum + adjacentEdges[position]);
+                }
+            } else {
+                addIfPresent(result, getEdgeNode(getIndex(), 0));
+                addIfPresent(result, getEdgeNode(getIndex(), 1));
+            }
+            return result;
+        }
+
+        /**
+         * Add a location to a list if it has armies or events.
+         * @param result The list.
+         * @param location The number of the location.
+         */
+        private void addIfPresent(List<ArmyLocation> result, int location) {
+            Location present = getLocationIfPresent(location);
+            if (present != null) {
+                result.add(present);
+            }
+        }
+
+        @Override
+        public void unitsChanged(Army army, int change) {
+            teamCounts.unitsChanged(army.getFaction().getTeamNum(), change);
+            regionOf(this).teamUnits[army.getFaction().getTeamNum()] += change;
+        }
+
+        @Override
+        public int getArmiesNum(int teamNum) {
+            return teamCounts.getArmies(teamNum);
+        }
+
+        @Override
+        public int getUnitsNum(int teamNum) {
+            return teamCounts.getUnits(teamNum);
+        }
+    }
+}
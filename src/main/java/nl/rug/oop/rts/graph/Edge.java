@@ -1,23 +1,29 @@
 package nl.rug.oop.rts.graph;
 
+import nl.rug.oop.rts.BatchedSubject;
+import nl.rug.oop.rts.ChangeBatch;
 import nl.rug.oop.rts.Observer;
-import nl.rug.oop.rts.Subject;
 import nl.rug.oop.rts.simulation.Army;
 import nl.rug.oop.rts.simulation.events.Event;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Edge class. Connects two nodes.
+ * Other threads than the one that changes the armies of this edge can read them with {@link #getArmiesSnapshot()}.
+ * Its events and observers change rarely, so they are copied on every change and can be read from any thread.
  */
-public class Edge implements ArmyLocation, Subject {
+public class Edge implements ArmyLocation, BatchedSubject {
     private final int id;
     private String name;
     private final List<Node> nodes;
-    private List<Army> armiesPresent = new ArrayList<>();
-    private List<Event> events = new ArrayList<>();
-    private List<Observer> observers = new ArrayList<>();
+    private final LocationArmies armiesPresent = new LocationArmies();
+    private final List<Event> events = new CopyOnWriteArrayList<>();
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+    private Graph graph;
+    private final ChangeBatch changes = new ChangeBatch();
     /**
      * Edge constructor.
      *
@@ -29,14 +35,26 @@ public class Edge implements ArmyLocation, Subject {
      */
 
     public Edge(int id, String name, Node node1, Node node2, Observer observer) {
+        this(id, name, node1, node2);
+        addObserver(observer);
+    }
+
+    /**
+     * Constructor for an edge without observers.
+     *
+     * @param id    The edge's id.
+     * @param name  The edge's name.
+     * @param node1 The first node the edge connects to.
+     * @param node2 The second node the edge connects to.
+     */
+    Edge(int id, String name, Node node1, Node node2) {
         this.id = id;
         this.name = name;
         this.nodes = new ArrayList<Node>();
-        node1.addEdge(this);
-        node2.addEdge(this);
         nodes.add(node1);
         nodes.add(node2);
-        addObserver(observer);
+        node1.addEdge(this);
+        node2.addEdge(this);
     }
 
     /**
@@ -54,6 +72,8 @@ public class Edge implements ArmyLocation, Subject {
      */
     public void addArmy(Army army) {
         armiesPresent.add(army);
+        countArmy(army);
+        fireChange(ModelChange.Type.ARMY_ADDED, army, null, army.getUnitsNum());
         updateObservers();
     }
 
@@ -62,12 +82,97 @@ public class Edge implements ArmyLocation, Subject {
      * @param army The army to be removed.
      */
     public void removeArmy(Army army) {
-        armiesPresent.remove(army);
+        if (armiesPresent.remove(army)) {
+            uncountArmy(army);
+            fireChange(ModelChange.Type.ARMY_REMOVED, army, null, army.getUnitsNum());
+        }
         updateObservers();
     }
 
     public List<Army> getArmiesPresent() {
-        return armiesPresent;
+        return armiesPresent.getView();
+    }
+
+    /**
+     * Get the armies at this edge from any thread, also while another thread moves armies.
+     * @return An immutable copy of the armies as they were after the last change.
+     */
+    public List<Army> getArmiesSnapshot() {
+        return armiesPresent.getSnapshot();
+    }
+
+    /**
+     * Replace all armies at this edge without notifying the observers. Used to restore snapshots.
+     * @param armies The armies that should be at this edge.
+     */
+    void replaceArmies(List<Army> armies) {
+        for (Army army : armiesPresent.replace(armies)) {
+            uncountArmy(army);
+        }
+        for (Army army : armies) {
+            countArmy(army);
+        }
+        fireChange(ModelChange.Type.ARMIES_REPLACED, null, null, 0);
+    }
+
+    /**
+     * Count an army that was added to this edge in the graph this edge is part of.
+     * @param army The army.
+     */
+    private void countArmy(Army army) {
+        if (graph != null) {
+            graph.armyAdded(this, army);
+        }
+    }
+
+    /**
+     * Stop counting an army that was removed from this edge in the graph this edge is part of.
+     * @param army The army.
+     */
+    private void uncountArmy(Army army) {
+        if (graph != null) {
+            graph.armyRemoved(this, army);
+        }
+    }
+
+    @Override
+    public void unitsChanged(Army army, int change) {
+        armiesPresent.unitsChanged(army.getFaction().getTeamNum(), change);
+        if (graph != null) {
+            graph.unitsChanged(army, change);
+            graph.fireChange(ModelChange.Type.UNITS_CHANGED, this, army, null, change);
+        }
+    }
+
+    @Override
+    public int getArmiesNum(int teamNum) {
+        return armiesPresent.getArmies(teamNum);
+    }
+
+    @Override
+    public int getUnitsNum(int teamNum) {
+        return armiesPresent.getUnits(teamNum);
+    }
+
+    /**
+     * Report a change to this edge to the listeners of the graph it is part of.
+     * @param type The kind of change.
+     * @param army The army that changed, or null.
+     * @param event The event that was added or removed, or null.
+     * @param amount The amount of units involved.
+     */
+    private void fireChange(ModelChange.Type type, Army army, Event event, int amount) {
+        if (graph != null) {
+            graph.fireChange(type, this, army, event, amount);
+        }
+    }
+
+    /**
+     * Set the graph this edge is part of. Only the graph itself calls this when the edge is added or removed.
+     * @param graph The graph, or null if the edge is not part of a graph.
+     */
+    void setGraph(Graph graph) {
+        this.graph = graph;
     }
 
     @Override
@@ -86,6 +191,7 @@ public class Edge implements ArmyLocation, Subject {
 
     public void setName(String newName) {
         name = newName;
+        fireChange(ModelChange.Type.RENAMED, null, null, 0);
     }
 
     /**
@@ -97,15 +203,27 @@ public class Edge implements ArmyLocation, Subject {
         return nodes;
     }
 
+    /**
+     * Get the node on the other side of this edge.
+     * @param node One of the nodes this edge connects.
+     * @return The other node. If the edge connects a node to itself, that node.
+     */
+    public Node getOtherNode(Node node) {
+        return nodes.get(0) == node ? nodes.get(1) : nodes.get(0);
+    }
+
     @Override
     public void addEvent(Event event) {
         events.add(event);
+        fireChange(ModelChange.Type.EVENT_ADDED, null, event, 0);
         updateObservers();
     }
 
     @Override
     public void removeEvent(Event event) {
-        events.remove(event);
+        if (events.remove(event)) {
+            fireChange(ModelChange.Type.EVENT_REMOVED, null, event, 0);
+        }
         updateObservers();
     }
 
@@ -121,8 +239,29 @@ public class Edge implements ArmyLocation, Subject {
 
     @Override
     public void updateObservers() {
-        for (Observer observer: observers) {
-            observer.update();
-        }
+        batch().notifyObservers(observers);
+    }
+
+    /**
+     * Begin a transaction. If this edge is part of a graph, this begins a transaction on the whole graph. The edge
+     * should not be added to or removed from a graph during a transaction.
+     */
+    @Override
+    public void beginChange() {
+        batch().begin();
+    }
+
+    @Override
+    public void commitChange() {
+        batch().commit();
+    }
+
+    /**
+     * Get the batch this edge notifies its observers through: the one of its graph, or its own if it is not part of
+     * a graph.
+     * @return The batch.
+     */
+    private ChangeBatch batch() {
+        return graph != null ? graph.getChanges() : changes;
     }
 }
@@ -1,29 +1,62 @@
 package nl.rug.oop.rts.graph;
 
+import nl.rug.oop.rts.BatchedSubject;
+import nl.rug.oop.rts.ChangeBatch;
 import nl.rug.oop.rts.Observer;
-import nl.rug.oop.rts.Subject;
 import nl.rug.oop.rts.simulation.Army;
+import nl.rug.oop.rts.simulation.events.Event;
 
 import java.awt.*;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Graph class.
+ * Keeps track of which of its locations have armies and which have armies of both teams, so the simulation only has
+ * to visit those instead of every node and edge. It also counts the armies and units of both teams in the whole graph.
+ * The nodes and edges of the graph report every change to their armies. The amount of units can also change while
+ * battles at different locations are fought at the same time, so the unit totals are atomic.
+ * Besides notifying its observers that something changed, the graph can tell {@link ModelListener}s exactly what
+ * changed.
+ * Threads that read the graph while another thread simulates it, like the one that paints it, read the nodes and edges
+ * and the armies of every location through their snapshots, or take the read lock of {@link #getLock()} for anything
+ * else. Keeping track of the occupied and contested locations is synchronized, so armies at different locations can be
+ * moved from different threads.
  */
-public class Graph implements Subject {
-    private List<Node> nodes;
-    private List<Edge> edges;
-    private List<Observer> observers;
-
+public class Graph implements BatchedSubject {
+    private final SnapshotList<Node> nodes = new SnapshotList<>();
+    private final SnapshotList<Edge> edges = new SnapshotList<>();
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
     /**
-     * Graph Constructor.
+     * The locations that have at least one army, in the order in which they got their first army.
      */
-    public Graph() {
-        this.nodes = new ArrayList<>();
-        this.edges = new ArrayList<>();
-        this.observers = new ArrayList<>();
-    }
+    private final Set<ArmyLocation> occupiedLocations = new LinkedHashSet<>();
+    /**
+     * The locations that have armies of both teams, in the order in which they became contested.
+     */
+    private final Set<ArmyLocation> contestedLocations = new LinkedHashSet<>();
+    private final int[] teamArmies = new int[TeamCounts.TEAMS];
+    private final AtomicLongArray teamUnits = new AtomicLongArray(TeamCounts.TEAMS);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Coalesces the notifications of the graph and of its nodes and edges during transactions.
+     */
+    private final ChangeBatch changes = new ChangeBatch(this::deliverChanges);
+    /**
+     * Changes are reported from the thread that changes the graph, but units can also change on the threads that
+     * resolve battles at the same time, so the listeners can be read and the pending changes written from any thread.
+     */
+    private final List<ModelListener> modelListeners = new CopyOnWriteArrayList<>();
+    private final List<ModelChange> pendingChanges = new ArrayList<>();
 
     /**
      * Add an observer to the observers list.
@@ -39,17 +72,127 @@ public class Graph implements Subject {
      */
     @Override
     public void updateObservers() {
-        for (Observer observer : observers) {
-            observer.update();
+        changes.notifyObservers(observers);
+    }
+
+    /**
+     * Begin a transaction on this graph and on all its nodes and edges. Until the outermost transaction is committed,
+     * none of their observers are notified. Used for example while running many steps of a simulation.
+     */
+    @Override
+    public void beginChange() {
+        changes.begin();
+    }
+
+    /**
+     * Commit a transaction. When the outermost transaction is committed, every observer of the graph, its nodes and
+     * its edges that missed a notification is notified once.
+     */
+    @Override
+    public void commitChange() {
+        changes.commit();
+    }
+
+    /**
+     * Add a listener that is told about every single change to this graph and its nodes and edges.
+     * @param listener The listener.
+     */
+    public void addModelListener(ModelListener listener) {
+        modelListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener that was added with {@link #addModelListener(ModelListener)}.
+     * @param listener The listener.
+     */
+    public void removeModelListener(ModelListener listener) {
+        modelListeners.remove(listener);
+    }
+
+    /**
+     * Deliver the changes kept so far in the current transaction to the listeners right away, without notifying the
+     * observers. Useful for listeners that group the changes themselves, for example per simulation step.
+     */
+    public void flushChanges() {
+        deliverChanges();
+    }
+
+    /**
+     * Report a change to the listeners, or keep it until the current transaction is committed. Does nothing if there
+     * are no listeners. Called by the graph and its nodes and edges.
+     * @param type The kind of change.
+     * @param location The location where the change happened.
+     * @param army The army that changed, or null.
+     * @param event The event that was added or removed, or null.
+     * @param amount The amount of units involved.
+     */
+    void fireChange(ModelChange.Type type, ArmyLocation location, Army army, Event event, int amount) {
+        if (modelListeners.isEmpty()) {
+            return;
+        }
+        ModelChange change = new ModelChange(type, location, army, event, amount);
+        if (changes.isOpen()) {
+            synchronized (pendingChanges) {
+                pendingChanges.add(change);
+            }
+            return;
+        }
+        for (ModelListener listener : modelListeners) {
+            listener.changed(change);
+        }
+    }
+
+    /**
+     * Deliver the changes that were kept during a transaction.
+     */
+    private void deliverChanges() {
+        List<ModelChange> delivered;
+        synchronized (pendingChanges) {
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+            delivered = new ArrayList<>(pendingChanges);
+            pendingChanges.clear();
+        }
+        for (ModelChange change : delivered) {
+            for (ModelListener listener : modelListeners) {
+                listener.changed(change);
+            }
         }
     }
 
+    /**
+     * Get the batch that the nodes and edges of this graph notify their observers through.
+     * @return The batch.
+     */
+    ChangeBatch getChanges() {
+        return changes;
+    }
+
+    /**
+     * Get the lock that guards this graph when it is simulated on another thread than the one that shows it.
+     * The simulating thread holds the write lock during a step, threads that only read the graph take the read lock.
+     * Code that changes and reads the graph on a single thread does not need it.
+     * @return The lock.
+     */
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
     /**
      * Getter for edges.
      * @return All the edges in the graph.
      */
     public List<Edge> getEdges() {
-        return edges;
+        return edges.getView();
+    }
+
+    /**
+     * Get the edges from any thread, also while another thread changes the graph.
+     * @return An immutable copy of the edges as they were after the last change.
+     */
+    public List<Edge> getEdgesSnapshot() {
+        return edges.getSnapshot();
     }
 
     /**
@@ -57,7 +200,15 @@ public class Graph implements Subject {
      * @return List of all the nodes in the graph.
      */
     public List<Node> getNodes() {
-        return nodes;
+        return nodes.getView();
+    }
+
+    /**
+     * Get the nodes from any thread, also while another thread changes the graph.
+     * @return An immutable copy of the nodes as they were after the last change.
+     */
+    public List<Node> getNodesSnapshot() {
+        return nodes.getSnapshot();
     }
 
     /**
@@ -66,6 +217,9 @@ public class Graph implements Subject {
      */
     public void addNode(Node node) {
         nodes.add(node);
+        node.setGraph(this);
+        countArmies(node, 1);
+        fireChange(ModelChange.Type.NODE_ADDED, node, null, null, 0);
         updateObservers();
     }
 
@@ -75,9 +229,15 @@ public class Graph implements Subject {
      */
     public void removeNode(Node node) {
         for (Edge edge: node.getEdges()) {
-            edges.remove(edge);
+            if (edges.remove(edge)) {
+                forget(edge);
+                fireChange(ModelChange.Type.EDGE_REMOVED, edge, null, null, 0);
+            }
+        }
+        if (nodes.remove(node)) {
+            forget(node);
+            fireChange(ModelChange.Type.NODE_REMOVED, node, null, null, 0);
         }
-        nodes.remove(node);
         updateObservers();
     }
 
@@ -87,6 +247,9 @@ public class Graph implements Subject {
      */
     public void addEdge(Edge edge) {
         edges.add(edge);
+        edge.setGraph(this);
+        countArmies(edge, 1);
+        fireChange(ModelChange.Type.EDGE_ADDED, edge, null, null, 0);
         updateObservers();
     }
 
@@ -112,7 +275,10 @@ public class Graph implements Subject {
         for (Node node : edge.getNodes()) {
             node.removeEdge(edge);
         }
-        edges.remove(edge);
+        if (edges.remove(edge)) {
+            forget(edge);
+            fireChange(ModelChange.Type.EDGE_REMOVED, edge, null, null, 0);
+        }
         updateObservers();
     }
 
@@ -121,7 +287,7 @@ public class Graph implements Subject {
      * @param pos The position at which the node should be.
      */
     public void createNode(Point pos) {
-        int amount = nodes.size();
+        int amount = nodes.getView().size();
         Node node = new Node(amount, "node" + amount, pos.x, pos.y, observers.get(0));
         addNode(node);
     }
@@ -136,8 +302,197 @@ public class Graph implements Subject {
         updateObservers();
     }
 
+    /**
+     * Get the locations that have at least one army, in the order in which they got their first army. Only the thread
+     * that changes the graph, or a thread holding the read lock, should use it.
+     * @return A read-only view of the occupied locations.
+     */
+    public Set<ArmyLocation> getOccupiedLocations() {
+        return Collections.unmodifiableSet(occupiedLocations);
+    }
+
+    /**
+     * Get the locations that have armies of both teams, so a battle takes place there.
+     * @return A read-only view of the contested locations.
+     */
+    public Set<ArmyLocation> getContestedLocations() {
+        return Collections.unmodifiableSet(contestedLocations);
+    }
+
+    public synchronized int getArmiesNum(int teamNum) {
+        return teamArmies[teamNum];
+    }
+
+    public long getUnitsNum(int teamNum) {
+        return teamUnits.get(teamNum);
+    }
+
+    /**
+     * Count an army that was added to a location of this graph. Called by the nodes and edges of this graph.
+     * @param location The location.
+     * @param army The army.
+     */
+    synchronized void armyAdded(ArmyLocation location, Army army) {
+        count(army, 1);
+        locationChanged(location);
+    }
+
+    /**
+     * Stop counting an army that was removed from a location of this graph. Called by the nodes and edges of this
+     * graph.
+     * @param location The location.
+     * @param army The army.
+     */
+    synchronized void armyRemoved(ArmyLocation location, Army army) {
+        count(army, -1);
+        locationChanged(location);
+    }
+
+    /**
+     * Count a change in the amount of units of an army in this graph. Called by the nodes and edges of this graph.
+     * @param army The army.
+     * @param change The amount of units that were added, negative if units were removed.
+     */
+    void unitsChanged(Army army, int change) {
+        teamUnits.addAndGet(army.getFaction().getTeamNum(), change);
+    }
+
+    /**
+     * Add an army to the totals of its team, or take it out.
+     * @param army The army.
+     * @param sign 1 to add the army, -1 to take it out.
+     */
+    private void count(Army army, int sign) {
+        int team = army.getFaction().getTeamNum();
+        teamArmies[team] += sign;
+        teamUnits.addAndGet(team, (long) sign * army.getUnitsNum());
+    }
+
+    /**
+     * Add all armies at a location to the totals, or take them out.
+     * @param location The location.
+     * @param sign 1 to add the armies, -1 to take them out.
+     */
+    private synchronized void countArmies(ArmyLocation location, int sign) {
+        for (Army army : location.getArmiesPresent()) {
+            count(army, sign);
+        }
+        if (sign > 0) {
+            locationChanged(location);
+        }
+    }
+
+    /**
+     * Update the occupied and contested locations after the armies at a location changed.
+     * @param location The location.
+     */
+    private void locationChanged(ArmyLocation location) {
+        if (location.getArmiesNum(0) + location.getArmiesNum(1) == 0) {
+            occupiedLocations.remove(location);
+        } else {
+            occupiedLocations.add(location);
+        }
+        if (location.isContested()) {
+            contestedLocations.add(location);
+        } else {
+            contestedLocations.remove(location);
+        }
+    }
+
+    /**
+     * Stop keeping track of a location that was removed from this graph.
+     * @param location The location.
+     */
+    private void forget(ArmyLocation location) {
+        countArmies(location, -1);
+        synchronized (this) {
+            occupiedLocations.remove(location);
+            contestedLocations.remove(location);
+        }
+        if (location instanceof Node node) {
+            node.setGraph(null);
+        } else {
+            ((Edge) location).setGraph(null);
+        }
+    }
+
+    /**
+     * Replace all armies at a location of this graph at once, without notifying the observers of the location. The
+     * armies are not told about their new location. Used to restore earlier states of the graph.
+     * @param location The location.
+     * @param armies The armies that should be at the location.
+     */
+    public void replaceArmies(ArmyLocation location, List<Army> armies) {
+        if (location instanceof Node node) {
+            node.replaceArmies(armies);
+        } else {
+            ((Edge) location).replaceArmies(armies);
+        }
+    }
+
+    /**
+     * Create a deep copy of this graph, with copies of all nodes, edges and armies.
+     * Events and factions do not change, so they are shared with the copy. The armies share their units with the
+     * originals until one of them changes. To only save and reset the armies, use a {@link GraphSnapshot}.
+     * The copy has no observers, so changing it does not update any view.
+     * @return The copy.
+     */
+    public Graph copy() {
+        Graph copy = new Graph();
+        Map<Node, Node> nodeCopies = new IdentityHashMap<>();
+        Map<ArmyLocation, ArmyLocation> locationCopies = new IdentityHashMap<>();
+        for (Node node : nodes.getView()) {
+            Node nodeCopy = new Node(node.getId(), node.getName(), node.getPos().x, node.getPos().y);
+            nodeCopies.put(node, nodeCopy);
+            locationCopies.put(node, nodeCopy);
+            copy.nodes.add(nodeCopy);
+            nodeCopy.setGraph(copy);
+        }
+        for (Edge edge : edges.getView()) {
+            Edge edgeCopy = new Edge(edge.getId(), edge.getName(),
+                    nodeCopies.get(edge.getNodes().get(0)), nodeCopies.get(edge.getNodes().get(1)));
+            locationCopies.put(edge, edgeCopy);
+            copy.edges.add(edgeCopy);
+            edgeCopy.setGraph(copy);
+        }
+        for (Map.Entry<ArmyLocation, ArmyLocation> entry : locationCopies.entrySet()) {
+            for (Event event : entry.getKey().getEvents()) {
+                entry.getValue().addEvent(event);
+            }
+        }
+        // copy the armies in the order the locations got them, so the copy keeps track of them in the same order.
+        for (ArmyLocation location : occupiedLocations) {
+            copyArmies(location, locationCopies.get(location), nodeCopies);
+        }
+        return copy;
+    }
+
+    /**
+     * Copy the armies of a location to its copy.
+     * @param location The original location.
+     * @param locationCopy The copy of the location.
+     * @param nodeCopies The copies of all nodes, used to point armies to the copy of the node they are on their way to.
+     */
+    private void copyArmies(ArmyLocation location, ArmyLocation locationCopy, Map<Node, Node> nodeCopies) {
+        for (Army army : location.getArmiesPresent()) {
+            Army armyCopy = army.copy(locationCopy);
+            armyCopy.setOnWayTo(nodeCopies.get(army.getOnWayTo()));
+            locationCopy.addArmy(armyCopy);
+        }
+    }
+
+    /**
+     * Add an army to a node of this graph. The observers of the node and the graph are notified once.
+     * @param node The node.
+     * @param army The army.
+     */
     public void addArmy(Node node, Army army) {
-        node.addArmy(army);
-        updateObservers();
+        beginChange();
+        try {
+            node.addArmy(army);
+            updateObservers();
+        } finally {
+            commitChange();
+        }
     }
 }
@@ -0,0 +1,108 @@
+package nl.rug.oop.rts.graph;
+
+import nl.rug.oop.rts.simulation.Army;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the armies in a graph, which can be restored into the graph it was taken from or into a copy of it.
+ * Only locations that have armies are stored, in the order the graph keeps track of them. The armies in the snapshot
+ * are copies that share their units with the originals until one of them changes, so restoring a snapshot takes time
+ * proportional to the amount of armies, not to the size of the graph or the amount of units. Taking a snapshot also
+ * looks up the position of every location once.
+ * The nodes, edges and events themselves are not part of the snapshot, since simulating does not change them.
+ * Taking a snapshot does not notify any observers.
+ */
+public class GraphSnapshot {
+    private final int nodesNum;
+    private final int edgesNum;
+    /**
+     * The positions of the locations that have armies in the lists of nodes and edges. Nodes come first, then edges.
+     */
+    private final int[] locations;
+    private final Army[][] armies;
+    /**
+     * For every army on an edge, which of the two nodes of the edge it is on its way to, or -1 if it is not.
+     */
+    private final int[][] onWayTo;
+
+    /**
+     * Take a snapshot of the armies in a graph.
+     * @param graph The graph.
+     */
+    public GraphSnapshot(Graph graph) {
+        nodesNum = graph.getNodes().size();
+        edgesNum = graph.getEdges().size();
+        Map<ArmyLocation, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < nodesNum + edgesNum; i++) {
+            positions.put(getLocation(graph, i), i);
+        }
+        List<ArmyLocation> occupied = new ArrayList<>(graph.getOccupiedLocations());
+        locations = new int[occupied.size()];
+        armies = new Army[occupied.size()][];
+        onWayTo = new int[occupied.size()][];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = positions.get(occupied.get(i));
+            capture(i, occupied.get(i));
+        }
+    }
+
+    /**
+     * Store copies of the armies at a location.
+     * @param i The position of the location in the snapshot.
+     * @param location The location.
+     */
+    private void capture(int i, ArmyLocation location) {
+        List<Army> present = location.getArmiesPresent();
+        armies[i] = new Army[present.size()];
+        onWayTo[i] = new int[present.size()];
+        for (int a = 0; a < present.size(); a++) {
+            Army army = present.get(a);
+            armies[i][a] = army.copy(location);
+            onWayTo[i][a] = location instanceof Edge edge ? edge.getNodes().indexOf(army.getOnWayTo()) : -1;
+        }
+    }
+
+    /**
+     * Restore the snapshot into a graph. All armies currently in the graph are replaced by copies of the armies in the
+     * snapshot, so the snapshot can be restored again later. The observers of the graph are notified once.
+     * @param graph The graph the snapshot was taken from, or a copy of it.
+     */
+    public void restore(Graph graph) {
+        if (graph.getNodes().size() != nodesNum || graph.getEdges().size() != edgesNum) {
+            throw new IllegalArgumentException("The graph does not have the layout this snapshot was taken from");
+        }
+        for (ArmyLocation location : new ArrayList<>(graph.getOccupiedLocations())) {
+            graph.replaceArmies(location, List.of());
+        }
+        for (int i = 0; i < locations.length; i++) {
+            ArmyLocation location = getLocation(graph, locations[i]);
+            List<Army> restored = new ArrayList<>(armies[i].length);
+            for (int a = 0; a < armies[i].length; a++) {
+                Army army = armies[i][a].copy(location);
+                if (onWayTo[i][a] >= 0) {
+                    army.setOnWayTo(((Edge) location).getNodes().get(onWayTo[i][a]));
+                }
+                restored.add(army);
+            }
+            graph.replaceArmies(location, restored);
+        }
+        graph.updateObservers();
+    }
+
+    /**
+     * Get a location of a graph by its position. Nodes come first, then edges.
+     * @param graph The graph.
+     * @param position The position of the location.
+     * @return The location.
+     */
+    private static ArmyLocation getLocation(Graph graph, int position) {
+        if (position < graph.getNodes().size()) {
+            return graph.getNodes().get(position);
+        }
+        return graph.getEdges().get(position - graph.getNodes().size());
+    }
+}
@@ -0,0 +1,85 @@
+package nl.rug.oop.rts.graph;
+
+import nl.rug.oop.rts.simulation.Army;
+
+import java.util.List;
+
+/**
+ * The armies at a location and their counts per team. Other threads than the one that changes the armies can read
+ * them through a snapshot, for example to paint them. The counts are only used by the thread that changes the armies.
+ */
+class LocationArmies {
+    private final SnapshotList<Army> armies = new SnapshotList<>();
+    private final TeamCounts teamCounts = new TeamCounts();
+
+    /**
+     * Add an army.
+     * @param army The army.
+     */
+    void add(Army army) {
+        armies.add(army);
+        teamCounts.add(army);
+    }
+
+    /**
+     * Remove an army.
+     * @param army The army.
+     * @return Whether the army was at the location.
+     */
+    boolean remove(Army army) {
+        if (!armies.remove(army)) {
+            return false;
+        }
+        teamCounts.remove(army);
+        return true;
+    }
+
+    /**
+     * Replace all armies at once.
+     * @param newArmies The armies that should be at the location.
+     * @return The armies that were at the location before.
+     */
+    List<Army> replace(List<Army> newArmies) {
+        List<Army> old = armies.replace(newArmies);
+        for (Army army : old) {
+            teamCounts.remove(army);
+        }
+        for (Army army : newArmies) {
+            teamCounts.add(army);
+        }
+        return old;
+    }
+
+    /**
+     * Count a change in the amount of units of one of the armies.
+     * @param team The team of the army.
+     * @param change The amount of units that were added, negative if units were removed.
+     */
+    void unitsChanged(int team, int change) {
+        teamCounts.unitsChanged(team, change);
+    }
+
+    int getArmies(int team) {
+        return teamCounts.getArmies(team);
+    }
+
+    int getUnits(int team) {
+        return teamCounts.getUnits(team);
+    }
+
+    /**
+     * Get the armies, for the thread that changes them.
+     * @return A read-only view on the armies.
+     */
+    List<Army> getView() {
+        return armies.getView();
+    }
+
+    /**
+     * Get the armies from any thread.
+     * @return An immutable copy of the armies as they were after the last change.
+     */
+    List<Army> getSnapshot() {
+        return armies.getSnapshot();
+    }
+}
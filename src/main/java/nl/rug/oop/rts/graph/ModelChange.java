@@ -0,0 +1,88 @@
+package nl.rug.oop.rts.graph;
+
+import nl.rug.oop.rts.simulation.Army;
+import nl.rug.oop.rts.simulation.events.Event;
+
+/**
+ * A single change to a graph, such as a node that moved or an army that lost units. Every change happens at a
+ * location: the node or edge that was added, removed or changed.
+ */
+public class ModelChange {
+    /**
+     * The kinds of changes.
+     */
+    public enum Type {
+        NODE_ADDED,
+        NODE_REMOVED,
+        NODE_MOVED,
+        EDGE_ADDED,
+        EDGE_REMOVED,
+        RENAMED,
+        /**
+         * An army was added. The amount is its amount of units.
+         */
+        ARMY_ADDED,
+        /**
+         * An army was removed. The amount is its amount of units.
+         */
+        ARMY_REMOVED,
+        /**
+         * All armies at the location were replaced at once, for example when a snapshot was restored.
+         */
+        ARMIES_REPLACED,
+        /**
+         * The amount of units of an army changed. The amount is the change, negative if units were lost.
+         */
+        UNITS_CHANGED,
+        EVENT_ADDED,
+        EVENT_REMOVED
+    }
+
+    private final Type type;
+    private final ArmyLocation location;
+    private final Army army;
+    private final Event event;
+    private final int amount;
+
+    /**
+     * Constructor for a change.
+     * @param type The kind of change.
+     * @param location The location where the change happened.
+     * @param army The army that changed, or null if the change is not about an army.
+     * @param event The event that was added or removed, or null if the change is not about an event.
+     * @param amount The amount of units involved, see {@link Type}. Zero if the change is not about units.
+     */
+    public ModelChange(Type type, ArmyLocation location, Army army, Event event, int amount) {
+        this.type = type;
+        this.location = location;
+        this.army = army;
+        this.event = event;
+        this.amount = amount;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public ArmyLocation getLocation() {
+        return location;
+    }
+
+    public Army getArmy() {
+        return army;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return type + " at " + location + (army != null ? " army " + army : "") + (event != null ? " event "
+                + event.getName() : "") + (amount != 0 ? " amount " + amount : "");
+    }
+}
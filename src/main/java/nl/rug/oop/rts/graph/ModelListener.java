@@ -0,0 +1,13 @@
+package nl.rug.oop.rts.graph;
+
+/**
+ * Interface for classes that want to know exactly what changed in a graph, instead of only that something changed.
+ */
+public interface ModelListener {
+    /**
+     * Called for every change to the graph, in the order the changes happened. Changes made during a transaction are
+     * delivered when the outermost transaction is committed, before the observers are notified.
+     * @param change The change.
+     */
+    void changed(ModelChange change);
+}
@@ -1,26 +1,33 @@
 package nl.rug.oop.rts.graph;
 
+import nl.rug.oop.rts.BatchedSubject;
+import nl.rug.oop.rts.ChangeBatch;
 import nl.rug.oop.rts.Observer;
-import nl.rug.oop.rts.Subject;
 import nl.rug.oop.rts.simulation.Army;
 import nl.rug.oop.rts.simulation.events.Event;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.awt.Point;
 
 /**
  * Node class.
+ * Other threads than the one that changes the armies of this node can read them with {@link #getArmiesSnapshot()}.
+ * Its events and observers change rarely, so they are copied on every change and can be read from any thread.
  */
-public class Node implements ArmyLocation, Subject {
+public class Node implements ArmyLocation, BatchedSubject {
     private final int id;
     private String name;
     private List<Edge> edges;
     private final int size = 80;
     private Point pos;
-    private List<Army> armiesPresent = new ArrayList<>();
-    private List<Event> events = new ArrayList<>();
-    private List<Observer> observers = new ArrayList<>();
+    private final LocationArmies armiesPresent = new LocationArmies();
+    private final List<Event> events = new CopyOnWriteArrayList<>();
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+    private Graph graph;
+    private final Adjacency adjacency = new Adjacency();
+    private final ChangeBatch changes = new ChangeBatch();
 
     /**
      * Node constructor.
@@ -32,11 +39,23 @@ public class Node implements ArmyLocation, Subject {
      * @param observer An observer that needs to be notified whenever this node updates.
      */
     public Node(int id, String name, int x, int y, Observer observer) {
+        this(id, name, x, y);
+        addObserver(observer);
+    }
+
+    /**
+     * Constructor for a node without observers.
+     *
+     * @param name The name of the node.
+     * @param id The node's id.
+     * @param x The x coordinate of the node.
+     * @param y The y coordinate of the node.
+     */
+    Node(int id, String name, int x, int y) {
         this.id = id;
         this.name = name;
         this.edges = new ArrayList<Edge>();
         this.pos = new Point(x, y);
-        addObserver(observer);
     }
 
     /**
@@ -45,11 +64,95 @@ public class Node implements ArmyLocation, Subject {
      */
     public void addArmy(Army army) {
         armiesPresent.add(army);
+        countArmy(army);
+        fireChange(ModelChange.Type.ARMY_ADDED, army, null, army.getUnitsNum());
         updateObservers();
     }
 
     public List<Army> getArmiesPresent() {
-        return armiesPresent;
+        return armiesPresent.getView();
+    }
+
+    /**
+     * Get the armies at this node from any thread, also while another thread moves armies.
+     * @return An immutable copy of the armies as they were after the last change.
+     */
+    public List<Army> getArmiesSnapshot() {
+        return armiesPresent.getSnapshot();
+    }
+
+    /**
+     * Replace all armies at this node without notifying the observers. Used to restore snapshots.
+     * @param armies The armies that should be at this node.
+     */
+    void replaceArmies(List<Army> armies) {
+        for (Army army : armiesPresent.replace(armies)) {
+            uncountArmy(army);
+        }
+        for (Army army : armies) {
+            countArmy(army);
+        }
+        fireChange(ModelChange.Type.ARMIES_REPLACED, null, null, 0);
+    }
+
+    /**
+     * Count an army that was added to this node in the graph this node is part of.
+     * @param army The army.
+     */
+    private void countArmy(Army army) {
+        if (graph != null) {
+            graph.armyAdded(this, army);
+        }
+    }
+
+    /**
+     * Stop counting an army that was removed from this node in the graph this node is part of.
+     * @param army The army.
+     */
+    private void uncountArmy(Army army) {
+        if (graph != null) {
+            graph.armyRemoved(this, army);
+        }
+    }
+
+    @Override
+    public void unitsChanged(Army army, int change) {
+        armiesPresent.unitsChanged(army.getFaction().getTeamNum(), change);
+        if (graph != null) {
+            graph.unitsChanged(army, change);
+            graph.fireChange(ModelChange.Type.UNITS_CHANGED, this, army, null, change);
+        }
+    }
+
+    @Override
+    public int getArmiesNum(int teamNum) {
+        return armiesPresent.getArmies(teamNum);
+    }
+
+    @Override
+    public int getUnitsNum(int teamNum) {
+        return armiesPresent.getUnits(teamNum);
+    }
+
+    /**
+     * Report a change to this node to the listeners of the graph it is part of.
+     * @param type The kind of change.
+     * @param army The army that changed, or null.
+     * @param event The event that was added or removed, or null.
+     * @param amount The amount of units involved.
+     */
+    private void fireChange(ModelChange.Type type, Army army, Event event, int amount) {
+        if (graph != null) {
+            graph.fireChange(type, this, army, event, amount);
+        }
+    }
+
+    /**
+     * Set the graph this node is part of. Only the graph itself calls this when the node is added or removed.
+     * @param graph The graph, or null if the node is not part of a graph.
+     */
+    void setGraph(Graph graph) {
+        this.graph = graph;
     }
 
     @Override
@@ -62,7 +165,10 @@ public class Node implements ArmyLocation, Subject {
      * @param army The army to be removed.
      */
     public void removeArmy(Army army) {
-        armiesPresent.remove(army);
+        if (armiesPresent.remove(army)) {
+            uncountArmy(army);
+            fireChange(ModelChange.Type.ARMY_REMOVED, army, null, army.getUnitsNum());
+        }
         updateObservers();
     }
 
@@ -86,6 +192,7 @@ public class Node implements ArmyLocation, Subject {
 
     public void setName(String newName) {
         name = newName;
+        fireChange(ModelChange.Type.RENAMED, null, null, 0);
     }
 
     /**
@@ -98,12 +205,13 @@ public class Node implements ArmyLocation, Subject {
     }
 
     /**
-     * Adds an edge to the node.
+     * Adds an edge to the node. The edge should already be connected to this node.
      *
      * @param edge The edge to add.
      */
     public void addEdge(Edge edge) {
         edges.add(edge);
+        adjacency.add(edge.getOtherNode(this), edge);
     }
 
     /**
@@ -111,18 +219,23 @@ public class Node implements ArmyLocation, Subject {
      * @param edge The edge to be removed.
      */
     public void removeEdge(Edge edge) {
-        edges.remove(edge);
+        if (edges.remove(edge)) {
+            adjacency.remove(edge);
+        }
     }
 
     @Override
     public void addEvent(Event event) {
         events.add(event);
+        fireChange(ModelChange.Type.EVENT_ADDED, null, event, 0);
         updateObservers();
     }
 
     @Override
     public void removeEvent(Event event) {
-        events.remove(event);
+        if (events.remove(event)) {
+            fireChange(ModelChange.Type.EVENT_REMOVED, null, event, 0);
+        }
         updateObservers();
     }
 
@@ -146,6 +259,7 @@ public class Node implements ArmyLocation, Subject {
     public void setPos(Point newPos) {
         pos.x = newPos.x;
         pos.y = newPos.y;
+        fireChange(ModelChange.Type.NODE_MOVED, null, null, 0);
     }
 
     /**
@@ -154,12 +268,7 @@ public class Node implements ArmyLocation, Subject {
      * @return Whether there is an edge connecting this node to the other node.
      */
     public boolean isConnected(Node other) {
-        for (Edge edge: edges) {
-            if (edge.getNodes().contains(other)) {
-                return true;
-            }
-        }
-        return false;
+        return adjacency.indexOf(other) >= 0;
     }
 
     /**
@@ -177,39 +286,78 @@ public class Node implements ArmyLocation, Subject {
 
     @Override
     public void updateObservers() {
-        for (Observer observer: observers) {
-            observer.update();
-        }
+        batch().notifyObservers(observers);
+    }
+
+    /**
+     * Begin a transaction. If this node is part of a graph, this begins a transaction on the whole graph. The node
+     * should not be added to or removed from a graph during a transaction.
+     */
+    @Override
+    public void beginChange() {
+        batch().begin();
+    }
+
+    @Override
+    public void commitChange() {
+        batch().commit();
+    }
+
+    /**
+     * Get the batch this node notifies its observers through: the one of its graph, or its own if it is not part of
+     * a graph.
+     * @return The batch.
+     */
+    private ChangeBatch batch() {
+        return graph != null ? graph.getChanges() : changes;
     }
 
     /**
-     * Returns a list of all nodes that this node is connected to.
+     * Returns a list of all nodes that this node is connected to. Use {@link #getAdjacentNodesNum()} and
+     * {@link #getAdjacentNode(int)} to look at them without creating a list.
      * @return The list.
      */
     public List<Node> getAdjacentNodes() {
-        List<Node> result = new ArrayList<>();
-        for (Edge edge: edges) {
-            Node otherNode;
-            otherNode = edge.getNodes().get(0);
-            if (otherNode == this) {
-                otherNode = edge.getNodes().get(1);
-            }
-            result.add(otherNode);
+        List<Node> result = new ArrayList<>(adjacency.size());
+        for (int i = 0; i < adjacency.size(); i++) {
+            result.add(adjacency.getNode(i));
         }
         return result;
     }
 
+    /**
+     * Get the amount of nodes this node is connected to, one for every edge.
+     * @return The amount of adjacent nodes.
+     */
+    public int getAdjacentNodesNum() {
+        return adjacency.size();
+    }
+
+    /**
+     * Get one of the nodes this node is connected to. They are in the same order as the edges of this node.
+     * @param index The index of the node, from 0 up to {@link #getAdjacentNodesNum()}.
+     * @return The node.
+     */
+    public Node getAdjacentNode(int index) {
+        return adjacency.getNode(index);
+    }
+
+    /**
+     * Get the edge that leads to one of the nodes this node is connected to.
+     * @param index The index of the node, from 0 up to {@link #getAdjacentNodesNum()}.
+     * @return The edge between this node and {@link #getAdjacentNode(int)}.
+     */
+    public Edge getAdjacentEdge(int index) {
+        return adjacency.getEdge(index);
+    }
+
     /**
      * Get the edge that connects this node to a given node.
      * @param node The other node.
      * @return null if there is no edge between this and node, else the edge that connects them.
      */
     public Edge getEdgeTo(Node node) {
-        for (Edge edge: edges) {
-            if (edge.getNodes().contains(node)) {
-                return edge;
-            }
-        }
-        return null;
+        int index = adjacency.indexOf(node);
+        return index < 0 ? null : adjacency.getEdge(index);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package nl.rug.oop.rts.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A list that one thread changes and other threads read. The thread that changes it reads it through a view on the
+ * list itself. Other threads ask for a snapshot instead, which is only copied when it is asked for after a change, so
+ * changing the list many times in a row does not copy anything.
+ * @param <E> The type of the elements.
+ */
+class SnapshotList<E> {
+    private final List<E> elements = new ArrayList<>();
+    private final List<E> view = Collections.unmodifiableList(elements);
+    /**
+     * The elements as they were after the last change, or null if they changed since the last snapshot was taken.
+     */
+    private volatile List<E> snapshot = List.of();
+
+    /**
+     * Add an element.
+     * @param element The element.
+     */
+    synchronized void add(E element) {
+        elements.add(element);
+        snapshot = null;
+    }
+
+    /**
+     * Remove an element.
+     * @param element The element.
+     * @return Whether the element was in the list.
+     */
+    synchronized boolean remove(Object element) {
+        if (!elements.remove(element)) {
+            return false;
+        }
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * Replace all elements at once.
+     * @param newElements The elements that should be in the list.
+     * @return The elements that were in the list before.
+     */
+    synchronized List<E> replace(List<? extends E> newElements) {
+        List<E> old = new ArrayList<>(elements);
+        elements.clear();
+        elements.addAll(newElements);
+        snapshot = null;
+        return old;
+    }
+
+    /**
+     * Get the elements, for the thread that changes them.
+     * @return A read-only view on the elements.
+     */
+    List<E> getView() {
+        return view;
+    }
+
+    /**
+     * Get the elements from any thread.
+     * @return An immutable copy of the elements as they were after the last change.
+     */
+    List<E> getSnapshot() {
+        List<E> current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = List.copyOf(elements);
+            }
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package nl.rug.oop.rts.graph;
+
+import nl.rug.oop.rts.simulation.Army;
+
+/**
+ * Counts the armies and units of both teams at a location, so checking if a location is contested or won does not
+ * have to look at its armies. Kept up to date by the location whenever an army is added or removed, or the amount of
+ * units of one of its armies changes.
+ */
+class TeamCounts {
+    static final int TEAMS = 2;
+    private final int[] armies = new int[TEAMS];
+    private final int[] units = new int[TEAMS];
+
+    /**
+     * Count an army that was added to the location.
+     * @param army The army.
+     */
+    void add(Army army) {
+        int team = army.getFaction().getTeamNum();
+        armies[team]++;
+        units[team] += army.getUnitsNum();
+    }
+
+    /**
+     * Stop counting an army that was removed from the location.
+     * @param army The army.
+     */
+    void remove(Army army) {
+        int team = army.getFaction().getTeamNum();
+        armies[team]--;
+        units[team] -= army.getUnitsNum();
+    }
+
+    /**
+     * Count a change in the amount of units of a team.
+     * @param team The team.
+     * @param change The amount of units that were added, negative if units were removed.
+     */
+    void unitsChanged(int team, int change) {
+        units[team] += change;
+    }
+
+    int getArmies(int team) {
+        return armies[team];
+    }
+
+    int getUnits(int team) {
+        return units[team];
+    }
+}
@@ -0,0 +1,249 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.Edge;
+import nl.rug.oop.rts.graph.Graph;
+import nl.rug.oop.rts.graph.Node;
+import nl.rug.oop.rts.simulation.events.EventSink;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Experimental simulation in which every army is an agent with its own thread. In every movement phase the agents are
+ * woken up at a barrier, decide where their army goes with a {@link MovePolicy}, and wait at the next barrier. The
+ * simulation then moves the armies to the locations their agents reported, in the order of
+ * {@link Graph#getOccupiedLocations()}, and resolves the battles itself. Only the decisions run on the agent threads,
+ * so the graph is still changed by one thread, and with the random policy the results are the same as those of
+ * {@link Simulation} for the same seed.
+ * Agents block while they wait, so every army gets a cheap virtual thread by default.
+ * Agents are created for new armies and stopped for armies that left the graph at the start of every movement phase.
+ * Call {@link #close()} to stop all of them.
+ */
+public class AgentSimulation extends PhasedSimulation implements AutoCloseable {
+    /**
+     * A phaser can only have 65535 parties, so the agents are spread over child phasers of this size.
+     */
+    private static final int AGENTS_PER_PHASER = 1000;
+    private final Graph graph;
+    private final EventSink eventSink;
+    private final MovePolicy policy;
+    private final ThreadFactory threadFactory;
+    /**
+     * The simulation is a party of the root phaser, and so is every child phaser that has agents.
+     */
+    private final Phaser root = new Phaser(1);
+    private final Map<Army, Agent> agents = new IdentityHashMap<>();
+    private final List<Army> movingArmies = new ArrayList<>();
+    private final List<ArmyLocation> battleLocations = new ArrayList<>();
+    private volatile boolean toEdges;
+    private volatile RuntimeException failure;
+
+    /**
+     * Constructor for an agent simulation with random moves, on virtual threads.
+     * @param graph The graph to simulate.
+     * @param eventSink The sink that is notified whenever an event happens to an army.
+     */
+    public AgentSimulation(Graph graph, EventSink eventSink) {
+        this(graph, eventSink, MovePolicy.RANDOM, defaultThreadFactory());
+    }
+
+    /**
+     * Constructor for agent simulation.
+     * @param graph The graph to simulate.
+     * @param eventSink The sink that is notified whenever an event happens to an army.
+     * @param policy The policy the agents decide their moves with.
+     * @param threadFactory The factory for the threads of the agents.
+     */
+    public AgentSimulation(Graph graph, EventSink eventSink, MovePolicy policy, ThreadFactory threadFactory) {
+        this.graph = graph;
+        this.eventSink = eventSink;
+        this.policy = policy;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Get a factory for the virtual threads of the agents.
+     * @return The thread factory.
+     */
+    public static ThreadFactory defaultThreadFactory() {
+        return Thread.ofVirtual().name("army-agent-", 0).factory();
+    }
+
+    @Override
+    protected Iterable<ArmyLocation> getOccupiedLocations() {
+        return graph.getOccupiedLocations();
+    }
+
+    /**
+     * Get the amount of agents that are running.
+     * @return The amount of agents.
+     */
+    public int getAgentsNum() {
+        return agents.size();
+    }
+
+    @Override
+    protected void beginChange() {
+        graph.beginChange();
+    }
+
+    @Override
+    protected void commitChange() {
+        graph.commitChange();
+    }
+
+    /**
+     * Let the agents decide where their armies go, then move the armies there.
+     * @param toEdges Whether the armies at nodes move to edges, instead of the armies at edges to nodes.
+     */
+    @Override
+    protected void movePhase(boolean toEdges) {
+        for (ArmyLocation location: graph.getOccupiedLocations()) {
+            movingArmies.addAll(location.getArmiesPresent());
+        }
+        updateAgents();
+        this.toEdges = toEdges;
+        // the first barrier wakes the agents up, the second one waits until all of them decided.
+        root.arriveAndAwaitAdvance();
+        root.arriveAndAwaitAdvance();
+        if (failure != null) {
+            RuntimeException cause = failure;
+            failure = null;
+            movingArmies.clear();
+            throw new IllegalStateException("An agent failed to decide", cause);
+        }
+        for (Army army: movingArmies) {
+            ArmyLocation target = agents.get(army).target;
+            if (target != null) {
+                army.moveArmy(target, eventSink);
+            }
+        }
+        movingArmies.clear();
+    }
+
+    /**
+     * Start agents for the armies that do not have one yet and stop the agents of armies that left the graph.
+     * New agents get new child phasers: registering with a child whose agents all arrived already would wait until
+     * the phase is over.
+     */
+    private void updateAgents() {
+        Map<Army, Agent> previous = new IdentityHashMap<>(agents);
+        List<Army> newArmies = new ArrayList<>();
+        for (Army army: movingArmies) {
+            if (previous.remove(army) == null) {
+                newArmies.add(army);
+            }
+        }
+        for (Agent agent: previous.values()) {
+            agent.stopped = true;
+            agents.remove(agent.army);
+        }
+        for (int first = 0; first < newArmies.size(); first += AGENTS_PER_PHASER) {
+            List<Army> group = newArmies.subList(first, Math.min(first + AGENTS_PER_PHASER, newArmies.size()));
+            Phaser phaser = new Phaser(root, group.size());
+            for (Army army: group) {
+                Agent agent = new Agent(army, phaser);
+                agents.put(army, agent);
+                threadFactory.newThread(agent).start();
+            }
+        }
+    }
+
+    /**
+     * Resolve the battles at all contested locations.
+     * @return If a battle occurred or not.
+     */
+    @Override
+    protected boolean battlePhase() {
+        battleLocations.addAll(graph.getContestedLocations());
+        boolean battleHappened = !battleLocations.isEmpty();
+        for (ArmyLocation location: battleLocations) {
+            getBattles().battle(location, null);
+        }
+        battleLocations.clear();
+        return battleHappened;
+    }
+
+    @Override
+    public int getArmiesNum(int teamNum) {
+        return graph.getArmiesNum(teamNum);
+    }
+
+    /**
+     * Stop all agents.
+     */
+    @Override
+    public void close() {
+        root.forceTermination();
+        agents.clear();
+    }
+
+    /**
+     * The agent of one army. Waits at the barriers of its phaser and decides where its army goes in between.
+     */
+    private class Agent implements Runnable {
+        private final Army army;
+        private final Phaser phaser;
+        private volatile boolean stopped = false;
+        /**
+         * The location the army should move to in the current phase, or null if it stays.
+         */
+        private ArmyLocation target;
+
+        /**
+         * Constructor for agent.
+         * @param army The army.
+         * @param phaser The phaser the agent is already registered with.
+         */
+        Agent(Army army, Phaser phaser) {
+            this.army = army;
+            this.phaser = phaser;
+        }
+
+        @Override
+        public void run() {
+            while (phaser.arriveAndAwaitAdvance() >= 0) {
+                if (stopped) {
+                    phaser.arriveAndDeregister();
+                    return;
+                }
+                try {
+                    target = decide();
+                } catch (RuntimeException e) {
+                    target = null;
+                    failure = e;
+                }
+                if (phaser.arriveAndAwaitAdvance() < 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Decide where the army goes in the current phase.
+         * @return The location, or null if the army stays.
+         */
+        private ArmyLocation decide() {
+            ArmyLocation location = army.getLocation();
+            if (toEdges && location instanceof Node node) {
+                Node destination = policy.chooseDestination(army, node);
+                if (destination == null) {
+                    return null;
+                }
+                army.setOnWayTo(destination);
+                return node.getEdgeTo(destination);
+            }
+            if (!toEdges && location instanceof Edge) {
+                Node destination = army.getOnWayTo();
+                army.setOnWayTo(null);
+                return destination;
+            }
+            return null;
+        }
+    }
+}
@@ -3,33 +3,160 @@ package nl.rug.oop.rts.simulation;
 import nl.rug.oop.rts.graph.ArmyLocation;
 import nl.rug.oop.rts.graph.Node;
 import nl.rug.oop.rts.simulation.events.Event;
+import nl.rug.oop.rts.simulation.events.EventSink;
 import nl.rug.oop.rts.simulation.factions.Faction;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
 
 /**
  * Army class. Can be deployed to a node.
  * Has a certain faction.
+ * The units of an army are not stored as separate objects. Instead, the army keeps parallel arrays with the damage,
+ * health and type (index in the unit names of the faction) of each unit. {@link Unit} objects are only created as
+ * views on these arrays when they are asked for.
+ * A copy of an army shares the unit arrays with the original until one of them changes its units, so copying is cheap.
+ * Every army draws its random numbers from its own stream. That way, what happens to an army does not depend on the
+ * order in which armies are handled.
+ * Every change to the amount of units after the army was created is reported to its location, so the location can
+ * keep count of the units of both teams.
+ * A huge army can be compressed: its units are then stored in a {@link UnitHistogram} as counts per (type, damage,
+ * health) bucket, so memory use depends on the amount of different units instead of the amount of units. The units of
+ * a compressed army are ordered by bucket instead of by when they were added.
  */
 public class Army {
+    /**
+     * The lowest damage and starting health a unit can have.
+     */
+    static final int MIN_STAT = 20;
+    /**
+     * The amount of different damage and starting health values a unit can have.
+     */
+    static final int STAT_RANGE = 15;
+    private static final int MIN_CAPACITY = 4;
     private Faction faction;
     private ArmyLocation location;
-    private List<Unit> units = new ArrayList<>();
+    private int[] unitDamage;
+    private int[] unitHealth;
+    private byte[] unitTypes;
+    /**
+     * The units of this army if it is compressed, null if the units are stored in the arrays.
+     */
+    private UnitHistogram histogram;
+    private int unitsNum = 0;
+    /**
+     * Whether the unit arrays or histogram might also be used by a copy of this army, so they have to be copied before
+     * changing.
+     */
+    private boolean unitsShared = false;
     private Node onWayTo;
+    /**
+     * The index of the node in a {@link nl.rug.oop.rts.graph.CompactGraph} this army is on its way to, or -1.
+     */
+    private int destination = -1;
+    private ArmyRandom random;
 
     /**
-     * Constructor for army.
+     * Constructor for army with an unseeded random stream.
      * @param unitsNum The number of units.
      * @param faction The faction this army belongs to.
      * @param location The location at which this army resides.
      */
     public Army(int unitsNum, Faction faction, ArmyLocation location) {
+        this(unitsNum, faction, location, new ArmyRandom());
+    }
+
+    /**
+     * Constructor for army.
+     * @param unitsNum The number of units.
+     * @param faction The faction this army belongs to.
+     * @param location The location at which this army resides.
+     * @param random The random stream of this army. Used to create its units and for everything that happens to it.
+     */
+    public Army(int unitsNum, Faction faction, ArmyLocation location, ArmyRandom random) {
         this.faction = faction;
         this.location = location;
-        addUnits(unitsNum);
+        this.random = random;
+        int capacity = Math.max(unitsNum, MIN_CAPACITY);
+        this.unitDamage = new int[capacity];
+        this.unitHealth = new int[capacity];
+        this.unitTypes = new byte[capacity];
+        createUnits(unitsNum);
+    }
+
+    /**
+     * Create a compressed army. Its units are created straight into buckets, so they never take up memory per unit.
+     * @param unitsNum The number of units.
+     * @param faction The faction this army belongs to.
+     * @param location The location at which this army resides.
+     * @param random The random stream of this army. Used to create its units and for everything that happens to it.
+     * @return The army.
+     */
+    public static Army createCompressed(int unitsNum, Faction faction, ArmyLocation location, ArmyRandom random) {
+        Army army = new Army(0, faction, location, random);
+        army.compress();
+        army.createUnits(unitsNum);
+        return army;
+    }
+
+    /**
+     * Compress this army, storing its units as counts per bucket. Does nothing if it is already compressed.
+     * The units are put in bucket order, so their indices change.
+     */
+    public void compress() {
+        if (histogram != null) {
+            return;
+        }
+        histogram = new UnitHistogram(faction.getUnitNames().size());
+        for (int i = 0; i < unitsNum; i++) {
+            histogram.add(UnitHistogram.key(unitTypes[i], unitDamage[i], unitHealth[i]), 1);
+        }
+        unitDamage = null;
+        unitHealth = null;
+        unitTypes = null;
+        unitsShared = false;
+    }
 
+    public boolean isCompressed() {
+        return histogram != null;
+    }
+
+    /**
+     * Create a copy of this army with the same faction and units at another location.
+     * The unit arrays or histogram are shared until either army changes its units, so this takes constant time.
+     * The copy gets a new unseeded random stream and is not on its way anywhere.
+     * @param newLocation The location of the copy.
+     * @return The copy.
+     */
+    public Army copy(ArmyLocation newLocation) {
+        Army copy = new Army(0, faction, newLocation, new ArmyRandom());
+        copy.unitDamage = unitDamage;
+        copy.unitHealth = unitHealth;
+        copy.unitTypes = unitTypes;
+        copy.histogram = histogram;
+        copy.unitsNum = unitsNum;
+        copy.unitsShared = true;
+        unitsShared = true;
+        return copy;
+    }
+
+    /**
+     * Make sure this army has its own unit arrays or histogram before changing them.
+     */
+    private void prepareWrite() {
+        if (!unitsShared) {
+            return;
+        }
+        unitsShared = false;
+        if (histogram != null) {
+            histogram = histogram.copy();
+            return;
+        }
+        int capacity = Math.max(unitsNum, MIN_CAPACITY);
+        unitDamage = Arrays.copyOf(unitDamage, capacity);
+        unitHealth = Arrays.copyOf(unitHealth, capacity);
+        unitTypes = Arrays.copyOf(unitTypes, capacity);
     }
 
     /**
@@ -37,13 +164,58 @@ public class Army {
      * @param amount The amount of units to be added.
      */
     public void addUnits(int amount) {
+        createUnits(amount);
+        unitsChanged(amount);
+    }
+
+    /**
+     * Create new units at the back of the unit arrays without reporting it to the location.
+     * @param amount The amount of units to be created.
+     */
+    private void createUnits(int amount) {
+        prepareWrite();
+        if (histogram != null) {
+            for (int i = 0; i < amount; i++) {
+                int type = random.nextInt(faction.getUnitNames().size());
+                int damage = random.nextInt(STAT_RANGE) + MIN_STAT;
+                histogram.add(UnitHistogram.key(type, damage, random.nextInt(STAT_RANGE) + MIN_STAT), 1);
+            }
+            unitsNum += amount;
+            return;
+        }
+        ensureCapacity(unitsNum + amount);
         for (int i = 0; i < amount; i++) {
-            Random random = new Random();
-            String name = faction.getUnitNames().get(random.nextInt(faction.getUnitNames().size()));
-            units.add(new Unit(name, random.nextInt(15) + 20, random.nextInt(15) + 20, this));
+            unitTypes[unitsNum] = (byte) random.nextInt(faction.getUnitNames().size());
+            unitDamage[unitsNum] = random.nextInt(STAT_RANGE) + MIN_STAT;
+            unitHealth[unitsNum] = random.nextInt(STAT_RANGE) + MIN_STAT;
+            unitsNum++;
         }
     }
 
+    /**
+     * Report a change in the amount of units to the location of this army.
+     * @param change The amount of units that were added, negative if units were removed.
+     */
+    private void unitsChanged(int change) {
+        if (change != 0 && location != null) {
+            location.unitsChanged(this, change);
+        }
+    }
+
+    /**
+     * Make sure the unit arrays can hold at least a certain amount of units.
+     * @param capacity The amount of units the arrays should be able to hold.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= unitHealth.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, unitHealth.length * 2);
+        unitDamage = Arrays.copyOf(unitDamage, newCapacity);
+        unitHealth = Arrays.copyOf(unitHealth, newCapacity);
+        unitTypes = Arrays.copyOf(unitTypes, newCapacity);
+    }
+
     public Faction getFaction() {
         return faction;
     }
@@ -52,24 +224,157 @@ public class Army {
      * Move this army to a new location.
      * Remove it from its current location and add it to the new location.
      * @param newLocation The new location.
+     * @param sink The sink that is notified of events happening at the new location.
      */
-    public void moveArmy(ArmyLocation newLocation) {
+    public void moveArmy(ArmyLocation newLocation, EventSink sink) {
+        relocate(newLocation);
+        resolveEvents(sink);
+    }
+
+    /**
+     * Move this army to a new location without resolving the events there. Used to replay a journal.
+     * @param newLocation The new location.
+     */
+    void relocate(ArmyLocation newLocation) {
         location.removeArmy(this);
         newLocation.addArmy(this);
         location = newLocation;
-        resolveEvents();
     }
 
     public ArmyLocation getLocation() {
         return location;
     }
 
+    /**
+     * Get the units of this army. The list is a read-only view: the unit at a position is created when it is
+     * asked for. Removing a unit moves the last unit of the army into its position.
+     * @return A list view of the units in this army.
+     */
     public List<Unit> getUnits() {
-        return units;
+        return new AbstractList<>() {
+            @Override
+            public Unit get(int index) {
+                if (index < 0 || index >= unitsNum) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return new Unit(Army.this, index);
+            }
+
+            @Override
+            public int size() {
+                return unitsNum;
+            }
+        };
     }
 
     public int getUnitsNum() {
-        return units.size();
+        return unitsNum;
+    }
+
+    /**
+     * Get the name of a unit.
+     * @param index The position of the unit in this army.
+     * @return The name of the unit.
+     */
+    public String getUnitName(int index) {
+        if (histogram != null) {
+            return faction.getUnitNames().get(UnitHistogram.typeOf(histogram.locate(index)));
+        }
+        return faction.getUnitNames().get(unitTypes[index]);
+    }
+
+    /**
+     * Get the damage of a unit.
+     * @param index The position of the unit in this army.
+     * @return The damage of the unit.
+     */
+    public int getUnitDamage(int index) {
+        if (histogram != null) {
+            return UnitHistogram.damageOf(histogram.locate(index));
+        }
+        return unitDamage[index];
+    }
+
+    /**
+     * Get the health of a unit.
+     * @param index The position of the unit in this army.
+     * @return The health of the unit.
+     */
+    public int getUnitHealth(int index) {
+        if (histogram != null) {
+            return UnitHistogram.healthOf(histogram.locate(index));
+        }
+        return unitHealth[index];
+    }
+
+    /**
+     * Calculate the total damage of all units in this army. Takes time proportional to the amount of buckets if the
+     * army is compressed.
+     * @return The sum of the damage of every unit.
+     */
+    public long getTotalDamage() {
+        if (histogram != null) {
+            return histogram.getTotalDamage();
+        }
+        long total = 0;
+        for (int i = 0; i < unitsNum; i++) {
+            total += unitDamage[i];
+        }
+        return total;
+    }
+
+    /**
+     * Calculate the total health of all units in this army. Takes time proportional to the amount of buckets if the
+     * army is compressed.
+     * @return The sum of the health of every unit.
+     */
+    public long getTotalHealth() {
+        if (histogram != null) {
+            return histogram.getTotalHealth();
+        }
+        long total = 0;
+        for (int i = 0; i < unitsNum; i++) {
+            total += unitHealth[i];
+        }
+        return total;
+    }
+
+    /**
+     * Let a unit take damage. If its health drops to zero or below, it has 'died' and is removed from the army.
+     * @param index The position of the unit in this army.
+     * @param damage The amount of damage the unit takes.
+     */
+    public void damageUnit(int index, int damage) {
+        prepareWrite();
+        if (histogram != null) {
+            int key = histogram.locate(index);
+            int health = UnitHistogram.healthOf(key) - damage;
+            if (health > 0) {
+                histogram.add(key, -1);
+                histogram.add(UnitHistogram.key(UnitHistogram.typeOf(key), UnitHistogram.damageOf(key), health), 1);
+            } else {
+                removeUnit(index);
+            }
+            return;
+        }
+        unitHealth[index] -= damage;
+        if (unitHealth[index] <= 0) {
+            removeUnit(index);
+        }
+    }
+
+    void setUnitHealth(int index, int health) {
+        prepareWrite();
+        unitHealth[index] = health;
+    }
+
+    /**
+     * Set the health of every unit to zero. Used by battles before the health of the survivors is written back.
+     * Only for armies that are not compressed.
+     */
+    void clearUnitHealth() {
+        prepareWrite();
+        Arrays.fill(unitHealth, 0, unitsNum, 0);
     }
 
     /**
@@ -79,17 +384,26 @@ public class Army {
      * @param amount The amount of units to remove.
      */
     public void removeUnits(int amount) {
-        int newNum = units.size() - amount;
-        if (newNum <= 0) {
-            units.clear();
+        if (truncateUnits(amount)) {
             location.removeArmy(this);
-            return;
         }
-        List<Unit> toRemove = new ArrayList<>();
-        for (int i = newNum; i < units.size(); i++) {
-            toRemove.add(units.get(i));
+    }
+
+    /**
+     * Remove a number of units from the back of this army.
+     * Unlike {@link #removeUnits(int)} the army stays at its location, even if it has no units left.
+     * @param amount The amount of units to remove.
+     * @return Whether the army has no units left.
+     */
+    boolean truncateUnits(int amount) {
+        int newNum = Math.max(0, unitsNum - amount);
+        if (histogram != null) {
+            prepareWrite();
+            histogram.removeFromBack(unitsNum - newNum);
         }
-        units.removeAll(toRemove);
+        unitsChanged(newNum - unitsNum);
+        unitsNum = newNum;
+        return unitsNum == 0;
     }
 
     /**
@@ -98,25 +412,193 @@ public class Army {
      * @param unit The unit to be removed.
      */
     public void removeUnit(Unit unit) {
-        units.remove(unit);
-        if (units.isEmpty()) {
+        removeUnit(unit.getIndex());
+    }
+
+    /**
+     * Remove the unit at a position by moving the last unit of this army into its place.
+     * If there are no more units left after this, the army is removed from its location.
+     * @param index The position of the unit to be removed.
+     */
+    public void removeUnit(int index) {
+        prepareWrite();
+        if (histogram != null) {
+            histogram.add(histogram.locate(index), -1);
+            unitsNum--;
+            unitsChanged(-1);
+            if (unitsNum == 0) {
+                this.location.removeArmy(this);
+            }
+            return;
+        }
+        unitsNum--;
+        unitDamage[index] = unitDamage[unitsNum];
+        unitHealth[index] = unitHealth[unitsNum];
+        unitTypes[index] = unitTypes[unitsNum];
+        unitsChanged(-1);
+        if (unitsNum == 0) {
             this.location.removeArmy(this);
         }
     }
 
+    /**
+     * Remove all units that have no health left. Unlike {@link #removeUnit(int)} this keeps the order of the
+     * remaining units. If there are no more units left after this, the army is removed from its location.
+     */
+    public void removeDeadUnits() {
+        if (compactUnits()) {
+            this.location.removeArmy(this);
+        }
+    }
+
+    /**
+     * Remove all units that have no health left, keeping the order of the remaining units.
+     * Unlike {@link #removeDeadUnits()} the army stays at its location, even if it has no units left.
+     * @return Whether the army has no units left.
+     */
+    boolean compactUnits() {
+        if (histogram != null) {
+            // a histogram only has buckets for living units.
+            return unitsNum == 0;
+        }
+        prepareWrite();
+        int alive = 0;
+        for (int i = 0; i < unitsNum; i++) {
+            if (unitHealth[i] > 0) {
+                unitDamage[alive] = unitDamage[i];
+                unitHealth[alive] = unitHealth[i];
+                unitTypes[alive] = unitTypes[i];
+                alive++;
+            }
+        }
+        unitsChanged(alive - unitsNum);
+        unitsNum = alive;
+        return unitsNum == 0;
+    }
+
+    /**
+     * Save the units of this army in constant time, by sharing them with the image until this army changes them.
+     * @return The image of the units.
+     */
+    UnitsImage saveUnits() {
+        unitsShared = true;
+        return new UnitsImage(unitDamage, unitHealth, unitTypes, histogram, unitsNum);
+    }
+
+    /**
+     * Check if this army still has the units of an image, meaning they did not change since it was saved.
+     * @param image The image.
+     * @return Whether the units are the same.
+     */
+    boolean hasUnits(UnitsImage image) {
+        return unitHealth == image.getHealth() && histogram == image.getHistogram() && unitsNum == image.getUnitsNum();
+    }
+
+    /**
+     * Give this army the units of an image again, without reporting the change to its location.
+     * @param image The image.
+     */
+    void restoreUnits(UnitsImage image) {
+        unitDamage = image.getDamage();
+        unitHealth = image.getHealth();
+        unitTypes = image.getTypes();
+        histogram = image.getHistogram();
+        unitsNum = image.getUnitsNum();
+        unitsShared = true;
+    }
+
+    /**
+     * Set the location of this army without moving it, for when the armies of locations are replaced.
+     * @param location The location.
+     */
+    void setLocation(ArmyLocation location) {
+        this.location = location;
+    }
+
+    /**
+     * Get the histogram of a compressed army, to read the counts of its buckets.
+     * @return The histogram, or null if the army is not compressed.
+     */
+    UnitHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Count the units of this army per bucket, the way a compressed army stores them.
+     * @param counts The array to put the count of every bucket in. Its length should be the amount of buckets for the
+     *               faction of this army.
+     */
+    void countBuckets(int[] counts) {
+        if (histogram != null) {
+            histogram.copyCounts(counts);
+            return;
+        }
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < unitsNum; i++) {
+            counts[UnitHistogram.key(unitTypes[i], unitDamage[i], unitHealth[i])]++;
+        }
+    }
+
+    /**
+     * Create a compressed army from the counts of its buckets, without reporting its units to the location. Used to
+     * replay a journal.
+     * @param faction The faction of the army.
+     * @param location The location the army will be added to.
+     * @param counts The count of every bucket. The army uses the array itself, so it should not be changed.
+     * @param unitsNum The total of the counts.
+     * @return The army, with an unseeded random stream.
+     */
+    static Army createFromCounts(Faction faction, ArmyLocation location, int[] counts, int unitsNum) {
+        Army army = createCompressed(0, faction, location, new ArmyRandom());
+        army.histogram.replaceCounts(counts, unitsNum);
+        army.unitsNum = unitsNum;
+        return army;
+    }
+
+    /**
+     * Create a compressed army around a histogram, without reporting its units to the location. Used to restore a
+     * checkpoint.
+     * @param faction The faction of the army.
+     * @param location The location the army will be added to.
+     * @param histogram The units of the army. The army uses the histogram itself.
+     * @param random The random stream of the army.
+     * @return The army.
+     */
+    static Army createFromHistogram(Faction faction, ArmyLocation location, UnitHistogram histogram,
+                                    ArmyRandom random) {
+        Army army = createCompressed(0, faction, location, random);
+        army.histogram = histogram;
+        army.unitsNum = histogram.size();
+        return army;
+    }
+
+    /**
+     * Replace the units of a compressed army, for example with the survivors of a battle.
+     * @param counts The new count of every bucket. The army uses the array itself, so it should not be changed.
+     * @param newNum The total of the new counts.
+     * @return Whether the army has no units left.
+     */
+    boolean replaceHistogramCounts(int[] counts, int newNum) {
+        prepareWrite();
+        histogram.replaceCounts(counts, newNum);
+        unitsChanged(newNum - unitsNum);
+        unitsNum = newNum;
+        return unitsNum == 0;
+    }
+
     /**
      * Check if there are events present on the current node. If there are, 50% chance for the event to happen.
+     * @param sink The sink that is notified if an event happens.
      */
-    public void resolveEvents() {
+    public void resolveEvents(EventSink sink) {
         List<Event> events = location.getEvents();
         if (events.isEmpty()) {
             return;
         }
-        Random randomizer = new Random();
-        if (randomizer.nextInt(100) < 50) {
+        if (random.nextInt(100) < 50) {
             // event happens
-            Event event = events.get(randomizer.nextInt(events.size()));
-            event.carryOutEvent(this);
+            Event event = events.get(random.nextInt(events.size()));
+            event.carryOutEvent(this, sink);
         }
     }
 
@@ -127,4 +609,20 @@ public class Army {
     public void setOnWayTo(Node onWayTo) {
         this.onWayTo = onWayTo;
     }
+
+    public int getDestination() {
+        return destination;
+    }
+
+    public void setDestination(int destination) {
+        this.destination = destination;
+    }
+
+    public ArmyRandom getRandom() {
+        return random;
+    }
+
+    public void setRandom(ArmyRandom random) {
+        this.random = random;
+    }
 }
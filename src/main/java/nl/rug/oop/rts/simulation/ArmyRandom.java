@@ -0,0 +1,98 @@
+package nl.rug.oop.rts.simulation;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * The random stream of an army. Draws exactly the same numbers as a {@link SplittableRandom} with the same seed, and
+ * splits the same way, but its state can be read, so a checkpoint can store the stream without drawing from it.
+ */
+public final class ArmyRandom implements RandomGenerator {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private long seed;
+    private final long gamma;
+
+    /**
+     * Constructor for a seeded stream.
+     * @param seed The seed.
+     */
+    public ArmyRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Constructor for an unseeded stream, seeded from a new {@link SplittableRandom}.
+     */
+    public ArmyRandom() {
+        this(new SplittableRandom());
+    }
+
+    private ArmyRandom(SplittableRandom source) {
+        this(source.nextLong(), mixGamma(source.nextLong()));
+    }
+
+    private ArmyRandom(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Continue a stream from a state read with {@link #getSeed()} and {@link #getGamma()}.
+     * @param seed The seed.
+     * @param gamma The gamma.
+     * @return The stream.
+     */
+    static ArmyRandom restore(long seed, long gamma) {
+        return new ArmyRandom(seed, gamma);
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    long getGamma() {
+        return gamma;
+    }
+
+    /**
+     * Split off a new stream, like {@link SplittableRandom#split()}.
+     * @return The new stream.
+     */
+    public ArmyRandom split() {
+        return new ArmyRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    @Override
+    public int nextInt() {
+        return mix32(nextSeed());
+    }
+
+    @Override
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    private long nextSeed() {
+        seed += gamma;
+        return seed;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
@@ -0,0 +1,251 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.Observer;
+import nl.rug.oop.rts.Subject;
+import nl.rug.oop.rts.graph.Graph;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Plays a simulation on its own thread, so the thread that shows the graph (for example the Swing event dispatch
+ * thread) never has to wait for a step. Steps are run at a target rate, or as fast as possible.
+ * Every step holds the write lock of the graph. While playing, a frame is rendered at most 60 times per second,
+ * right after a step and still holding the lock, so the frame always shows the graph between two steps.
+ * Playing stops by itself once the simulation is decided.
+ * The controls (play, pause, step, rewind, speed) should all be called from the same thread. Observers are notified
+ * when the player starts or stops being busy, from the thread that caused it.
+ * If a step or a rewind fails, the player stops playing and keeps the exception until {@link #takeFailure()} is
+ * called, so the observers can show it. A failed step is undone if the simulation has a history.
+ */
+public class AutoPlayer implements Subject {
+    private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+    private final Simulation simulation;
+    private final Lock lock;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "auto-play");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+    private Runnable frameRenderer = () -> { };
+    private volatile boolean playing = false;
+    private volatile boolean busy = false;
+    private volatile double stepsPerSecond = 2;
+    /**
+     * The exception of the last step that failed, or null if none failed since it was last taken.
+     */
+    private volatile RuntimeException failure;
+    /**
+     * Counts how often playing was started. A chain of steps stops once a newer one was started.
+     */
+    private volatile long session = 0;
+    /**
+     * When the last frame was rendered. Only used on the scheduler thread.
+     */
+    private long lastFrame = 0;
+
+    /**
+     * Constructor for player.
+     * @param simulation The simulation to play.
+     * @param graph The graph the simulation changes. Its write lock is held during every step.
+     */
+    public AutoPlayer(Simulation simulation, Graph graph) {
+        this.simulation = simulation;
+        this.lock = graph.getLock().writeLock();
+    }
+
+    /**
+     * Set what renders a frame. It is called on the scheduler thread while the write lock of the graph is held.
+     * @param frameRenderer The renderer.
+     */
+    public void setFrameRenderer(Runnable frameRenderer) {
+        this.frameRenderer = frameRenderer;
+    }
+
+    /**
+     * Set the speed.
+     * @param stepsPerSecond The amount of steps per second to aim for. Zero or less to play as fast as possible.
+     */
+    public void setStepsPerSecond(double stepsPerSecond) {
+        this.stepsPerSecond = stepsPerSecond;
+    }
+
+    public double getStepsPerSecond() {
+        return stepsPerSecond;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Check if the player is busy, meaning it is playing or a step is still running. While it is busy the graph should
+     * not be edited.
+     * @return Whether the player is busy.
+     */
+    public boolean isBusy() {
+        return busy;
+    }
+
+    /**
+     * Get the exception of the last step or rewind that failed, and forget it.
+     * @return The exception, or null if nothing failed since this was last called.
+     */
+    public RuntimeException takeFailure() {
+        RuntimeException taken = failure;
+        failure = null;
+        return taken;
+    }
+
+    /**
+     * Start playing. Does nothing if the player is already playing.
+     */
+    public void play() {
+        long current;
+        synchronized (this) {
+            if (playing) {
+                return;
+            }
+            playing = true;
+            busy = true;
+            current = ++session;
+        }
+        updateObservers();
+        scheduler.execute(() -> playStep(current));
+    }
+
+    /**
+     * Stop playing. The step that is running is finished first.
+     */
+    public void pause() {
+        playing = false;
+    }
+
+    /**
+     * Run a single step on the scheduler thread. Does nothing if the player is busy.
+     */
+    public void step() {
+        runOnce(simulation::simulateStep);
+    }
+
+    /**
+     * Undo the last step on the scheduler thread, if the simulation still remembers it. Does nothing if the player
+     * is busy.
+     */
+    public void rewind() {
+        runOnce(() -> simulation.rewind(1));
+    }
+
+    /**
+     * Change the simulation once on the scheduler thread. Does nothing if the player is busy.
+     * @param action The change, run while holding the write lock.
+     */
+    private void runOnce(Runnable action) {
+        long current;
+        synchronized (this) {
+            if (busy) {
+                return;
+            }
+            busy = true;
+            current = ++session;
+        }
+        updateObservers();
+        scheduler.execute(() -> {
+            try {
+                runStep(action);
+            } finally {
+                finish(current);
+            }
+        });
+    }
+
+    /**
+     * Run a step of a chain, and schedule the next one so the target rate is met.
+     * @param current The session the chain belongs to.
+     */
+    private void playStep(long current) {
+        if (current != session) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean again = false;
+        try {
+            if (playing) {
+                again = runStep(simulation::simulateStep) && playing && !simulation.isDecided();
+            }
+        } finally {
+            if (again) {
+                double rate = stepsPerSecond;
+                long period = rate <= 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+                long delay = Math.max(0, period - (System.nanoTime() - start));
+                scheduler.schedule(() -> playStep(current), delay, TimeUnit.NANOSECONDS);
+            } else {
+                finish(current);
+            }
+        }
+    }
+
+    /**
+     * Change the simulation while holding the write lock, and render a frame if one is due. If the change fails, the
+     * exception is kept for {@link #takeFailure()} instead of being lost in the scheduler, and playing stops.
+     * @param action The change, for example a step.
+     * @return Whether the change succeeded.
+     */
+    private boolean runStep(Runnable action) {
+        lock.lock();
+        try {
+            action.run();
+            long now = System.nanoTime();
+            if (now - lastFrame >= FRAME_NANOS) {
+                frameRenderer.run();
+                lastFrame = now;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            failure = e;
+            playing = false;
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Render the final frame and stop playing and being busy, unless a newer session was started in the meantime.
+     * @param current The session that is finished.
+     */
+    private void finish(long current) {
+        lock.lock();
+        try {
+            frameRenderer.run();
+            lastFrame = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+        synchronized (this) {
+            if (current != session) {
+                return;
+            }
+            playing = false;
+            busy = false;
+        }
+        updateObservers();
+    }
+
+    @Override
+    public void addObserver(Observer observer) {
+        observers.add(observer);
+    }
+
+    @Override
+    public void updateObservers() {
+        for (Observer observer : observers) {
+            observer.update();
+        }
+    }
+}
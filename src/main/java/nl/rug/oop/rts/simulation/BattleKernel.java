@@ -0,0 +1,178 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves battles. The units of both teams are copied into primitive buffers once per battle, all rounds are fought
+ * on these buffers and only the survivors are written back to their armies when the battle is over.
+ * The buffers are kept between battles, so fighting a round does not create any objects.
+ * A kernel is not thread safe, every thread needs its own.
+ */
+public class BattleKernel {
+    private static final int TEAMS = 2;
+    private static final int INITIAL_CAPACITY = 16;
+    private final int[][] damage = new int[TEAMS][INITIAL_CAPACITY];
+    private final int[][] health = new int[TEAMS][INITIAL_CAPACITY];
+    /**
+     * For every unit in the buffers, the position of the army it belongs to in the armies buffer.
+     */
+    private final int[][] owner = new int[TEAMS][INITIAL_CAPACITY];
+    /**
+     * For every unit in the buffers, its position in the army it belongs to.
+     */
+    private final int[][] origin = new int[TEAMS][INITIAL_CAPACITY];
+    private final int[] size = new int[TEAMS];
+    private Army[] armies = new Army[INITIAL_CAPACITY];
+    private int armiesNum;
+
+    /**
+     * Resolve a battle at a location.
+     * Make first unit from one team fight first unit from the others, etc.
+     * The team with more units get some bonus damage based on the ratio of units. (The idea being that the extra units
+     * would help out since they are not fighting).
+     * Units that died in a round are removed after the round, keeping the order of the survivors.
+     * Continue fighting until one team has no more units.
+     * @param location The location of the battle.
+     */
+    public void battle(ArmyLocation location) {
+        battle(location, null);
+    }
+
+    /**
+     * Resolve a battle at a location, but leave defeated armies at the location instead of removing them.
+     * This way, the battle only changes the armies at this location and battles at different locations can be fought
+     * at the same time.
+     * @param location The location of the battle.
+     * @param defeated The list the armies without survivors are added to. If null, they are removed from the location.
+     */
+    public void battle(ArmyLocation location, List<Army> defeated) {
+        load(location.getArmiesPresent());
+        while (size[0] > 0 && size[1] > 0) {
+            fightRound();
+        }
+        writeBack(defeated);
+    }
+
+    /**
+     * Copy the units of all armies into the buffers of their team.
+     * @param present The armies present at the location of the battle.
+     */
+    private void load(List<Army> present) {
+        size[0] = 0;
+        size[1] = 0;
+        armiesNum = 0;
+        if (armies.length < present.size()) {
+            armies = new Army[Math.max(present.size(), armies.length * 2)];
+        }
+        for (Army army : present) {
+            int team = army.getFaction().getTeamNum();
+            int unitsNum = army.getUnitsNum();
+            ensureCapacity(team, size[team] + unitsNum);
+            for (int i = 0; i < unitsNum; i++) {
+                int slot = size[team]++;
+                damage[team][slot] = army.getUnitDamage(i);
+                health[team][slot] = army.getUnitHealth(i);
+                owner[team][slot] = armiesNum;
+                origin[team][slot] = i;
+            }
+            armies[armiesNum++] = army;
+        }
+    }
+
+    /**
+     * Make sure the buffers of a team can hold a certain amount of units.
+     * @param team The team.
+     * @param capacity The amount of units the buffers should be able to hold.
+     */
+    private void ensureCapacity(int team, int capacity) {
+        if (capacity <= health[team].length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, health[team].length * 2);
+        damage[team] = Arrays.copyOf(damage[team], newCapacity);
+        health[team] = Arrays.copyOf(health[team], newCapacity);
+        owner[team] = Arrays.copyOf(owner[team], newCapacity);
+        origin[team] = Arrays.copyOf(origin[team], newCapacity);
+    }
+
+    /**
+     * Fight a single round. Calculate the ratio of the amount of units, let the units fight in pairs and remove the
+     * units that died.
+     */
+    private void fightRound() {
+        double armyRatio = (double) size[0] / (double) size[1];
+        int strong = 0;
+        int weak = 1;
+        if (armyRatio < 1) {
+            strong = 1;
+            weak = 0;
+            armyRatio = 1 / armyRatio;
+        }
+        int[] strongDamage = damage[strong];
+        int[] strongHealth = health[strong];
+        int[] weakDamage = damage[weak];
+        int[] weakHealth = health[weak];
+        int pairs = Math.min(size[0], size[1]);
+        for (int i = 0; i < pairs; i++) {
+            weakHealth[i] -= (int) (strongDamage[i] * armyRatio);
+            strongHealth[i] -= weakDamage[i];
+        }
+        removeDead(0, pairs);
+        removeDead(1, pairs);
+    }
+
+    /**
+     * Remove the dead units from the buffers of a team, keeping the order of the survivors.
+     * @param team The team.
+     * @param fought The amount of units at the front of the buffers that fought this round. Only these can have died.
+     */
+    private void removeDead(int team, int fought) {
+        int[] teamHealth = health[team];
+        int alive = 0;
+        while (alive < fought && teamHealth[alive] > 0) {
+            alive++;
+        }
+        if (alive == fought) {
+            return;
+        }
+        int[] teamDamage = damage[team];
+        int[] teamOwner = owner[team];
+        int[] teamOrigin = origin[team];
+        for (int i = alive + 1; i < size[team]; i++) {
+            if (teamHealth[i] > 0) {
+                teamDamage[alive] = teamDamage[i];
+                teamHealth[alive] = teamHealth[i];
+                teamOwner[alive] = teamOwner[i];
+                teamOrigin[alive] = teamOrigin[i];
+                alive++;
+            }
+        }
+        size[team] = alive;
+    }
+
+    /**
+     * Write the health of the survivors back to their armies and remove everything else.
+     * @param defeated The list the armies without survivors are added to. If null, they are removed from the location.
+     */
+    private void writeBack(List<Army> defeated) {
+        for (int a = 0; a < armiesNum; a++) {
+            armies[a].clearUnitHealth();
+        }
+        for (int team = 0; team < TEAMS; team++) {
+            for (int i = 0; i < size[team]; i++) {
+                armies[owner[team][i]].setUnitHealth(origin[team][i], health[team][i]);
+            }
+        }
+        for (int a = 0; a < armiesNum; a++) {
+            if (defeated == null) {
+                armies[a].removeDeadUnits();
+            } else if (armies[a].compactUnits()) {
+                defeated.add(armies[a]);
+            }
+            armies[a] = null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+
+import java.util.List;
+
+/**
+ * Picks the battle model for a battle and resolves it. Large battles are resolved with the aggregate
+ * {@link LanchesterBattle} model, battles with compressed armies with the {@link HistogramBattle} and all others with
+ * the {@link BattleKernel}.
+ * The battle models are not thread safe, so every thread that resolves battles gets its own.
+ */
+class BattleResolver {
+    private final ThreadLocal<BattleKernel> kernels = ThreadLocal.withInitial(BattleKernel::new);
+    private final ThreadLocal<HistogramBattle> histogramBattles = ThreadLocal.withInitial(HistogramBattle::new);
+    private final ThreadLocal<LanchesterBattle> lanchesterBattles = ThreadLocal.withInitial(LanchesterBattle::new);
+    private long lanchesterThreshold = 100000;
+
+    /**
+     * Set the amount of units above which a battle is resolved with the aggregate model.
+     * @param lanchesterThreshold The amount of units at a location above which the aggregate model is used.
+     */
+    void setLanchesterThreshold(long lanchesterThreshold) {
+        this.lanchesterThreshold = lanchesterThreshold;
+    }
+
+    long getLanchesterThreshold() {
+        return lanchesterThreshold;
+    }
+
+    /**
+     * Resolve a single battle, with the aggregate model if there are more units than the threshold and with the exact
+     * model otherwise. The exact model works on whole buckets if one of the armies is compressed.
+     * @param location The location of the battle.
+     * @param defeated The list the armies without survivors are added to. If null, they are removed from the location.
+     */
+    void battle(ArmyLocation location, List<Army> defeated) {
+        if (LanchesterBattle.countUnits(location) > lanchesterThreshold) {
+            lanchesterBattles.get().battle(location, defeated);
+        } else if (anyCompressed(location)) {
+            histogramBattles.get().battle(location, defeated);
+        } else {
+            kernels.get().battle(location, defeated);
+        }
+    }
+
+    /**
+     * Check if any of the armies at a location is compressed.
+     * @param location The location.
+     * @return Whether there is a compressed army at the location.
+     */
+    private static boolean anyCompressed(ArmyLocation location) {
+        for (Army army: location.getArmiesPresent()) {
+            if (army.isCompressed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,87 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.CompactGraph;
+import nl.rug.oop.rts.simulation.events.EventSink;
+
+import java.io.IOException;
+
+/**
+ * Headless simulation of a {@link CompactGraph}. Steps go through the same phases as those of {@link Simulation} and
+ * armies draw the same random numbers, so a compact copy of a graph made with {@link CompactGraph#of} gives the same
+ * results for the same seed. Armies remember the node they are on their way to by its number.
+ * The phases are simulated like those of a single region of a {@link PartitionedSimulation}, with the whole graph as
+ * the region. Battles are resolved one by one. There is no journal or history, but the state can be checkpointed to a
+ * {@link MappedArmyStore} and restored from it.
+ */
+public class CompactSimulation extends PhasedSimulation {
+    private final CompactGraph graph;
+    /**
+     * Simulates the whole graph as a single region.
+     */
+    private final RegionWorker worker;
+
+    /**
+     * Constructor for compact simulation.
+     * @param graph The graph to simulate.
+     * @param eventSink The sink that is notified whenever an event happens to an army.
+     */
+    public CompactSimulation(CompactGraph graph, EventSink eventSink) {
+        this.graph = graph;
+        this.worker = new RegionWorker(graph, getBattles(), eventSink);
+    }
+
+    /**
+     * Restore a simulation from the checkpoint in a store. The Lanchester threshold is not part of the checkpoint.
+     * @param store The store.
+     * @param eventSink The sink that is notified whenever an event happens to an army.
+     * @return The simulation, which goes on like the one that wrote the checkpoint.
+     * @throws IOException If the buckets of the compressed armies cannot be mapped.
+     */
+    public static CompactSimulation restore(MappedArmyStore store, EventSink eventSink) throws IOException {
+        CompactSimulation simulation = new CompactSimulation(store.readGraph(), eventSink);
+        simulation.setStepPhase(store.getStepPhase());
+        return simulation;
+    }
+
+    /**
+     * Write a checkpoint of this simulation to a store, replacing the previous one. Does not change the simulation.
+     * @param store The store.
+     * @throws IOException If the file of the store cannot be grown.
+     */
+    public void checkpoint(MappedArmyStore store) throws IOException {
+        store.write(graph, getStepPhase());
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Resolve the battles at all contested locations.
+     * @return If a battle occurred or not.
+     */
+    @Override
+    protected boolean battlePhase() {
+        return worker.resolveBattles();
+    }
+
+    @Override
+    protected Iterable<ArmyLocation> getOccupiedLocations() {
+        return graph.getOccupiedLocations();
+    }
+
+    @Override
+    protected void movePhase(boolean toEdges) {
+        if (toEdges) {
+            worker.moveToEdge();
+        } else {
+            worker.moveToNode();
+        }
+    }
+
+    @Override
+    public int getArmiesNum(int teamNum) {
+        return graph.getArmiesNum(teamNum);
+    }
+}
@@ -0,0 +1,198 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves battles between compressed armies. The rules are the same as in {@link BattleKernel}: units fight in pairs,
+ * the bigger team gets bonus damage based on the ratio of units and the battle goes on until one team has no units
+ * left. But instead of single units, whole runs of equal units fight at once, so a round takes time proportional to the
+ * amount of buckets instead of the amount of units.
+ * The units of a team are lined up army by army, and within an army in bucket order. Armies at the location that are
+ * not compressed yet are compressed first.
+ * A battle is not thread safe, every thread needs its own.
+ */
+public class HistogramBattle {
+    private static final int TEAMS = 2;
+    private Army[] armies = new Army[0];
+    /**
+     * For every army, the count of every bucket of the units that did not fight yet this round.
+     */
+    private int[][] current = new int[0][];
+    /**
+     * For every army, the count of every bucket after this round.
+     */
+    private int[][] next = new int[0][];
+    private int armiesNum;
+    private final int[] size = new int[TEAMS];
+    /**
+     * For both teams, the army, the bucket and the amount of units left in that bucket of the next unit to fight.
+     */
+    private final int[] cursorArmy = new int[TEAMS];
+    private final int[] cursorKey = new int[TEAMS];
+    private final int[] cursorLeft = new int[TEAMS];
+
+    /**
+     * Resolve a battle at a location.
+     * @param location The location of the battle.
+     */
+    public void battle(ArmyLocation location) {
+        battle(location, null);
+    }
+
+    /**
+     * Resolve a battle at a location, but leave defeated armies at the location instead of removing them.
+     * @param location The location of the battle.
+     * @param defeated The list the armies without survivors are added to. If null, they are removed from the location.
+     */
+    public void battle(ArmyLocation location, List<Army> defeated) {
+        load(location.getArmiesPresent());
+        while (size[0] > 0 && size[1] > 0) {
+            fightRound();
+        }
+        writeBack(defeated);
+    }
+
+    /**
+     * Compress all armies and copy their counts into the buffers.
+     * @param present The armies present at the location of the battle.
+     */
+    private void load(List<Army> present) {
+        armiesNum = present.size();
+        if (armies.length < armiesNum) {
+            armies = Arrays.copyOf(armies, armiesNum);
+            current = Arrays.copyOf(current, armiesNum);
+            next = Arrays.copyOf(next, armiesNum);
+        }
+        size[0] = 0;
+        size[1] = 0;
+        for (int a = 0; a < armiesNum; a++) {
+            Army army = present.get(a);
+            army.compress();
+            UnitHistogram histogram = army.getHistogram();
+            if (current[a] == null || current[a].length != histogram.keysNum()) {
+                current[a] = new int[histogram.keysNum()];
+                next[a] = new int[histogram.keysNum()];
+            }
+            histogram.copyCounts(current[a]);
+            armies[a] = army;
+            size[army.getFaction().getTeamNum()] += army.getUnitsNum();
+        }
+    }
+
+    /**
+     * Fight a single round. Pair up runs of units of both teams, put the survivors of every pair and the units that
+     * did not fight in the buckets for the next round, and swap the buffers.
+     */
+    private void fightRound() {
+        double armyRatio = (double) size[0] / (double) size[1];
+        int strong = 0;
+        int weak = 1;
+        if (armyRatio < 1) {
+            strong = 1;
+            weak = 0;
+            armyRatio = 1 / armyRatio;
+        }
+        for (int a = 0; a < armiesNum; a++) {
+            Arrays.fill(next[a], 0);
+        }
+        startCursor(strong);
+        startCursor(weak);
+        int pairs = Math.min(size[0], size[1]);
+        while (pairs > 0) {
+            int run = Math.min(pairs, Math.min(cursorLeft[strong], cursorLeft[weak]));
+            int strongKey = cursorKey[strong];
+            int weakKey = cursorKey[weak];
+            hit(weak, run, (int) (UnitHistogram.damageOf(strongKey) * armyRatio));
+            hit(strong, run, UnitHistogram.damageOf(weakKey));
+            pairs -= run;
+        }
+        for (int a = 0; a < armiesNum; a++) {
+            for (int key = 0; key < current[a].length; key++) {
+                next[a][key] += current[a][key];
+            }
+            int[] swap = current[a];
+            current[a] = next[a];
+            next[a] = swap;
+        }
+    }
+
+    /**
+     * Let a run of units at the cursor of a team take damage. The survivors go to their new bucket for the next round.
+     * Moves the cursor past the run.
+     * @param team The team.
+     * @param run The amount of units in the run.
+     * @param damage The damage every unit in the run takes.
+     */
+    private void hit(int team, int run, int damage) {
+        int army = cursorArmy[team];
+        int key = cursorKey[team];
+        current[army][key] -= run;
+        int health = UnitHistogram.healthOf(key) - damage;
+        if (health > 0) {
+            next[army][UnitHistogram.key(UnitHistogram.typeOf(key), UnitHistogram.damageOf(key), health)] += run;
+        } else {
+            size[team] -= run;
+        }
+        cursorLeft[team] -= run;
+        if (cursorLeft[team] == 0) {
+            advanceCursor(team, army, key + 1);
+        }
+    }
+
+    /**
+     * Put the cursor of a team at its first unit.
+     * @param team The team.
+     */
+    private void startCursor(int team) {
+        advanceCursor(team, 0, 0);
+    }
+
+    /**
+     * Move the cursor of a team to the first bucket with units, starting at a bucket of an army.
+     * If there is none, the cursor is left with no units.
+     * @param team The team.
+     * @param army The army to start looking in.
+     * @param key The bucket to start looking at.
+     */
+    private void advanceCursor(int team, int army, int key) {
+        cursorLeft[team] = 0;
+        for (int a = army; a < armiesNum; a++) {
+            if (armies[a].getFaction().getTeamNum() != team) {
+                continue;
+            }
+            for (int k = a == army ? key : 0; k < current[a].length; k++) {
+                if (current[a][k] > 0) {
+                    cursorArmy[team] = a;
+                    cursorKey[team] = k;
+                    cursorLeft[team] = current[a][k];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Give the survivors back to their armies and remove the armies without survivors.
+     * @param defeated The list the armies without survivors are added to. If null, they are removed from the location.
+     */
+    private void writeBack(List<Army> defeated) {
+        for (int a = 0; a < armiesNum; a++) {
+            int survivors = 0;
+            for (int count : current[a]) {
+                survivors += count;
+            }
+            // the army keeps the array, so this battle needs a new one next time.
+            boolean empty = armies[a].replaceHistogramCounts(current[a], survivors);
+            current[a] = null;
+            if (empty && defeated == null) {
+                armies[a].getLocation().removeArmy(armies[a]);
+            } else if (empty) {
+                defeated.add(armies[a]);
+            }
+            armies[a] = null;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.Graph;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary format of a simulation journal, shared by {@link SimulationJournal} and {@link JournalReplay}.
+ * A journal starts with a header: the magic number, the version, the amount of nodes and edges of the graph and the
+ * keyframe interval. After that come records, each starting with its type. All records between two step records
+ * belong to the second step, except that a keyframe directly after a step record shows the state after that step.
+ * Locations are numbered like in a {@link nl.rug.oop.rts.graph.GraphSnapshot}: nodes first, then edges. Armies get a
+ * number when the journal first sees them.
+ * Within a step come the moves, the changes in units, the armies that were added, the events and then the armies that
+ * were removed, so every event refers to an army that a replay knows at that point.
+ */
+final class JournalFormat {
+    static final int MAGIC = 0x52545331;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = Integer.BYTES * 4 + Short.BYTES;
+    /**
+     * The seed of the simulation: long seed.
+     */
+    static final byte SEED = 1;
+    /**
+     * The end of a step: int step.
+     */
+    static final byte STEP = 2;
+    /**
+     * The full state: int step, int amount of armies, then every army.
+     */
+    static final byte KEYFRAME = 3;
+    /**
+     * An army that was added: the army.
+     */
+    static final byte CREATE = 4;
+    /**
+     * An army that moved: int army, int location, int node it is on its way to or -1.
+     */
+    static final byte MOVE = 5;
+    /**
+     * An army that was removed: int army.
+     */
+    static final byte REMOVE = 6;
+    /**
+     * A change in the amount of units of an army during a step: int army, int change.
+     */
+    static final byte UNITS = 7;
+    /**
+     * An event that happened: int army or -1, int location, string event name.
+     */
+    static final byte EVENT = 8;
+    /**
+     * The size of an army without its faction name and buckets: int army, int location, int node it is on its way
+     * to or -1, int amount of units, int amount of buckets. Every bucket is a short key and an int count.
+     */
+    static final int ARMY_SIZE = Integer.BYTES * 5;
+    static final int BUCKET_SIZE = Short.BYTES + Integer.BYTES;
+
+    private JournalFormat() {
+    }
+
+    /**
+     * List the locations of a graph in the order they are numbered in.
+     * @param graph The graph.
+     * @return The nodes, followed by the edges.
+     */
+    static List<ArmyLocation> locations(Graph graph) {
+        List<ArmyLocation> locations = new ArrayList<>(graph.getNodes().size() + graph.getEdges().size());
+        locations.addAll(graph.getNodes());
+        locations.addAll(graph.getEdges());
+        return locations;
+    }
+
+    static int stringSize(String string) {
+        return Short.BYTES + string.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    static void putString(ByteBuffer buffer, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Move a buffer past a string.
+     * @param buffer The buffer, positioned at the string.
+     */
+    static void skipString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * Move a buffer past an army.
+     * @param buffer The buffer, positioned at the army.
+     */
+    static void skipArmy(ByteBuffer buffer) {
+        buffer.position(buffer.position() + Integer.BYTES * 2);
+        skipString(buffer);
+        buffer.position(buffer.position() + Integer.BYTES * 2);
+        int buckets = buffer.getInt();
+        buffer.position(buffer.position() + buckets * BUCKET_SIZE);
+    }
+
+    /**
+     * Move a buffer past a record.
+     * @param buffer The buffer, positioned right after the type of the record.
+     * @param type The type of the record.
+     */
+    static void skipRecord(ByteBuffer buffer, byte type) {
+        switch (type) {
+            case SEED -> buffer.position(buffer.position() + Long.BYTES);
+            case STEP, REMOVE -> buffer.position(buffer.position() + Integer.BYTES);
+            case UNITS -> buffer.position(buffer.position() + Integer.BYTES * 2);
+            case MOVE -> buffer.position(buffer.position() + Integer.BYTES * 3);
+            case CREATE -> skipArmy(buffer);
+            case EVENT -> {
+                buffer.position(buffer.position() + Integer.BYTES * 2);
+                skipString(buffer);
+            }
+            case KEYFRAME -> {
+                buffer.getInt();
+                int armies = buffer.getInt();
+                for (int i = 0; i < armies; i++) {
+                    skipArmy(buffer);
+                }
+            }
+            default -> throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.Graph;
+import nl.rug.oop.rts.graph.Node;
+import nl.rug.oop.rts.simulation.events.Event;
+import nl.rug.oop.rts.simulation.events.EventSink;
+import nl.rug.oop.rts.simulation.factions.Faction;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays a journal written by a {@link SimulationJournal} into a graph with the same layout, for example a copy of
+ * the graph that was recorded. The replay can go forward step by step, or seek to any step: it starts at the last
+ * keyframe before that step, so seeking takes time proportional to the keyframe interval instead of the step.
+ * The amount of units of every army is exact at every step. The health and damage of the units are exact at
+ * keyframes, units gained between keyframes get random stats. Replayed armies are compressed.
+ * A journal that ends in the middle of a record, for example because the recording was stopped abruptly, is replayed
+ * up to the last complete record.
+ */
+public class JournalReplay {
+    private final Graph graph;
+    private final List<ArmyLocation> locations;
+    private final ByteBuffer data;
+    private final int keyframeInterval;
+    private final List<int[]> keyframes = new ArrayList<>();
+    private int end;
+    private int lastStep = 0;
+    private long seed;
+    private boolean seeded = false;
+    private final Map<Integer, Army> armies = new HashMap<>();
+    private int step = -1;
+
+    /**
+     * Constructor for a replay. Reads the journal and finds its keyframes, but does not change the graph yet.
+     * @param path The path of the journal.
+     * @param graph The graph to replay into. It should have the same nodes and edges as the recorded graph.
+     * @throws IOException If the journal cannot be read or is not a journal.
+     */
+    public JournalReplay(Path path, Graph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.limit() < JournalFormat.HEADER_SIZE || data.getInt() != JournalFormat.MAGIC
+                || data.getShort() != JournalFormat.VERSION) {
+            throw new IOException("Not a simulation journal: " + path);
+        }
+        int nodesNum = data.getInt();
+        int edgesNum = data.getInt();
+        keyframeInterval = data.getInt();
+        if (graph.getNodes().size() != nodesNum || graph.getEdges().size() != edgesNum) {
+            throw new IllegalArgumentException("The graph does not have the layout of the recorded graph");
+        }
+        this.graph = graph;
+        this.locations = JournalFormat.locations(graph);
+        index();
+        if (keyframes.isEmpty()) {
+            throw new IOException("The journal has no keyframe: " + path);
+        }
+    }
+
+    /**
+     * Go through all records once to find the keyframes, the last step and the seed.
+     */
+    private void index() {
+        end = data.position();
+        try {
+            while (data.hasRemaining()) {
+                int start = data.position();
+                byte type = data.get();
+                JournalFormat.skipRecord(data, type);
+                // only look at the record once it is known to be complete.
+                if (type == JournalFormat.KEYFRAME) {
+                    keyframes.add(new int[] {data.getInt(start + 1), start});
+                } else if (type == JournalFormat.STEP) {
+                    lastStep = data.getInt(start + 1);
+                } else if (type == JournalFormat.SEED) {
+                    seed = data.getLong(start + 1);
+                    seeded = true;
+                }
+                end = data.position();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            // the last record is incomplete, so the journal ends before it.
+        }
+    }
+
+    public int getLastStep() {
+        return lastStep;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Get the step the graph shows.
+     * @return The step, or -1 if nothing was replayed yet.
+     */
+    public int getStep() {
+        return step;
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Put the graph in the state it was in after a step. The observers of the graph are notified once.
+     * @param target The step, from 0 up to the last step.
+     */
+    public void seek(int target) {
+        if (target < 0 || target > lastStep) {
+            throw new IllegalArgumentException("No step " + target + " in the journal");
+        }
+        int keyframe = 0;
+        for (int i = 0; i < keyframes.size(); i++) {
+            if (keyframes.get(i)[0] <= target) {
+                keyframe = i;
+            }
+        }
+        data.position(keyframes.get(keyframe)[1]);
+        replayUntil(target, EventSink.NONE);
+    }
+
+    /**
+     * Replay the next step. The events that happened during it are passed to a sink. The observers of the graph are
+     * notified once.
+     * @param sink The sink for the events.
+     * @return Whether there was a next step.
+     */
+    public boolean nextStep(EventSink sink) {
+        if (step < 0) {
+            seek(0);
+        }
+        if (step >= lastStep) {
+            return false;
+        }
+        replayUntil(step + 1, sink);
+        return true;
+    }
+
+    /**
+     * Apply records until the graph shows the state after a step.
+     * @param target The step.
+     * @param sink The sink for the events.
+     */
+    private void replayUntil(int target, EventSink sink) {
+        graph.beginChange();
+        try {
+            while (data.position() < end && !(step == target && data.get(data.position()) != JournalFormat.KEYFRAME)) {
+                applyRecord(sink);
+            }
+        } finally {
+            graph.commitChange();
+        }
+    }
+
+    /**
+     * Apply the record at the current position.
+     * @param sink The sink for the events.
+     */
+    private void applyRecord(EventSink sink) {
+        byte type = data.get();
+        switch (type) {
+            case JournalFormat.STEP -> {
+                step = data.getInt();
+            }
+            case JournalFormat.KEYFRAME -> applyKeyframe();
+            case JournalFormat.CREATE -> readArmy();
+            case JournalFormat.MOVE -> {
+                Army army = armies.get(data.getInt());
+                army.relocate(locations.get(data.getInt()));
+                army.setOnWayTo(getNode(data.getInt()));
+            }
+            case JournalFormat.REMOVE -> {
+                Army army = armies.remove(data.getInt());
+                army.getLocation().removeArmy(army);
+            }
+            case JournalFormat.UNITS -> {
+                Army army = armies.get(data.getInt());
+                int change = data.getInt();
+                if (change < 0) {
+                    army.truncateUnits(-change);
+                } else {
+                    army.addUnits(change);
+                }
+            }
+            case JournalFormat.EVENT -> {
+                Army army = armies.get(data.getInt());
+                data.getInt();
+                Event event = Event.createEvent(JournalFormat.getString(data));
+                if (army != null) {
+                    sink.eventHappened(event, army);
+                }
+            }
+            default -> JournalFormat.skipRecord(data, type);
+        }
+    }
+
+    /**
+     * Replace all armies in the graph by the armies in the keyframe at the current position.
+     */
+    private void applyKeyframe() {
+        step = data.getInt();
+        int armiesNum = data.getInt();
+        armies.clear();
+        for (ArmyLocation location : new ArrayList<>(graph.getOccupiedLocations())) {
+            for (Army army : new ArrayList<>(location.getArmiesPresent())) {
+                location.removeArmy(army);
+            }
+        }
+        for (int i = 0; i < armiesNum; i++) {
+            readArmy();
+        }
+    }
+
+    /**
+     * Read an army at the current position and add it to its location.
+     */
+    private void readArmy() {
+        int id = data.getInt();
+        ArmyLocation location = locations.get(data.getInt());
+        Faction faction = Faction.createFaction(JournalFormat.getString(data));
+        Node onWayTo = getNode(data.getInt());
+        int unitsNum = data.getInt();
+        int buckets = data.getInt();
+        int[] counts = new int[faction.getUnitNames().size() * UnitHistogram.DAMAGE_VALUES
+                * UnitHistogram.HEALTH_VALUES];
+        for (int b = 0; b < buckets; b++) {
+            int key = data.getShort() & 0xFFFF;
+            counts[key] = data.getInt();
+        }
+        Army army = Army.createFromCounts(faction, location, counts, unitsNum);
+        army.setOnWayTo(onWayTo);
+        location.addArmy(army);
+        armies.put(id, army);
+    }
+
+    /**
+     * Get a node by its number.
+     * @param id The number of the node, or -1.
+     * @return The node, or null if the number is -1.
+     */
+    private Node getNode(int id) {
+        return id < 0 ? null : (Node) locations.get(id);
+    }
+}
@@ -0,0 +1,161 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+
+import java.util.List;
+
+/**
+ * Resolves battles with an aggregate model instead of letting every unit fight. Only the amount of units, the mean
+ * damage and the mean health of both teams are used, so a battle takes time proportional to the amount of armies
+ * plus one pass over the units (or buckets, for compressed armies) to get the means, no matter how many rounds the
+ * exact model would need.
+ * The model is Lanchester's law: the fighting strength of a team is its kill rate (mean damage divided by the mean
+ * health of the enemy) times its amount of units to the power of an exponent. The team with the highest strength
+ * wins and keeps the amount of units for which the difference in strength is left.
+ * With an exponent of 2 this is the square law. The exact model lets units fight in pairs, with the bigger team only
+ * getting bonus damage, so it lies between the linear law (exponent 1) and the square law. The default exponent is
+ * fitted to the exact model.
+ * The losses of the winning team are divided over its armies by their amount of units and are taken from the back,
+ * so the health of the survivors does not change. The armies of the losing team lose all their units.
+ */
+public class LanchesterBattle {
+    /**
+     * The exponent that fits the exact model best for armies of at least a few hundred units.
+     */
+    public static final double DEFAULT_EXPONENT = 1.42;
+    private static final int TEAMS = 2;
+    private final double exponent;
+    private final long[] units = new long[TEAMS];
+    private final double[] damageSum = new double[TEAMS];
+    private final double[] healthSum = new double[TEAMS];
+
+    /**
+     * Constructor for a battle model with the default exponent.
+     */
+    public LanchesterBattle() {
+        this(DEFAULT_EXPONENT);
+    }
+
+    /**
+     * Constructor for battle model.
+     * @param exponent The power the amount of units is raised to. 1 is the linear law, 2 the square law.
+     */
+    public LanchesterBattle(double exponent) {
+        if (exponent <= 0) {
+            throw new IllegalArgumentException("The exponent should be positive, but was " + exponent);
+        }
+        this.exponent = exponent;
+    }
+
+    /**
+     * Count the units at a location.
+     * @param location The location.
+     * @return The total amount of units of all armies at the location.
+     */
+    public static long countUnits(ArmyLocation location) {
+        return (long) location.getUnitsNum(0) + location.getUnitsNum(1);
+    }
+
+    /**
+     * Resolve a battle at a location.
+     * @param location The location of the battle.
+     */
+    public void battle(ArmyLocation location) {
+        battle(location, null);
+    }
+
+    /**
+     * Resolve a battle at a location, but leave defeated armies at the location instead of removing them.
+     * @param location The location of the battle.
+     * @param defeated The list the armies without survivors are added to. If null, they are removed from the location.
+     */
+    public void battle(ArmyLocation location, List<Army> defeated) {
+        List<Army> present = List.copyOf(location.getArmiesPresent());
+        sumUnits(present);
+        if (units[0] == 0 || units[1] == 0) {
+            return;
+        }
+        double strength0 = getStrength(0);
+        double strength1 = getStrength(1);
+        int winner = strength0 >= strength1 ? 0 : 1;
+        double left = Math.abs(strength0 - strength1) / getKillRate(winner);
+        long survivors = Math.min(units[winner], Math.round(Math.pow(left, 1 / exponent)));
+        if (strength0 == strength1) {
+            survivors = 0;
+        }
+        long losses = units[winner] - survivors;
+        for (Army army : present) {
+            int team = army.getFaction().getTeamNum();
+            long armyLosses = team == winner ? takeShare(army, losses) : army.getUnitsNum();
+            losses -= team == winner ? armyLosses : 0;
+            units[team] -= army.getUnitsNum();
+            removeUnits(army, (int) armyLosses, defeated);
+        }
+    }
+
+    /**
+     * Sum the amount of units, the damage and the health of both teams.
+     * @param present The armies present at the location of the battle.
+     */
+    private void sumUnits(List<Army> present) {
+        for (int team = 0; team < TEAMS; team++) {
+            units[team] = 0;
+            damageSum[team] = 0;
+            healthSum[team] = 0;
+        }
+        for (Army army : present) {
+            int team = army.getFaction().getTeamNum();
+            units[team] += army.getUnitsNum();
+            damageSum[team] += army.getTotalDamage();
+            healthSum[team] += army.getTotalHealth();
+        }
+    }
+
+    /**
+     * Get the kill rate of a team: the fraction of an enemy unit a single unit of the team kills.
+     * @param team The team.
+     * @return The mean damage of the team divided by the mean health of the other team.
+     */
+    private double getKillRate(int team) {
+        int enemy = 1 - team;
+        return (damageSum[team] / units[team]) / (healthSum[enemy] / units[enemy]);
+    }
+
+    /**
+     * Get the fighting strength of a team.
+     * @param team The team.
+     * @return The kill rate of the team times its amount of units to the power of the exponent.
+     */
+    private double getStrength(int team) {
+        return getKillRate(team) * Math.pow(units[team], exponent);
+    }
+
+    /**
+     * Get the share of the losses of its team an army has to take. Every army loses the same fraction of the units
+     * the team has left to divide the losses over, so the last army takes whatever remains after rounding.
+     * @param army The army.
+     * @param losses The losses that still have to be divided over the armies of the team that are left.
+     * @return The amount of units the army loses.
+     */
+    private long takeShare(Army army, long losses) {
+        long teamLeft = units[army.getFaction().getTeamNum()];
+        return Math.min(army.getUnitsNum(), Math.round((double) losses * army.getUnitsNum() / teamLeft));
+    }
+
+    /**
+     * Remove units from the back of an army.
+     * @param army The army.
+     * @param amount The amount of units to remove.
+     * @param defeated The list the army is added to if it has no units left. If null, it is removed from its location.
+     */
+    private static void removeUnits(Army army, int amount, List<Army> defeated) {
+        if (amount == 0) {
+            return;
+        }
+        if (defeated == null) {
+            army.removeUnits(amount);
+        } else if (army.truncateUnits(amount)) {
+            defeated.add(army);
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.CompactGraph;
+import nl.rug.oop.rts.simulation.events.Event;
+import nl.rug.oop.rts.simulation.factions.Faction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A checkpoint of a {@link CompactSimulation} in a memory-mapped file. The state is laid out in columns, like the
+ * armies keep it: the layout of the graph, a fixed size record for every army, then the damage, health and type of
+ * all units and the buckets of all compressed armies, each as one array. Writing a checkpoint copies these arrays into
+ * the mapping and flushes it, and restoring one copies them straight back, so both take about as long as copying the
+ * memory. The file is written in the byte order of the machine.
+ * The buckets of compressed armies are not copied from the heap at all: the first checkpoint moves them into a
+ * second mapped file next to the checkpoint, where the armies keep changing them in place, so a checkpoint copies
+ * every histogram with one bulk copy between mappings. A restored simulation keeps its buckets there as well. The units
+ * of armies that are not compressed still live on the heap. A store belongs to one simulation at a time, since it
+ * moves the buckets of every army it does not find in the graph it writes back to the heap.
+ * The file holds two slots. A checkpoint is written into the slot that does not hold the last one, flushed, and only
+ * then made the current one by flipping a pointer in the header of the file, so a checkpoint that was cut off leaves
+ * the last complete one in place.
+ * The state of the random stream of every army is stored without drawing from it, so writing a checkpoint does not
+ * change the simulation, and a restored simulation goes on exactly like the one that wrote the checkpoint.
+ * A mapping holds at most 2 GB, and it holds both slots, so a checkpoint can have about 100 million units.
+ */
+public final class MappedArmyStore implements AutoCloseable {
+    private static final int MAGIC = 0x52545343;
+    private static final short VERSION = 4;
+    /**
+     * The header of the file: int magic, short version, byte current slot plus one or 0 if there is none, then for
+     * both slots long offset and long size.
+     */
+    private static final int CURRENT = 6;
+    private static final int SLOTS = 8;
+    private static final int HEADER_SIZE = 48;
+    /**
+     * The header of a slot: int step phase, int amount of nodes, edges, armies, units, buckets, events and factions.
+     */
+    private static final int STEP_PHASE = 0;
+    private static final int NODES_NUM = 4;
+    private static final int EDGES_NUM = 8;
+    private static final int ARMIES_NUM = 12;
+    private static final int UNITS_NUM = 16;
+    private static final int BUCKETS_NUM = 20;
+    private static final int EVENTS_NUM = 24;
+    private static final int FACTIONS_NUM = 28;
+    private static final int SLOT_HEADER_SIZE = 32;
+    /**
+     * An army: int location, int node it is on its way to or -1, long seed and long gamma of its random stream, short
+     * faction, short compressed, int amount of units, int first unit or bucket in the columns, int amount of units or
+     * buckets.
+     */
+    private static final int ARMY_SIZE = 40;
+    /**
+     * The size of the parts the file with the live buckets is mapped in.
+     */
+    private static final int LIVE_CHUNK_SIZE = 64 << 20;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private final Path liveFile;
+    private final FileChannel liveChannel;
+    private long liveSize = 0;
+    /**
+     * The part of the live file that new blocks are taken from.
+     */
+    private IntBuffer liveChunk;
+    /**
+     * Blocks that were given back, by their length in ints. The amount of buckets only depends on the faction, so
+     * blocks of the same length come back often.
+     */
+    private final Map<Integer, ArrayDeque<IntBuffer>> freeBlocks = new HashMap<>();
+    /**
+     * The histograms that keep their buckets in the live file, with their block.
+     */
+    private final Map<UnitHistogram, IntBuffer> attached = new IdentityHashMap<>();
+
+    /**
+     * Open a checkpoint file, creating it if it does not exist. The live buckets go in a file with the same name
+     * followed by .live, which is emptied.
+     * @param file The file.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public MappedArmyStore(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        map(Math.max(channel.size(), HEADER_SIZE));
+        this.liveFile = file.resolveSibling(file.getFileName() + ".live");
+        this.liveChannel = FileChannel.open(liveFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Map the file with at least a certain size, growing it if it is smaller.
+     * @param size The size in bytes.
+     * @throws IOException If mapping fails.
+     */
+    private void map(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("A checkpoint of " + size + " bytes does not fit in one mapping");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Take a block from the live file.
+     * @param length The length of the block in ints.
+     * @return The block, with undefined contents.
+     * @throws IOException If the live file cannot be grown.
+     */
+    private IntBuffer allocate(int length) throws IOException {
+        ArrayDeque<IntBuffer> free = freeBlocks.get(length);
+        if (free != null && !free.isEmpty()) {
+            return free.pop();
+        }
+        if (liveChunk == null || liveChunk.remaining() < length) {
+            long chunkSize = Math.max(LIVE_CHUNK_SIZE, (long) length * Integer.BYTES);
+            MappedByteBuffer chunk = liveChannel.map(FileChannel.MapMode.READ_WRITE, liveSize, chunkSize);
+            chunk.order(ByteOrder.nativeOrder());
+            liveSize += chunkSize;
+            liveChunk = chunk.asIntBuffer();
+        }
+        IntBuffer block = liveChunk.slice(liveChunk.position(), length);
+        liveChunk.position(liveChunk.position() + length);
+        return block;
+    }
+
+    /**
+     * Move the buckets of a histogram into the live file, if they are not there yet.
+     * @param histogram The histogram.
+     * @throws IOException If the live file cannot be grown.
+     */
+    private void attach(UnitHistogram histogram) throws IOException {
+        if (!attached.containsKey(histogram)) {
+            IntBuffer block = allocate(histogram.keysNum());
+            histogram.moveTo(block);
+            attached.put(histogram, block);
+        }
+    }
+
+    /**
+     * Move the buckets of a histogram back to the heap and give its block back.
+     * @param histogram The histogram.
+     * @param block The block it used.
+     */
+    private void detach(UnitHistogram histogram, IntBuffer block) {
+        histogram.moveToHeap();
+        freeBlocks.computeIfAbsent(block.limit(), length -> new ArrayDeque<>()).push(block);
+    }
+
+    /**
+     * Move the buckets of all histograms that are not used by one of some armies back to the heap.
+     * @param used The histograms of the armies.
+     */
+    private void detachAllBut(Set<UnitHistogram> used) {
+        Iterator<Map.Entry<UnitHistogram, IntBuffer>> entries = attached.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<UnitHistogram, IntBuffer> entry = entries.next();
+            if (!used.contains(entry.getKey())) {
+                detach(entry.getKey(), entry.getValue());
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Check if the file holds a complete checkpoint.
+     * @return Whether there is a checkpoint to restore.
+     */
+    public boolean hasCheckpoint() {
+        return buffer.getInt(0) == MAGIC && buffer.getShort(4) == VERSION && buffer.get(CURRENT) != 0;
+    }
+
+    /**
+     * Get the current slot.
+     * @return The contents of the slot that holds the last complete checkpoint.
+     */
+    private ByteBuffer currentSlot() {
+        if (!hasCheckpoint()) {
+            throw new IllegalStateException("The file does not hold a complete checkpoint");
+        }
+        int current = buffer.get(CURRENT) - 1;
+        long offset = buffer.getLong(SLOTS + current * 2 * Long.BYTES);
+        long size = buffer.getLong(SLOTS + current * 2 * Long.BYTES + Long.BYTES);
+        return buffer.slice((int) offset, (int) size).order(buffer.order());
+    }
+
+    /**
+     * Write a checkpoint of a graph into the other slot, then make it the current one.
+     * @param graph The graph.
+     * @param stepPhase The phase the simulation of the graph is in.
+     * @throws IOException If the file cannot be grown.
+     */
+    void write(CompactGraph graph, int stepPhase) throws IOException {
+        int nodesNum = graph.getNodesNum();
+        int edgesNum = graph.getEdgesNum();
+        List<Army> armies = new ArrayList<>();
+        List<ArmyLocation> armyLocations = new ArrayList<>();
+        for (ArmyLocation location: graph.getOccupiedLocations()) {
+            for (Army army: location.getArmiesPresent()) {
+                armies.add(army);
+                armyLocations.add(location);
+            }
+        }
+        // save the units first, to know how long the columns are. Histograms that are new since the last checkpoint
+        // move into the live file, and the ones no army uses anymore move out.
+        Object[] units = new Object[armies.size()];
+        int unitsNum = 0;
+        int bucketsNum = 0;
+        Set<UnitHistogram> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < armies.size(); i++) {
+            Army army = armies.get(i);
+            if (army.isCompressed()) {
+                UnitHistogram histogram = army.getHistogram();
+                attach(histogram);
+                used.add(histogram);
+                units[i] = attached.get(histogram);
+                bucketsNum += histogram.keysNum();
+            } else {
+                UnitsImage image = army.saveUnits();
+                units[i] = image;
+                unitsNum += image.getUnitsNum();
+            }
+        }
+        detachAllBut(used);
+        List<byte[]> events = new ArrayList<>();
+        List<Integer> eventLocations = new ArrayList<>();
+        for (int number = 0; number < nodesNum + edgesNum; number++) {
+            CompactGraph.Location location = graph.getLocationIfPresent(number);
+            if (location != null) {
+                for (Event event: location.getEvents()) {
+                    eventLocations.add(number);
+                    events.add(event.getName().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        Map<String, Integer> factionNumbers = new HashMap<>();
+        List<byte[]> factions = new ArrayList<>();
+        for (Army army: armies) {
+            String name = army.getFaction().getFactionName();
+            if (!factionNumbers.containsKey(name)) {
+                factionNumbers.put(name, factions.size());
+                factions.add(name.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        long size = SLOT_HEADER_SIZE + stringsOffset(nodesNum, edgesNum, armies.size(), unitsNum, bucketsNum);
+        for (byte[] event: events) {
+            size += Integer.BYTES + Short.BYTES + event.length;
+        }
+        for (byte[] faction: factions) {
+            size += Short.BYTES + faction.length;
+        }
+        // the new slot goes before the current one if it fits there, otherwise after it.
+        boolean hasCurrent = hasCheckpoint();
+        int current = hasCurrent ? buffer.get(CURRENT) - 1 : 1;
+        int next = 1 - current;
+        long start = HEADER_SIZE;
+        if (hasCurrent) {
+            long currentOffset = buffer.getLong(SLOTS + current * 2 * Long.BYTES);
+            long currentSize = buffer.getLong(SLOTS + current * 2 * Long.BYTES + Long.BYTES);
+            if (currentOffset - HEADER_SIZE < size) {
+                start = (currentOffset + currentSize + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+            }
+        }
+        if (start + size > buffer.capacity()) {
+            map(Math.max(start + size, buffer.capacity() + buffer.capacity() / 2));
+        }
+        ByteBuffer slot = buffer.slice((int) start, (int) size).order(buffer.order());
+
+        int offset = SLOT_HEADER_SIZE;
+        IntWriter nodeX = new IntWriter(slot, offset);
+        IntWriter nodeY = new IntWriter(slot, offset += nodesNum * Integer.BYTES);
+        IntWriter edgeNodes = new IntWriter(slot, offset += nodesNum * Integer.BYTES);
+        for (int node = 0; node < nodesNum; node++) {
+            nodeX.put(graph.getNodeX(node));
+            nodeY.put(graph.getNodeY(node));
+        }
+        for (int edge = 0; edge < edgesNum; edge++) {
+            edgeNodes.put(graph.getEdgeNode(edge, 0));
+            edgeNodes.put(graph.getEdgeNode(edge, 1));
+        }
+        int records = offset + 2 * edgesNum * Integer.BYTES;
+        IntWriter damage = new IntWriter(slot, records + armies.size() * ARMY_SIZE);
+        IntWriter health = new IntWriter(slot, damage.offset + unitsNum * Integer.BYTES);
+        IntWriter counts = new IntWriter(slot, health.offset + unitsNum * Integer.BYTES);
+        int types = counts.offset + bucketsNum * Integer.BYTES;
+        int unit = 0;
+        int bucket = 0;
+        for (int i = 0; i < armies.size(); i++) {
+            Army army = armies.get(i);
+            int record = records + i * ARMY_SIZE;
+            slot.putInt(record, ((CompactGraph.Location) armyLocations.get(i)).getNumber());
+            slot.putInt(record + 4, army.getDestination());
+            slot.putLong(record + 8, army.getRandom().getSeed());
+            slot.putLong(record + 16, army.getRandom().getGamma());
+            slot.putShort(record + 24, factionNumbers.get(army.getFaction().getFactionName()).shortValue());
+            slot.putShort(record + 26, (short) (army.isCompressed() ? 1 : 0));
+            slot.putInt(record + 28, army.getUnitsNum());
+            if (units[i] instanceof UnitsImage image) {
+                int num = image.getUnitsNum();
+                slot.putInt(record + 32, unit);
+                slot.putInt(record + 36, num);
+                damage.put(image.getDamage(), num);
+                health.put(image.getHealth(), num);
+                slot.put(types + unit, image.getTypes(), 0, num);
+                unit += num;
+            } else {
+                IntBuffer block = (IntBuffer) units[i];
+                slot.putInt(record + 32, bucket);
+                slot.putInt(record + 36, block.limit());
+                counts.put(block);
+                bucket += block.limit();
+            }
+        }
+        int strings = types + unitsNum;
+        for (int i = 0; i < events.size(); i++) {
+            slot.putInt(strings, eventLocations.get(i));
+            strings = putString(slot, strings + Integer.BYTES, events.get(i));
+        }
+        for (byte[] faction: factions) {
+            strings = putString(slot, strings, faction);
+        }
+        slot.putInt(STEP_PHASE, stepPhase);
+        slot.putInt(NODES_NUM, nodesNum);
+        slot.putInt(EDGES_NUM, edgesNum);
+        slot.putInt(ARMIES_NUM, armies.size());
+        slot.putInt(UNITS_NUM, unitsNum);
+        slot.putInt(BUCKETS_NUM, bucketsNum);
+        slot.putInt(EVENTS_NUM, events.size());
+        slot.putInt(FACTIONS_NUM, factions.size());
+        buffer.force((int) start, (int) size);
+
+        // describe the new slot, and only once that is on disk, make it the current one.
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putLong(SLOTS + next * 2 * Long.BYTES, start);
+        buffer.putLong(SLOTS + next * 2 * Long.BYTES + Long.BYTES, size);
+        buffer.force(0, HEADER_SIZE);
+        buffer.put(CURRENT, (byte) (next + 1));
+        buffer.force(0, HEADER_SIZE);
+    }
+
+    /**
+     * Get the phase the checkpointed simulation was in.
+     * @return The step phase.
+     */
+    int getStepPhase() {
+        return currentSlot().getInt(STEP_PHASE);
+    }
+
+    /**
+     * Build the graph of the checkpoint with its events and armies. The armies are added in the order they were
+     * checkpointed in, without resolving events. The buckets of compressed armies are copied into the live file, and
+     * the armies of a simulation this store restored or wrote before move their buckets back to the heap.
+     * @return The graph.
+     * @throws IOException If the live file cannot be grown.
+     */
+    CompactGraph readGraph() throws IOException {
+        ByteBuffer slot = currentSlot();
+        int nodesNum = slot.getInt(NODES_NUM);
+        int edgesNum = slot.getInt(EDGES_NUM);
+        int armiesNum = slot.getInt(ARMIES_NUM);
+        int unitsNum = slot.getInt(UNITS_NUM);
+        int bucketsNum = slot.getInt(BUCKETS_NUM);
+        int offset = SLOT_HEADER_SIZE;
+        int[] nodeX = readInts(slot, offset, nodesNum);
+        int[] nodeY = readInts(slot, offset += nodesNum * Integer.BYTES, nodesNum);
+        int[] edgeNodes = readInts(slot, offset += nodesNum * Integer.BYTES, 2 * edgesNum);
+        CompactGraph graph = new CompactGraph(nodeX, nodeY, edgeNodes);
+
+        int records = offset + 2 * edgesNum * Integer.BYTES;
+        int damage = records + armiesNum * ARMY_SIZE;
+        int health = damage + unitsNum * Integer.BYTES;
+        int counts = health + unitsNum * Integer.BYTES;
+        int types = counts + bucketsNum * Integer.BYTES;
+        int strings = types + unitsNum;
+        IntBuffer countsColumn = slot.slice(counts, bucketsNum * Integer.BYTES).order(slot.order()).asIntBuffer();
+        detachAllBut(Set.of());
+        for (int i = slot.getInt(EVENTS_NUM); i > 0; i--) {
+            int location = slot.getInt(strings);
+            String name = getString(slot, strings + Integer.BYTES);
+            strings += Integer.BYTES + Short.BYTES + (slot.getShort(strings + Integer.BYTES) & 0xFFFF);
+            graph.getLocation(location).addEvent(Event.createEvent(name));
+        }
+        Faction[] factions = new Faction[slot.getInt(FACTIONS_NUM)];
+        for (int i = 0; i < factions.length; i++) {
+            factions[i] = Faction.createFaction(getString(slot, strings));
+            strings += Short.BYTES + (slot.getShort(strings) & 0xFFFF);
+        }
+
+        for (int i = 0; i < armiesNum; i++) {
+            int record = records + i * ARMY_SIZE;
+            ArmyRandom random = ArmyRandom.restore(slot.getLong(record + 8), slot.getLong(record + 16));
+            Faction faction = factions[slot.getShort(record + 24)];
+            int armyUnitsNum = slot.getInt(record + 28);
+            int first = slot.getInt(record + 32);
+            int parts = slot.getInt(record + 36);
+            Army army;
+            if (slot.getShort(record + 26) == 1) {
+                IntBuffer block = allocate(parts);
+                block.put(0, countsColumn, first, parts);
+                UnitHistogram histogram = new UnitHistogram(block, armyUnitsNum);
+                attached.put(histogram, block);
+                army = Army.createFromHistogram(faction, null, histogram, random);
+            } else {
+                byte[] unitTypes = new byte[parts];
+                slot.get(types + first, unitTypes);
+                army = new Army(0, faction, null, random);
+                army.restoreUnits(new UnitsImage(readInts(slot, damage + first * Integer.BYTES, parts),
+                        readInts(slot, health + first * Integer.BYTES, parts), unitTypes, null, parts));
+            }
+            army.setDestination(slot.getInt(record + 4));
+            ArmyLocation location = graph.getLocation(slot.getInt(record));
+            army.setLocation(location);
+            location.addArmy(army);
+        }
+        return graph;
+    }
+
+    private static int[] readInts(ByteBuffer slot, int offset, int length) {
+        int[] values = new int[length];
+        slot.slice(offset, length * Integer.BYTES).order(slot.order()).asIntBuffer().get(values);
+        return values;
+    }
+
+    private static int putString(ByteBuffer slot, int offset, byte[] bytes) {
+        slot.putShort(offset, (short) bytes.length);
+        slot.put(offset + Short.BYTES, bytes);
+        return offset + Short.BYTES + bytes.length;
+    }
+
+    private static String getString(ByteBuffer slot, int offset) {
+        byte[] bytes = new byte[slot.getShort(offset) & 0xFFFF];
+        slot.get(offset + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the size of the columns, which the events and factions come after.
+     * @return The size in bytes.
+     */
+    private static long stringsOffset(int nodesNum, int edgesNum, int armiesNum, int unitsNum, int bucketsNum) {
+        return (2L * nodesNum + 2L * edgesNum) * Integer.BYTES + (long) armiesNum * ARMY_SIZE
+                + (long) unitsNum * (2 * Integer.BYTES + 1) + (long) bucketsNum * Integer.BYTES;
+    }
+
+    /**
+     * Close the file. The buckets in the live file move back to the heap, so the armies can go on without the store,
+     * and the live file is deleted. The mappings themselves are released once they are no longer used.
+     * @throws IOException If closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        detachAllBut(Set.of());
+        liveChunk = null;
+        freeBlocks.clear();
+        liveChannel.close();
+        Files.deleteIfExists(liveFile);
+        channel.close();
+    }
+
+    /**
+     * Writes a column of ints into a slot, one after the other or in bulk.
+     */
+    private static final class IntWriter {
+        private final ByteBuffer slot;
+        private final int offset;
+        private int position;
+
+        IntWriter(ByteBuffer slot, int offset) {
+            this.slot = slot;
+            this.offset = offset;
+            this.position = offset;
+        }
+
+        void put(int value) {
+            slot.putInt(position, value);
+            position += Integer.BYTES;
+        }
+
+        void put(IntBuffer values) {
+            slot.slice(position, values.limit() * Integer.BYTES).order(slot.order()).asIntBuffer().put(0, values, 0,
+                    values.limit());
+            position += values.limit() * Integer.BYTES;
+        }
+
+        void put(int[] values, int length) {
+            slot.slice(position, length * Integer.BYTES).order(slot.order()).asIntBuffer().put(values, 0, length);
+            position += length * Integer.BYTES;
+        }
+    }
+}
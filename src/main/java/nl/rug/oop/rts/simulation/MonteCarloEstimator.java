@@ -0,0 +1,194 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.Graph;
+import nl.rug.oop.rts.graph.GraphSnapshot;
+import nl.rug.oop.rts.simulation.events.EventSink;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Estimates the outcome of a scenario by simulating many independent copies (replicas) of a graph until they are
+ * decided. Replicas are simulated in batches on an executor, so all cores can be used. After every batch the
+ * estimation stops if the confidence interval of the win probability of team 0 is tight enough.
+ * Every replica gets its own seed, drawn from one seeded source, so the same seed gives the same estimate.
+ * Copies of the graph are reused: a replica takes a free copy, or makes one if there is none, and gives it back when
+ * it is done, so there are only as many copies as replicas running at the same time. Before each replica, the armies
+ * of the copy are reset from a snapshot. The copies belong to one estimate and are dropped when it is done.
+ */
+public class MonteCarloEstimator {
+    /**
+     * The z-value of a 95% confidence interval.
+     */
+    static final double Z_95 = 1.96;
+    private final Graph graph;
+    private final ExecutorService executor;
+    private int maxSteps = 10000;
+    private int batchSize = Runtime.getRuntime().availableProcessors() * 8;
+
+    /**
+     * Constructor for an estimator that uses the common fork/join pool.
+     * @param graph The graph to estimate the outcome of. It is only copied, never changed.
+     */
+    public MonteCarloEstimator(Graph graph) {
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for estimator.
+     * @param graph The graph to estimate the outcome of. It is only copied, never changed.
+     * @param executor The executor the replicas are simulated on.
+     */
+    public MonteCarloEstimator(Graph graph, ExecutorService executor) {
+        this.graph = graph;
+        this.executor = executor;
+    }
+
+    /**
+     * Set the maximum amount of steps a replica is simulated for. Replicas that are not decided by then count as
+     * undecided.
+     * @param maxSteps The maximum amount of steps.
+     */
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Set the amount of replicas that are simulated before checking if the estimate is precise enough.
+     * @param batchSize The amount of replicas per batch.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Estimate the outcome of the graph.
+     * @param seed The seed the seeds of the replicas are drawn from.
+     * @param maxReplicas The maximum amount of replicas to simulate.
+     * @param targetHalfWidth Stop once the half width of the 95% confidence interval of the win probability of team 0
+     *                        is at most this value.
+     * @return The estimate.
+     */
+    public OutcomeEstimate estimate(long seed, int maxReplicas, double targetHalfWidth) {
+        SplittableRandom seeds = new SplittableRandom(seed);
+        Map<String, Double> survivorSums = new HashMap<>();
+        Map<String, Double> survivorSquareSums = new HashMap<>();
+        for (ArmyLocation location : graph.getOccupiedLocations()) {
+            for (Army army : location.getArmiesPresent()) {
+                survivorSums.put(army.getFaction().getFactionName(), 0.0);
+            }
+        }
+        GraphSnapshot initial = new GraphSnapshot(graph);
+        Queue<Graph> freeCopies = new ConcurrentLinkedQueue<>();
+        int[] wins = new int[2];
+        int replicas = 0;
+        long start = System.nanoTime();
+        while (replicas < maxReplicas) {
+            List<Callable<ReplicaOutcome>> batch = new ArrayList<>();
+            for (int i = 0; i < Math.min(batchSize, maxReplicas - replicas); i++) {
+                long replicaSeed = seeds.nextLong();
+                batch.add(() -> runReplica(freeCopies, initial, replicaSeed));
+            }
+            for (ReplicaOutcome outcome : runBatch(batch)) {
+                if (outcome.winner >= 0) {
+                    wins[outcome.winner]++;
+                }
+                for (Map.Entry<String, Integer> entry : outcome.survivors.entrySet()) {
+                    double units = entry.getValue();
+                    survivorSums.merge(entry.getKey(), units, Double::sum);
+                    survivorSquareSums.merge(entry.getKey(), units * units, Double::sum);
+                }
+            }
+            replicas += batch.size();
+            if (OutcomeEstimate.wilsonHalfWidth(wins[0], replicas) <= targetHalfWidth) {
+                break;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new OutcomeEstimate(replicas, wins[0], wins[1], survivorSums, survivorSquareSums, replicas / seconds);
+    }
+
+    /**
+     * Simulate a batch of replicas on the executor and wait until they are all done.
+     * @param batch The replicas to simulate.
+     * @return The outcomes of the replicas.
+     */
+    private List<ReplicaOutcome> runBatch(List<Callable<ReplicaOutcome>> batch) {
+        List<ReplicaOutcome> outcomes = new ArrayList<>();
+        try {
+            for (Future<ReplicaOutcome> result : executor.invokeAll(batch)) {
+                outcomes.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating replicas", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulating a replica failed", e.getCause());
+        }
+        return outcomes;
+    }
+
+    /**
+     * Simulate a single replica: reset a copy of the graph to the start and simulate it until it is decided.
+     * @param freeCopies The copies of the graph no other replica is using. The replica takes one, or makes a new one
+     *                   if there is none, and gives it back when it is done.
+     * @param start The snapshot of the armies at the start.
+     * @param seed The seed of the replica.
+     * @return The outcome of the replica.
+     */
+    private ReplicaOutcome runReplica(Queue<Graph> freeCopies, GraphSnapshot start, long seed) {
+        Graph replica = freeCopies.poll();
+        if (replica == null) {
+            replica = graph.copy();
+        }
+        try {
+            return simulateReplica(replica, start, seed);
+        } finally {
+            freeCopies.add(replica);
+        }
+    }
+
+    /**
+     * Reset a copy of the graph to the start and simulate it until it is decided.
+     * @param replica The copy of the graph to simulate on.
+     * @param start The snapshot of the armies at the start.
+     * @param seed The seed of the replica.
+     * @return The outcome of the replica.
+     */
+    private ReplicaOutcome simulateReplica(Graph replica, GraphSnapshot start, long seed) {
+        start.restore(replica);
+        Simulation simulation = new Simulation(replica, EventSink.NONE, seed);
+        simulation.runUntilDecided(maxSteps);
+
+        ReplicaOutcome outcome = new ReplicaOutcome();
+        for (ArmyLocation location : replica.getOccupiedLocations()) {
+            for (Army army : location.getArmiesPresent()) {
+                outcome.survivors.merge(army.getFaction().getFactionName(), army.getUnitsNum(), Integer::sum);
+            }
+        }
+        boolean team0Alive = replica.getUnitsNum(0) > 0;
+        if (team0Alive != replica.getUnitsNum(1) > 0) {
+            outcome.winner = team0Alive ? 0 : 1;
+        }
+        return outcome;
+    }
+
+    /**
+     * The outcome of a single replica.
+     */
+    private static class ReplicaOutcome {
+        private int winner = -1;
+        private final Map<String, Integer> survivors = new HashMap<>();
+    }
+}
@@ -0,0 +1,27 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.Node;
+
+/**
+ * Decides where an army at a node goes next. Used by the agents of an {@link AgentSimulation}, which call it from
+ * their own threads, so a policy should only change the army it is given. All randomness should come from the random
+ * stream of the army, so seeded simulations stay the same.
+ */
+@FunctionalInterface
+public interface MovePolicy {
+    /**
+     * Policy that picks a random adjacent node, like {@link Simulation} does.
+     */
+    MovePolicy RANDOM = (army, node) -> {
+        int adjacentNodesNum = node.getAdjacentNodesNum();
+        return adjacentNodesNum == 0 ? null : node.getAdjacentNode(army.getRandom().nextInt(adjacentNodesNum));
+    };
+
+    /**
+     * Choose the node an army goes to.
+     * @param army The army.
+     * @param node The node the army is at.
+     * @return An adjacent node, or null if the army stays where it is.
+     */
+    Node chooseDestination(Army army, Node node);
+}
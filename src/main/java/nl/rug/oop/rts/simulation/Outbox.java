@@ -0,0 +1,47 @@
+package nl.rug.oop.rts.simulation;
+
+import java.util.Arrays;
+
+/**
+ * The armies one region sends to another during a phase, with the numbers of the locations they go to.
+ */
+class Outbox {
+    private Army[] armies = new Army[16];
+    private int[] locations = new int[16];
+    private int size = 0;
+
+    /**
+     * Add an army to the outbox.
+     * @param army The army.
+     * @param location The number of the location it goes to.
+     */
+    void add(Army army, int location) {
+        if (size == armies.length) {
+            armies = Arrays.copyOf(armies, size * 2);
+            locations = Arrays.copyOf(locations, size * 2);
+        }
+        armies[size] = army;
+        locations[size] = location;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Army getArmy(int index) {
+        return armies[index];
+    }
+
+    int getLocation(int index) {
+        return locations[index];
+    }
+
+    /**
+     * Empty the outbox.
+     */
+    void clear() {
+        Arrays.fill(armies, 0, size, null);
+        size = 0;
+    }
+}
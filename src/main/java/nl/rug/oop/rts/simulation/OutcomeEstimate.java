@@ -0,0 +1,145 @@
+package nl.rug.oop.rts.simulation;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outcome of a Monte Carlo estimation. Holds the chance that team 0 wins and the expected amount of units each
+ * faction has left at the end, together with their 95% confidence intervals.
+ */
+public class OutcomeEstimate {
+    private final int replicas;
+    private final int team0Wins;
+    private final int team1Wins;
+    private final Map<String, Double> survivorSums;
+    private final Map<String, Double> survivorSquareSums;
+    private final double replicasPerSecond;
+
+    /**
+     * Constructor for the estimate.
+     * @param replicas The amount of replicas that were simulated.
+     * @param team0Wins The amount of replicas team 0 won.
+     * @param team1Wins The amount of replicas team 1 won.
+     * @param survivorSums Per faction name, the sum of the units left over all replicas.
+     * @param survivorSquareSums Per faction name, the sum of the squared units left over all replicas.
+     * @param replicasPerSecond The amount of replicas that were simulated per second.
+     */
+    public OutcomeEstimate(int replicas, int team0Wins, int team1Wins, Map<String, Double> survivorSums,
+                           Map<String, Double> survivorSquareSums, double replicasPerSecond) {
+        this.replicas = replicas;
+        this.team0Wins = team0Wins;
+        this.team1Wins = team1Wins;
+        this.survivorSums = survivorSums;
+        this.survivorSquareSums = survivorSquareSums;
+        this.replicasPerSecond = replicasPerSecond;
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    public int getTeam0Wins() {
+        return team0Wins;
+    }
+
+    public int getTeam1Wins() {
+        return team1Wins;
+    }
+
+    /**
+     * Get the amount of replicas that neither team won, because both teams were wiped out or the maximum amount of
+     * steps was reached first.
+     * @return The amount of undecided replicas.
+     */
+    public int getUndecided() {
+        return replicas - team0Wins - team1Wins;
+    }
+
+    /**
+     * Get the estimated chance that team 0 wins.
+     * @return The fraction of replicas won by team 0.
+     */
+    public double getWinProbability() {
+        return (double) team0Wins / replicas;
+    }
+
+    /**
+     * Get the half width of the 95% confidence interval of the win probability, using the Wilson score interval.
+     * @return The half width of the interval.
+     */
+    public double getWinProbabilityHalfWidth() {
+        return wilsonHalfWidth(team0Wins, replicas);
+    }
+
+    /**
+     * Get the lower bound of the 95% confidence interval of the win probability.
+     * @return The lower bound.
+     */
+    public double getWinProbabilityLow() {
+        return wilsonCenter(team0Wins, replicas) - getWinProbabilityHalfWidth();
+    }
+
+    /**
+     * Get the upper bound of the 95% confidence interval of the win probability.
+     * @return The upper bound.
+     */
+    public double getWinProbabilityHigh() {
+        return wilsonCenter(team0Wins, replicas) + getWinProbabilityHalfWidth();
+    }
+
+    public Set<String> getFactionNames() {
+        return Collections.unmodifiableSet(survivorSums.keySet());
+    }
+
+    /**
+     * Get the expected amount of units a faction has left at the end of a replica.
+     * @param factionName The name of the faction.
+     * @return The mean amount of units left over all replicas.
+     */
+    public double getExpectedSurvivors(String factionName) {
+        return survivorSums.getOrDefault(factionName, 0.0) / replicas;
+    }
+
+    /**
+     * Get the half width of the 95% confidence interval of the expected amount of units a faction has left.
+     * @param factionName The name of the faction.
+     * @return The half width of the interval.
+     */
+    public double getExpectedSurvivorsHalfWidth(String factionName) {
+        if (replicas < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double mean = getExpectedSurvivors(factionName);
+        double squareSum = survivorSquareSums.getOrDefault(factionName, 0.0);
+        double variance = Math.max(0, (squareSum - replicas * mean * mean) / (replicas - 1));
+        return MonteCarloEstimator.Z_95 * Math.sqrt(variance / replicas);
+    }
+
+    public double getReplicasPerSecond() {
+        return replicasPerSecond;
+    }
+
+    /**
+     * Calculate the center of the Wilson score interval.
+     * @param successes The amount of successes.
+     * @param trials The amount of trials.
+     * @return The center of the interval.
+     */
+    private static double wilsonCenter(int successes, int trials) {
+        double z2 = MonteCarloEstimator.Z_95 * MonteCarloEstimator.Z_95;
+        return (successes + z2 / 2) / (trials + z2);
+    }
+
+    /**
+     * Calculate the half width of the Wilson score interval.
+     * @param successes The amount of successes.
+     * @param trials The amount of trials.
+     * @return The half width of the interval.
+     */
+    static double wilsonHalfWidth(int successes, int trials) {
+        double z = MonteCarloEstimator.Z_95;
+        double p = (double) successes / trials;
+        return z / (1 + z * z / trials) * Math.sqrt(p * (1 - p) / trials + z * z / (4.0 * trials * trials));
+    }
+}
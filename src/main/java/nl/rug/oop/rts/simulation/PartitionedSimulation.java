@@ -0,0 +1,124 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.CompactGraph;
+import nl.rug.oop.rts.simulation.events.EventSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Simulation of a partitioned {@link CompactGraph} on several threads. Every region of the graph is simulated by its
+ * own task, which moves the armies and resolves the battles in that region only. An army that moves onto a location of
+ * another region is taken off its location and put in an outbox. Once every region finished the phase, the regions
+ * take the armies in their inboxes, in the order of the regions they came from, and resolve their events.
+ * Because of that order, the results only depend on the seed and the partition, not on how the threads are scheduled.
+ * They do differ from those of {@link CompactSimulation}, since armies crossing regions arrive after the others.
+ * The event sink is called from the worker threads, so it should be thread safe.
+ */
+public class PartitionedSimulation extends PhasedSimulation {
+    private final CompactGraph graph;
+    private final EventSink eventSink;
+    private final ExecutorService executor;
+    private final RegionWorker[] workers;
+    private final List<Callable<Boolean>> battleTasks = new ArrayList<>();
+    private final List<Callable<Boolean>> moveToEdgeTasks = new ArrayList<>();
+    private final List<Callable<Boolean>> moveToNodeTasks = new ArrayList<>();
+    private final List<Callable<Boolean>> exchangeTasks = new ArrayList<>();
+
+    /**
+     * Constructor for partitioned simulation. The regions of the graph should not change afterwards.
+     * @param graph The graph to simulate, split into regions with {@link CompactGraph#partition(int)}.
+     * @param eventSink The thread safe sink that is notified whenever an event happens to an army.
+     * @param executor The executor the regions are simulated on, ideally with a thread for every region.
+     */
+    public PartitionedSimulation(CompactGraph graph, EventSink eventSink, ExecutorService executor) {
+        this.graph = graph;
+        this.eventSink = eventSink;
+        this.executor = executor;
+        this.workers = new RegionWorker[graph.getRegionsNum()];
+        for (int region = 0; region < workers.length; region++) {
+            RegionWorker worker = new RegionWorker(graph, region, getBattles(), eventSink);
+            workers[region] = worker;
+            battleTasks.add(worker::resolveBattles);
+            moveToEdgeTasks.add(() -> {
+                worker.moveToEdge();
+                return false;
+            });
+            moveToNodeTasks.add(() -> {
+                worker.moveToNode();
+                return false;
+            });
+            exchangeTasks.add(() -> {
+                for (RegionWorker sender: workers) {
+                    worker.takeInbox(sender.getOutbox(worker.getRegion()));
+                }
+                return false;
+            });
+        }
+    }
+
+    /**
+     * Get the locations that have armies.
+     * @return The locations, region by region.
+     */
+    @Override
+    protected Iterable<ArmyLocation> getOccupiedLocations() {
+        return graph.getOccupiedLocations();
+    }
+
+    /**
+     * Let every region resolve its battles.
+     * @return Whether a battle happened in any region.
+     */
+    @Override
+    protected boolean battlePhase() {
+        return runInAllRegions(battleTasks);
+    }
+
+    /**
+     * Let every region move its armies, then let every region take the armies that moved onto it from other regions.
+     * @param toEdges Whether the armies at nodes move to edges, instead of the armies at edges to nodes.
+     */
+    @Override
+    protected void movePhase(boolean toEdges) {
+        runInAllRegions(toEdges ? moveToEdgeTasks : moveToNodeTasks);
+        runInAllRegions(exchangeTasks);
+    }
+
+    /**
+     * Run a task for every region on the executor and wait until all of them are done.
+     * @param tasks The tasks, one for every region.
+     * @return Whether any of the tasks returned true.
+     */
+    private boolean runInAllRegions(List<Callable<Boolean>> tasks) {
+        List<Future<Boolean>> results;
+        try {
+            results = executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating regions", e);
+        }
+        boolean any = false;
+        for (Future<Boolean> result: results) {
+            try {
+                any |= result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while simulating regions", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Simulating a region failed", e.getCause());
+            }
+        }
+        return any;
+    }
+
+    @Override
+    public int getArmiesNum(int teamNum) {
+        return graph.getArmiesNum(teamNum);
+    }
+}
@@ -0,0 +1,185 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+
+/**
+ * The steps every simulation goes through, whatever graph it runs on and wherever its armies are. A step has five
+ * phases: battles, moving the armies at nodes to edges, battles, moving the armies at edges to nodes and battles
+ * again. If no battle happened in a battle phase, the next phase is simulated in the same step.
+ * Subclasses say how a battle phase and a move phase are done and how the armies of a team are counted, and this
+ * class runs the phases, measures the time spent in each of them and reports on runs of several steps.
+ */
+public abstract class PhasedSimulation {
+    private static final int STEPS_AMOUNT = 5;
+    private int currentStepPhase = 0;
+    /**
+     * For every phase, the total wall time spent in it in nanoseconds.
+     */
+    private final long[] phaseNanos = new long[STEPS_AMOUNT];
+    private final BattleResolver battles = new BattleResolver();
+
+    /**
+     * Seed the simulation. Every army currently in the graph gets its own random stream, split off from a source
+     * seeded with the given seed. Armies are visited in the order of the occupied locations of the graph.
+     * @param seed The seed.
+     */
+    public void setSeed(long seed) {
+        ArmyRandom source = new ArmyRandom(seed);
+        for (ArmyLocation location: getOccupiedLocations()) {
+            for (Army army: location.getArmiesPresent()) {
+                army.setRandom(source.split());
+            }
+        }
+    }
+
+    /**
+     * Set the amount of units above which a battle is resolved with the aggregate {@link LanchesterBattle} model
+     * instead of letting every unit fight. Smaller battles always use the exact model.
+     * @param lanchesterThreshold The amount of units at a location above which the aggregate model is used.
+     *                            Use Long.MAX_VALUE to always use the exact model.
+     */
+    public void setLanchesterThreshold(long lanchesterThreshold) {
+        battles.setLanchesterThreshold(lanchesterThreshold);
+    }
+
+    /**
+     * Simulate one step of the simulation, then increment the step phase. If no battle happened, the next phase is
+     * simulated as well. The step is a single change of the graph.
+     */
+    public void simulateStep() {
+        beginChange();
+        try {
+            boolean again;
+            do {
+                int phase = currentStepPhase;
+                long start = System.nanoTime();
+                if (phase % 2 == 0) {
+                    again = !battlePhase();
+                } else {
+                    movePhase(phase == 1);
+                    again = false;
+                }
+                phaseNanos[phase] += System.nanoTime() - start;
+                currentStepPhase = (currentStepPhase + 1) % STEPS_AMOUNT;
+            } while (again);
+        } finally {
+            commitChange();
+        }
+    }
+
+    /**
+     * Simulate a number of steps. The steps are a single change of the graph.
+     * @param steps The amount of steps to simulate.
+     * @return A report with the amount of steps that were simulated and the time spent in every phase.
+     */
+    public RunReport runSteps(int steps) {
+        return run(steps, false);
+    }
+
+    /**
+     * Simulate steps until the outcome of the simulation is decided, or until a maximum amount of steps is reached.
+     * The steps are a single change of the graph.
+     * @param maxSteps The maximum amount of steps to simulate.
+     * @return A report with the amount of steps that were simulated and the time spent in every phase.
+     */
+    public RunReport runUntilDecided(int maxSteps) {
+        return run(maxSteps, true);
+    }
+
+    /**
+     * Simulate steps.
+     * @param maxSteps The maximum amount of steps to simulate.
+     * @param untilDecided Whether to stop once the outcome of the simulation is decided.
+     * @return A report of the run. The total time includes finishing the change of the graph at the end.
+     */
+    private RunReport run(int maxSteps, boolean untilDecided) {
+        long[] before = phaseNanos.clone();
+        long start = System.nanoTime();
+        int steps = 0;
+        beginChange();
+        try {
+            while (steps < maxSteps && !(untilDecided && isDecided())) {
+                simulateStep();
+                steps++;
+            }
+        } finally {
+            commitChange();
+        }
+        long totalNanos = System.nanoTime() - start;
+        long[] spent = new long[STEPS_AMOUNT];
+        for (int phase = 0; phase < STEPS_AMOUNT; phase++) {
+            spent[phase] = phaseNanos[phase] - before[phase];
+        }
+        return new RunReport(steps, isDecided(), spent, totalNanos);
+    }
+
+    /**
+     * Check if the outcome of the simulation is decided, because there are no two armies of different teams left.
+     * @return Whether the simulation is decided.
+     */
+    public boolean isDecided() {
+        return getArmiesNum(0) == 0 || getArmiesNum(1) == 0;
+    }
+
+    /**
+     * Count the armies of a team.
+     * @param teamNum The team.
+     * @return The amount of armies.
+     */
+    public abstract int getArmiesNum(int teamNum);
+
+    /**
+     * Get the battle models the battles of this simulation are resolved with.
+     * @return The battle models.
+     */
+    protected BattleResolver getBattles() {
+        return battles;
+    }
+
+    /**
+     * Get the phase the next step starts with.
+     * @return The step phase.
+     */
+    protected int getStepPhase() {
+        return currentStepPhase;
+    }
+
+    /**
+     * Continue from another phase, for example after restoring or rewinding.
+     * @param stepPhase The phase the next step starts with.
+     */
+    protected void setStepPhase(int stepPhase) {
+        currentStepPhase = stepPhase;
+    }
+
+    /**
+     * Get the locations of the graph that have armies.
+     * @return The locations, in the order their armies are seeded in.
+     */
+    protected abstract Iterable<ArmyLocation> getOccupiedLocations();
+
+    /**
+     * Resolve all battles.
+     * @return If a battle occurred or not.
+     */
+    protected abstract boolean battlePhase();
+
+    /**
+     * Move the armies.
+     * @param toEdges Whether the armies at nodes move to edges, instead of the armies at edges to nodes.
+     */
+    protected abstract void movePhase(boolean toEdges);
+
+    /**
+     * Start a change of the graph that the following phases are part of, so its observers are only notified once.
+     * Changes can be nested. Does nothing by default.
+     */
+    protected void beginChange() {
+    }
+
+    /**
+     * Finish a change started with {@link #beginChange()}. Does nothing by default.
+     */
+    protected void commitChange() {
+    }
+}
@@ -0,0 +1,166 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.CompactGraph;
+import nl.rug.oop.rts.simulation.events.EventSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Simulates the phases of a single region of a partitioned {@link CompactGraph}. Only changes the locations of its own
+ * region: an army that moves onto a location of another region is taken off its location and put in the outbox for
+ * that region, to be taken in with {@link #takeInbox(Outbox)} by whoever simulates that region.
+ * A worker can also simulate the whole graph as if it were a single region, whatever its regions are. Armies then never
+ * leave the worker.
+ */
+class RegionWorker {
+    /**
+     * The region of a worker that simulates the whole graph.
+     */
+    private static final int WHOLE_GRAPH = -1;
+    private final CompactGraph graph;
+    private final int region;
+    private final BattleResolver battles;
+    private final EventSink eventSink;
+    private final List<Army> movingArmies = new ArrayList<>();
+    private final List<ArmyLocation> battleLocations = new ArrayList<>();
+    /**
+     * For every region, the armies this region sent there during the current phase.
+     */
+    private final Outbox[] outboxes;
+
+    /**
+     * Constructor for region worker.
+     * @param graph The partitioned graph.
+     * @param region The region it simulates.
+     * @param battles The battle models, shared with the workers of other regions.
+     * @param eventSink The sink that is notified whenever an event happens to an army.
+     */
+    RegionWorker(CompactGraph graph, int region, BattleResolver battles, EventSink eventSink) {
+        this.graph = graph;
+        this.region = region;
+        this.battles = battles;
+        this.eventSink = eventSink;
+        this.outboxes = new Outbox[region == WHOLE_GRAPH ? 0 : graph.getRegionsNum()];
+        for (int other = 0; other < outboxes.length; other++) {
+            outboxes[other] = new Outbox();
+        }
+    }
+
+    /**
+     * Constructor for a worker that simulates the whole graph.
+     * @param graph The graph.
+     * @param battles The battle models.
+     * @param eventSink The sink that is notified whenever an event happens to an army.
+     */
+    RegionWorker(CompactGraph graph, BattleResolver battles, EventSink eventSink) {
+        this(graph, WHOLE_GRAPH, battles, eventSink);
+    }
+
+    int getRegion() {
+        return region;
+    }
+
+    /**
+     * Get the armies this region sent to a region during the current phase.
+     * @param destRegion The region they were sent to.
+     * @return The outbox. It is emptied when the armies are taken in.
+     */
+    Outbox getOutbox(int destRegion) {
+        return outboxes[destRegion];
+    }
+
+    /**
+     * Resolve the battles at all contested locations of this region.
+     * @return If a battle occurred or not.
+     */
+    boolean resolveBattles() {
+        battleLocations.addAll(region == WHOLE_GRAPH ? graph.getContestedLocations()
+                : graph.getContestedLocations(region));
+        boolean battleHappened = !battleLocations.isEmpty();
+        for (ArmyLocation location: battleLocations) {
+            battles.battle(location, null);
+        }
+        battleLocations.clear();
+        return battleHappened;
+    }
+
+    /**
+     * Move every army at a node of this region to a random adjacent node, onto the edge that leads there.
+     */
+    void moveToEdge() {
+        collectArmies(true);
+        for (Army army: movingArmies) {
+            int node = ((CompactGraph.Location) army.getLocation()).getIndex();
+            int adjacentNodesNum = graph.getAdjacentNodesNum(node);
+            if (adjacentNodesNum == 0) {
+                continue;
+            }
+            int dest = army.getRandom().nextInt(adjacentNodesNum);
+            int edge = graph.getAdjacentEdge(node, dest);
+            army.setDestination(graph.getAdjacentNode(node, dest));
+            moveArmy(army, graph.getEdgeRegion(edge), graph.getNodesNum() + edge);
+        }
+        movingArmies.clear();
+    }
+
+    /**
+     * Move every army on an edge of this region to the node it is on its way to.
+     */
+    void moveToNode() {
+        collectArmies(false);
+        for (Army army: movingArmies) {
+            int dest = army.getDestination();
+            army.setDestination(-1);
+            moveArmy(army, graph.getNodeRegion(dest), dest);
+        }
+        movingArmies.clear();
+    }
+
+    /**
+     * Move an army to a location right away if it is in this region, otherwise send it to the region it is in.
+     * @param army The army.
+     * @param destRegion The region of the location.
+     * @param location The number of the location.
+     */
+    private void moveArmy(Army army, int destRegion, int location) {
+        if (destRegion == region || region == WHOLE_GRAPH) {
+            army.moveArmy(graph.getLocation(location), eventSink);
+            return;
+        }
+        army.getLocation().removeArmy(army);
+        army.setLocation(null);
+        outboxes[destRegion].add(army, location);
+    }
+
+    /**
+     * Take in the armies another region sent to this region, resolve their events and empty the outbox.
+     * @param inbox The outbox of the other region for this region.
+     */
+    void takeInbox(Outbox inbox) {
+        for (int i = 0; i < inbox.size(); i++) {
+            Army army = inbox.getArmy(i);
+            ArmyLocation location = graph.getLocation(inbox.getLocation(i));
+            army.setLocation(location);
+            location.addArmy(army);
+            army.resolveEvents(eventSink);
+        }
+        inbox.clear();
+    }
+
+    /**
+     * Collect the armies at the nodes or at the edges of this region into the list of moving armies.
+     * @param atNodes Whether to collect the armies at the nodes instead of those at the edges.
+     */
+    private void collectArmies(boolean atNodes) {
+        Set<ArmyLocation> occupied = region == WHOLE_GRAPH ? graph.getOccupiedLocations()
+                : graph.getOccupiedLocations(region);
+        for (ArmyLocation location: occupied) {
+            if (((CompactGraph.Location) location).isNode() == atNodes) {
+                movingArmies.addAll(location.getArmiesPresent());
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package nl.rug.oop.rts.simulation;
+
+import java.util.Locale;
+
+/**
+ * Report of a run of several steps: how many steps were simulated, whether the simulation was decided at the end and
+ * how much wall time was spent in each phase of a step.
+ */
+public class RunReport {
+    private static final String[] PHASE_NAMES = {"battle", "move to edge", "battle", "move to node", "battle"};
+    private final int steps;
+    private final boolean decided;
+    private final long[] phaseNanos;
+    private final long totalNanos;
+
+    /**
+     * Constructor for the report.
+     * @param steps The amount of steps that were simulated.
+     * @param decided Whether the simulation was decided at the end of the run.
+     * @param phaseNanos For every phase, the wall time spent in it in nanoseconds.
+     * @param totalNanos The wall time of the whole run in nanoseconds.
+     */
+    public RunReport(int steps, boolean decided, long[] phaseNanos, long totalNanos) {
+        this.steps = steps;
+        this.decided = decided;
+        this.phaseNanos = phaseNanos.clone();
+        this.totalNanos = totalNanos;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public boolean isDecided() {
+        return decided;
+    }
+
+    public int getPhasesNum() {
+        return phaseNanos.length;
+    }
+
+    /**
+     * Get the name of a phase.
+     * @param phase The number of the phase.
+     * @return The name of the phase.
+     */
+    public static String getPhaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+    /**
+     * Get the wall time spent in a phase.
+     * @param phase The number of the phase.
+     * @return The time in nanoseconds.
+     */
+    public long getPhaseNanos(int phase) {
+        return phaseNanos[phase];
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format(Locale.ROOT, "%d steps in %.3f ms%s",
+                steps, totalNanos / 1e6, decided ? ", decided" : ""));
+        for (int phase = 0; phase < phaseNanos.length; phase++) {
+            builder.append(String.format(Locale.ROOT, "%n  %d %-12s %.3f ms", phase, getPhaseName(phase),
+                    phaseNanos[phase] / 1e6));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,377 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.CompactGraph;
+import nl.rug.oop.rts.simulation.events.Event;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the simulation of a {@link CompactGraph} in several processes, so the armies do not have to fit in one heap.
+ * The graph is partitioned into one region per {@link ShardWorker}. The workers connect to the coordinator over
+ * loopback TCP, get the layout of the graph and the armies of their region, and from then on only the workers hold
+ * armies. For every phase the coordinator tells all workers to simulate it, waits for all of them and passes the
+ * armies that cross between regions on to the worker of their new region, in the order of the regions they came from.
+ * The coordinator only keeps the counts of the armies and units of every shard, so it can tell when the simulation is
+ * decided. Use {@link #collect()} to get the armies back into the graph.
+ * The workers get the Lanchester threshold when they connect, so it should be set before.
+ */
+public class ShardCoordinator extends PhasedSimulation implements AutoCloseable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 60000;
+    private final CompactGraph graph;
+    private final int shards;
+    private final ServerSocket server;
+    private final List<Socket> sockets = new ArrayList<>();
+    private final List<DataInputStream> inputs = new ArrayList<>();
+    private final List<DataOutputStream> outputs = new ArrayList<>();
+    private final List<Process> processes = new ArrayList<>();
+    private final int[][] armiesNum;
+    private final long[][] unitsNum;
+    /**
+     * For every shard, the armies the other shards sent it during the current phase: for every sender the amount of
+     * armies and their bytes.
+     */
+    private final int[][] inboxSizes;
+    private final byte[][][] inboxes;
+    private boolean running = false;
+
+    /**
+     * Constructor for shard coordinator. Partitions the graph and starts listening for workers on a free port.
+     * @param graph The graph to simulate. Its layout should not change afterwards.
+     * @param shards The amount of workers.
+     * @throws IOException If the port cannot be opened.
+     */
+    public ShardCoordinator(CompactGraph graph, int shards) throws IOException {
+        this.graph = graph;
+        this.shards = shards;
+        graph.partition(shards);
+        this.server = new ServerSocket(0, shards, InetAddress.getLoopbackAddress());
+        this.armiesNum = new int[shards][2];
+        this.unitsNum = new long[shards][2];
+        this.inboxSizes = new int[shards][shards];
+        this.inboxes = new byte[shards][shards][];
+    }
+
+    /**
+     * Get the port the workers should connect to.
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Seed the simulation before the armies are sent to the workers. Every army in the graph gets its own random
+     * stream, split off from a source seeded with the given seed.
+     * @param seed The seed.
+     */
+    @Override
+    public void setSeed(long seed) {
+        if (running) {
+            throw new IllegalStateException("The armies were already sent to the workers");
+        }
+        super.setSeed(seed);
+    }
+
+    @Override
+    protected Iterable<ArmyLocation> getOccupiedLocations() {
+        return graph.getOccupiedLocations();
+    }
+
+    /**
+     * Start a worker process for every shard with the class path of this process, and wait until they are connected.
+     * @param jvmOptions Extra options for the worker processes, for example the size of their heap.
+     * @throws IOException If a process cannot be started or does not connect.
+     */
+    public void launchWorkers(String... jvmOptions) throws IOException {
+        Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+        for (int shard = 0; shard < shards; shard++) {
+            List<String> command = new ArrayList<>();
+            command.add(java.toString());
+            command.addAll(List.of(jvmOptions));
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ShardWorker.class.getName());
+            command.add(Integer.toString(getPort()));
+            processes.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        connectWorkers();
+    }
+
+    /**
+     * Wait until a worker connected for every shard, then send every worker the layout of the graph and the armies of
+     * its shard. The armies are removed from the graph. Workers get their shard in the order they connect.
+     * @throws IOException If a worker does not connect in time or the connection fails.
+     */
+    public void connectWorkers() throws IOException {
+        server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+        for (int shard = 0; shard < shards; shard++) {
+            Socket socket = server.accept();
+            socket.setTcpNoDelay(true);
+            sockets.add(socket);
+            inputs.add(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+            outputs.add(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            sendInit(shard);
+        }
+        List<List<Army>> armies = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            armies.add(new ArrayList<>());
+        }
+        for (ArmyLocation location: graph.getOccupiedLocations()) {
+            int number = ((CompactGraph.Location) location).getNumber();
+            int shard = regionOf(number);
+            for (Army army: location.getArmiesPresent()) {
+                armies.get(shard).add(army);
+                armiesNum[shard][army.getFaction().getTeamNum()]++;
+                unitsNum[shard][army.getFaction().getTeamNum()] += army.getUnitsNum();
+            }
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            DataOutputStream out = outputs.get(shard);
+            out.writeByte(ShardProtocol.ARMIES);
+            out.writeInt(armies.get(shard).size());
+            for (Army army: armies.get(shard)) {
+                ArmyLocation location = army.getLocation();
+                ShardProtocol.writeArmy(out, army, ((CompactGraph.Location) location).getNumber());
+                location.removeArmy(army);
+            }
+            out.flush();
+        }
+        running = true;
+    }
+
+    /**
+     * Send a worker the layout of the graph, the regions and the events.
+     * @param shard The shard of the worker.
+     * @throws IOException If writing fails.
+     */
+    private void sendInit(int shard) throws IOException {
+        int nodesNum = graph.getNodesNum();
+        int[] nodeX = new int[nodesNum];
+        int[] nodeY = new int[nodesNum];
+        int[] nodeRegions = new int[nodesNum];
+        for (int node = 0; node < nodesNum; node++) {
+            nodeX[node] = graph.getNodeX(node);
+            nodeY[node] = graph.getNodeY(node);
+            nodeRegions[node] = graph.getNodeRegion(node);
+        }
+        int[] edgeNodes = new int[2 * graph.getEdgesNum()];
+        for (int edge = 0; edge < graph.getEdgesNum(); edge++) {
+            edgeNodes[2 * edge] = graph.getEdgeNode(edge, 0);
+            edgeNodes[2 * edge + 1] = graph.getEdgeNode(edge, 1);
+        }
+        List<Integer> eventLocations = new ArrayList<>();
+        List<String> eventNames = new ArrayList<>();
+        for (int number = 0; number < nodesNum + graph.getEdgesNum(); number++) {
+            CompactGraph.Location location = graph.getLocationIfPresent(number);
+            if (location != null) {
+                for (Event event: location.getEvents()) {
+                    eventLocations.add(number);
+                    eventNames.add(event.getName());
+                }
+            }
+        }
+        DataOutputStream out = outputs.get(shard);
+        out.writeByte(ShardProtocol.INIT);
+        out.writeInt(shard);
+        out.writeInt(shards);
+        ShardProtocol.writeInts(out, nodeX);
+        ShardProtocol.writeInts(out, nodeY);
+        ShardProtocol.writeInts(out, edgeNodes);
+        ShardProtocol.writeInts(out, nodeRegions);
+        out.writeLong(getBattles().getLanchesterThreshold());
+        out.writeInt(eventLocations.size());
+        for (int i = 0; i < eventLocations.size(); i++) {
+            out.writeInt(eventLocations.get(i));
+            out.writeUTF(eventNames.get(i));
+        }
+    }
+
+    /**
+     * Get the region of a location.
+     * @param number The number of the location.
+     * @return The region.
+     */
+    private int regionOf(int number) {
+        int nodesNum = graph.getNodesNum();
+        return number < nodesNum ? graph.getNodeRegion(number) : graph.getEdgeRegion(number - nodesNum);
+    }
+
+    /**
+     * Simulate one step of the simulation, then increment the step phase. If no battle happened in any shard, the
+     * next phase is simulated as well.
+     */
+    @Override
+    public void simulateStep() {
+        if (!running) {
+            throw new IllegalStateException("The workers are not connected");
+        }
+        super.simulateStep();
+    }
+
+    @Override
+    protected boolean battlePhase() {
+        try {
+            return resolveBattles() > 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lost the connection to a worker", e);
+        }
+    }
+
+    @Override
+    protected void movePhase(boolean toEdges) {
+        try {
+            move(toEdges ? ShardProtocol.MOVE_TO_EDGE : ShardProtocol.MOVE_TO_NODE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lost the connection to a worker", e);
+        }
+    }
+
+    /**
+     * Let every worker resolve its battles.
+     * @return The amount of workers where a battle happened.
+     * @throws IOException If the connection fails.
+     */
+    private int resolveBattles() throws IOException {
+        sendToAll(ShardProtocol.BATTLES);
+        int battles = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            DataInputStream in = inputs.get(shard);
+            if (in.readBoolean()) {
+                battles++;
+            }
+            ShardProtocol.readCounts(in, armiesNum[shard], unitsNum[shard]);
+        }
+        return battles;
+    }
+
+    /**
+     * Let every worker move its armies, then pass the armies that crossed to another shard on to that shard.
+     * @param type The kind of move.
+     * @throws IOException If the connection fails.
+     */
+    private void move(byte type) throws IOException {
+        sendToAll(type);
+        for (int sender = 0; sender < shards; sender++) {
+            DataInputStream in = inputs.get(sender);
+            for (int shard = 0; shard < shards; shard++) {
+                inboxSizes[shard][sender] = in.readInt();
+                inboxes[shard][sender] = in.readNBytes(in.readInt());
+            }
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            DataOutputStream out = outputs.get(shard);
+            out.writeByte(ShardProtocol.INBOX);
+            for (int sender = 0; sender < shards; sender++) {
+                out.writeInt(inboxSizes[shard][sender]);
+                out.writeInt(inboxes[shard][sender].length);
+                out.write(inboxes[shard][sender]);
+                inboxes[shard][sender] = null;
+            }
+            out.flush();
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            ShardProtocol.readCounts(inputs.get(shard), armiesNum[shard], unitsNum[shard]);
+        }
+    }
+
+    /**
+     * Send a message without content to every worker.
+     * @param type The type of the message.
+     * @throws IOException If the connection fails.
+     */
+    private void sendToAll(byte type) throws IOException {
+        for (DataOutputStream out: outputs) {
+            out.writeByte(type);
+            out.flush();
+        }
+    }
+
+    /**
+     * Count the armies of a team over all shards, as reported after the last phase.
+     * @param teamNum The team.
+     * @return The amount of armies.
+     */
+    @Override
+    public int getArmiesNum(int teamNum) {
+        int total = 0;
+        for (int[] shardArmies: armiesNum) {
+            total += shardArmies[teamNum];
+        }
+        return total;
+    }
+
+    /**
+     * Count the units of a team over all shards, as reported after the last phase.
+     * @param teamNum The team.
+     * @return The amount of units.
+     */
+    public long getUnitsNum(int teamNum) {
+        long total = 0;
+        for (long[] shardUnits: unitsNum) {
+            total += shardUnits[teamNum];
+        }
+        return total;
+    }
+
+    /**
+     * Take all armies back from the workers and put them in the graph, for example to show the result. The
+     * simulation cannot continue afterwards.
+     * @throws IOException If the connection fails.
+     */
+    public void collect() throws IOException {
+        sendToAll(ShardProtocol.COLLECT);
+        for (int shard = 0; shard < shards; shard++) {
+            Outbox armies = new Outbox();
+            ShardProtocol.readArmies(inputs.get(shard), armies);
+            for (int i = 0; i < armies.size(); i++) {
+                ArmyLocation location = graph.getLocation(armies.getLocation(i));
+                armies.getArmy(i).setLocation(location);
+                location.addArmy(armies.getArmy(i));
+            }
+        }
+        running = false;
+    }
+
+    /**
+     * Stop the workers and close the connections. Waits a while for worker processes this coordinator started to end.
+     * @throws IOException If closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            sendToAll(ShardProtocol.STOP);
+        } catch (IOException e) {
+            // the workers are stopped anyway when their connection closes.
+        }
+        for (Socket socket: sockets) {
+            socket.close();
+        }
+        server.close();
+        for (Process process: processes) {
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroy();
+            }
+        }
+    }
+}
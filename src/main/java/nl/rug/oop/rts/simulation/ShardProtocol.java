@@ -0,0 +1,191 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.simulation.factions.Faction;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The binary protocol between a {@link ShardCoordinator} and its {@link ShardWorker}s. Every message from the
+ * coordinator starts with its type. Locations are numbered like in a {@link nl.rug.oop.rts.graph.CompactGraph}: nodes
+ * first, then edges.
+ * An army is sent as: int location, int node it is on its way to or -1, long seed of its new random stream, string
+ * faction name, boolean compressed, int amount of units, then for a compressed army int amount of buckets and every
+ * bucket as a short key and an int count, and otherwise every unit as a byte type, int damage and int health.
+ * The army that is sent draws the seed from its own stream, so the results only depend on the seed and the partition.
+ */
+final class ShardProtocol {
+    /**
+     * The graph and the shard of the worker: int shard, int amount of shards, the node x coordinates, the node y
+     * coordinates, the edge nodes and the node regions as int arrays, long Lanchester threshold, int amount of events,
+     * then every event as int location and string event name.
+     */
+    static final byte INIT = 1;
+    /**
+     * Armies to place without resolving events, at the start: int amount of armies, then every army.
+     */
+    static final byte ARMIES = 2;
+    /**
+     * Resolve the battles. Answered with boolean battle happened, then the counts.
+     */
+    static final byte BATTLES = 3;
+    /**
+     * Move the armies at nodes to edges. Answered with the outboxes, for every shard: int amount of armies, int amount
+     * of bytes, then the armies.
+     */
+    static final byte MOVE_TO_EDGE = 4;
+    /**
+     * Move the armies at edges to nodes. Answered like {@link #MOVE_TO_EDGE}.
+     */
+    static final byte MOVE_TO_NODE = 5;
+    /**
+     * The armies other shards sent to this shard, for every shard in order: int amount of armies, int amount of
+     * bytes, then the armies. Answered with the counts.
+     */
+    static final byte INBOX = 6;
+    /**
+     * Send all armies back. Answered with int amount of armies, then every army.
+     */
+    static final byte COLLECT = 7;
+    /**
+     * Stop the worker.
+     */
+    static final byte STOP = 8;
+
+    private ShardProtocol() {
+    }
+
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Write the counts of the armies and units of both teams of a shard: int armies, int armies, long units, long
+     * units.
+     * @param out The stream.
+     * @param armies The amount of armies of both teams.
+     * @param units The amount of units of both teams.
+     * @throws IOException If writing fails.
+     */
+    static void writeCounts(DataOutputStream out, int[] armies, long[] units) throws IOException {
+        out.writeInt(armies[0]);
+        out.writeInt(armies[1]);
+        out.writeLong(units[0]);
+        out.writeLong(units[1]);
+    }
+
+    static void readCounts(DataInputStream in, int[] armies, long[] units) throws IOException {
+        armies[0] = in.readInt();
+        armies[1] = in.readInt();
+        units[0] = in.readLong();
+        units[1] = in.readLong();
+    }
+
+    /**
+     * Write an army.
+     * @param out The stream.
+     * @param army The army. It should not be used anymore afterwards.
+     * @param location The number of the location it goes to.
+     * @throws IOException If writing fails.
+     */
+    static void writeArmy(DataOutputStream out, Army army, int location) throws IOException {
+        out.writeInt(location);
+        out.writeInt(army.getDestination());
+        out.writeLong(army.getRandom().nextLong());
+        out.writeUTF(army.getFaction().getFactionName());
+        out.writeBoolean(army.isCompressed());
+        out.writeInt(army.getUnitsNum());
+        if (army.isCompressed()) {
+            int[] counts = new int[bucketsNum(army.getFaction())];
+            army.countBuckets(counts);
+            int buckets = 0;
+            for (int count : counts) {
+                if (count > 0) {
+                    buckets++;
+                }
+            }
+            out.writeInt(buckets);
+            for (int key = 0; key < counts.length; key++) {
+                if (counts[key] > 0) {
+                    out.writeShort(key);
+                    out.writeInt(counts[key]);
+                }
+            }
+            return;
+        }
+        UnitsImage units = army.saveUnits();
+        for (int i = 0; i < units.getUnitsNum(); i++) {
+            out.writeByte(units.getTypes()[i]);
+            out.writeInt(units.getDamage()[i]);
+            out.writeInt(units.getHealth()[i]);
+        }
+    }
+
+    /**
+     * Read an army into an outbox. The army is not at any location yet.
+     * @param in The stream.
+     * @param outbox The outbox the army and the number of its location are added to.
+     * @throws IOException If reading fails.
+     */
+    static void readArmy(DataInputStream in, Outbox outbox) throws IOException {
+        int location = in.readInt();
+        int destination = in.readInt();
+        ArmyRandom random = new ArmyRandom(in.readLong());
+        Faction faction = Faction.createFaction(in.readUTF());
+        boolean compressed = in.readBoolean();
+        int unitsNum = in.readInt();
+        Army army;
+        if (compressed) {
+            int[] counts = new int[bucketsNum(faction)];
+            int buckets = in.readInt();
+            for (int b = 0; b < buckets; b++) {
+                int key = in.readShort() & 0xFFFF;
+                counts[key] = in.readInt();
+            }
+            army = Army.createFromCounts(faction, null, counts, unitsNum);
+            army.setRandom(random);
+        } else {
+            byte[] types = new byte[unitsNum];
+            int[] damage = new int[unitsNum];
+            int[] health = new int[unitsNum];
+            for (int i = 0; i < unitsNum; i++) {
+                types[i] = in.readByte();
+                damage[i] = in.readInt();
+                health[i] = in.readInt();
+            }
+            army = new Army(0, faction, null, random);
+            army.restoreUnits(new UnitsImage(damage, health, types, null, unitsNum));
+        }
+        army.setDestination(destination);
+        outbox.add(army, location);
+    }
+
+    /**
+     * Read armies into an outbox.
+     * @param in The stream, positioned at the amount of armies.
+     * @param outbox The outbox.
+     * @throws IOException If reading fails.
+     */
+    static void readArmies(DataInputStream in, Outbox outbox) throws IOException {
+        int armiesNum = in.readInt();
+        for (int i = 0; i < armiesNum; i++) {
+            readArmy(in, outbox);
+        }
+    }
+
+    private static int bucketsNum(Faction faction) {
+        return faction.getUnitNames().size() * UnitHistogram.DAMAGE_VALUES * UnitHistogram.HEALTH_VALUES;
+    }
+}
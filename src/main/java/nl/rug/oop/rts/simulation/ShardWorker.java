@@ -0,0 +1,187 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.CompactGraph;
+import nl.rug.oop.rts.simulation.events.Event;
+import nl.rug.oop.rts.simulation.events.EventSink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A worker process of a sharded simulation. Connects to a {@link ShardCoordinator}, gets the layout of the graph and
+ * the armies of its shard, and then simulates the phases the coordinator asks for. Every worker knows the whole
+ * layout of the graph, which only takes a few arrays, but only holds the armies of its own region.
+ * Events that happen in a worker are not reported.
+ */
+public final class ShardWorker {
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private CompactGraph graph;
+    private RegionWorker worker;
+    private int shards;
+
+    /**
+     * Constructor for shard worker.
+     * @param socket The connection to the coordinator.
+     * @throws IOException If the streams of the socket cannot be opened.
+     */
+    ShardWorker(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Start a worker that connects to a coordinator on this machine and runs until the coordinator stops it.
+     * @param args The port of the coordinator.
+     * @throws IOException If the connection fails.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: ShardWorker <coordinator port>");
+            System.exit(1);
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            new ShardWorker(socket).run();
+        }
+    }
+
+    /**
+     * Handle the messages of the coordinator until it sends {@link ShardProtocol#STOP}.
+     * @throws IOException If the connection fails.
+     */
+    void run() throws IOException {
+        while (true) {
+            byte type = in.readByte();
+            switch (type) {
+                case ShardProtocol.INIT -> init();
+                case ShardProtocol.ARMIES -> placeArmies();
+                case ShardProtocol.BATTLES -> {
+                    out.writeBoolean(worker.resolveBattles());
+                    writeCounts();
+                }
+                case ShardProtocol.MOVE_TO_EDGE -> {
+                    worker.moveToEdge();
+                    writeOutboxes();
+                }
+                case ShardProtocol.MOVE_TO_NODE -> {
+                    worker.moveToNode();
+                    writeOutboxes();
+                }
+                case ShardProtocol.INBOX -> takeInbox();
+                case ShardProtocol.COLLECT -> collect();
+                case ShardProtocol.STOP -> {
+                    return;
+                }
+                default -> throw new IOException("Unknown message type " + type);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Build the graph and partition it like the coordinator did.
+     * @throws IOException If reading fails.
+     */
+    private void init() throws IOException {
+        int shard = in.readInt();
+        shards = in.readInt();
+        int[] nodeX = ShardProtocol.readInts(in);
+        int[] nodeY = ShardProtocol.readInts(in);
+        int[] edgeNodes = ShardProtocol.readInts(in);
+        int[] nodeRegions = ShardProtocol.readInts(in);
+        graph = new CompactGraph(nodeX, nodeY, edgeNodes);
+        graph.setRegions(nodeRegions, shards);
+        BattleResolver battles = new BattleResolver();
+        battles.setLanchesterThreshold(in.readLong());
+        int eventsNum = in.readInt();
+        for (int i = 0; i < eventsNum; i++) {
+            int location = in.readInt();
+            graph.getLocation(location).addEvent(Event.createEvent(in.readUTF()));
+        }
+        worker = new RegionWorker(graph, shard, battles, EventSink.NONE);
+    }
+
+    /**
+     * Place armies without resolving the events at their locations.
+     * @throws IOException If reading fails.
+     */
+    private void placeArmies() throws IOException {
+        Outbox armies = new Outbox();
+        ShardProtocol.readArmies(in, armies);
+        for (int i = 0; i < armies.size(); i++) {
+            ArmyLocation location = graph.getLocation(armies.getLocation(i));
+            armies.getArmy(i).setLocation(location);
+            location.addArmy(armies.getArmy(i));
+        }
+    }
+
+    /**
+     * Send the armies that left this shard during the phase, for every shard in order.
+     * @throws IOException If writing fails.
+     */
+    private void writeOutboxes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream armies = new DataOutputStream(bytes);
+        for (int shard = 0; shard < shards; shard++) {
+            Outbox outbox = worker.getOutbox(shard);
+            bytes.reset();
+            for (int i = 0; i < outbox.size(); i++) {
+                ShardProtocol.writeArmy(armies, outbox.getArmy(i), outbox.getLocation(i));
+            }
+            armies.flush();
+            out.writeInt(outbox.size());
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            outbox.clear();
+        }
+    }
+
+    /**
+     * Take in the armies the other shards sent, in the order of the shards, and send the counts.
+     * @throws IOException If reading or writing fails.
+     */
+    private void takeInbox() throws IOException {
+        Outbox inbox = new Outbox();
+        for (int shard = 0; shard < shards; shard++) {
+            int armiesNum = in.readInt();
+            in.readInt();
+            for (int i = 0; i < armiesNum; i++) {
+                ShardProtocol.readArmy(in, inbox);
+            }
+            worker.takeInbox(inbox);
+        }
+        writeCounts();
+    }
+
+    /**
+     * Send all armies of this shard back to the coordinator and remove them.
+     * @throws IOException If writing fails.
+     */
+    private void collect() throws IOException {
+        List<Army> armies = new ArrayList<>();
+        for (ArmyLocation location : graph.getOccupiedLocations()) {
+            armies.addAll(location.getArmiesPresent());
+        }
+        out.writeInt(armies.size());
+        for (Army army : armies) {
+            CompactGraph.Location location = (CompactGraph.Location) army.getLocation();
+            ShardProtocol.writeArmy(out, army, location.getNumber());
+            location.removeArmy(army);
+        }
+    }
+
+    private void writeCounts() throws IOException {
+        ShardProtocol.writeCounts(out, new int[] {graph.getArmiesNum(0), graph.getArmiesNum(1)},
+                new long[] {graph.getUnitsNum(0), graph.getUnitsNum(1)});
+    }
+}
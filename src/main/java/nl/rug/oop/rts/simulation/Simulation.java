@@ -4,173 +4,332 @@ import nl.rug.oop.rts.graph.ArmyLocation;
 import nl.rug.oop.rts.graph.Edge;
 import nl.rug.oop.rts.graph.Graph;
 import nl.rug.oop.rts.graph.Node;
+import nl.rug.oop.rts.simulation.events.EventSink;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Simulation class. Handles the simulation steps. Changes the state of armies.
+ * Does not depend on Swing, so it can also be run headless by using {@link #runSteps(int)} or
+ * {@link #runUntilDecided(int)}.
+ * All randomness comes from the random streams of the armies. When the simulation is seeded, every army gets a stream
+ * split off from one seeded source, so the same seed and the same graph always give the same results.
+ * Every phase only visits the locations the graph knows to have armies, so empty parts of the graph cost nothing.
+ * The lists used to collect armies and locations are reused between phases.
  */
-public class Simulation {
+public class Simulation extends PhasedSimulation {
     private final Graph graph;
-    private int currentStepPhase = 0;
-    private final int stepsAmount = 5;
-    private final Random randomizer = new Random();
+    private final EventSink eventSink;
+    /**
+     * The sink the events during steps are passed to: the event sink, wrapped by the journal if there is one.
+     */
+    private EventSink stepEventSink;
+    private SimulationJournal journal;
+    private StepHistory history;
+    private long seed;
+    private boolean seeded = false;
+    private final List<Army> movingArmies = new ArrayList<>();
+    private final List<ArmyLocation> battleLocations = new ArrayList<>();
+    private ExecutorService battleExecutor;
 
+    /**
+     * Constructor for a simulation that does not report the events that happen.
+     * @param graph The graph to simulate.
+     */
     public Simulation(Graph graph) {
+        this(graph, EventSink.NONE);
+    }
+
+    /**
+     * Constructor for simulation.
+     * @param graph The graph to simulate.
+     * @param eventSink The sink that is notified whenever an event happens to an army.
+     */
+    public Simulation(Graph graph, EventSink eventSink) {
         this.graph = graph;
+        this.eventSink = eventSink;
+        this.stepEventSink = eventSink;
     }
 
     /**
-     * Increment the step phase and make sure it loops back after the last step.
+     * Constructor for a seeded simulation.
+     * @param graph The graph to simulate.
+     * @param eventSink The sink that is notified whenever an event happens to an army.
+     * @param seed The seed for the random streams of the armies.
      */
-    private void incrementStepPhase() {
-        currentStepPhase++;
-        currentStepPhase = currentStepPhase % stepsAmount;
+    public Simulation(Graph graph, EventSink eventSink, long seed) {
+        this(graph, eventSink);
+        setSeed(seed);
     }
 
     /**
-     * Handles the step of the simulation that moves units from a node to an edge.
+     * Seed the simulation. Every army currently in the graph gets its own random stream, split off from a source
+     * seeded with the given seed. Armies are visited in the order of {@link Graph#getOccupiedLocations()}.
+     * Armies added to the graph afterwards keep their own stream, unless the simulation is seeded again.
+     * @param seed The seed.
      */
-    private void moveToEdge() {
-        List<Army> armies = new ArrayList<>();
-        for (Node node: graph.getNodes()) {
-            armies.addAll(node.getArmiesPresent());
+    @Override
+    public void setSeed(long seed) {
+        this.seed = seed;
+        seeded = true;
+        if (journal != null) {
+            journal.recordSeed(seed);
+        }
+        super.setSeed(seed);
+    }
+
+    @Override
+    protected Iterable<ArmyLocation> getOccupiedLocations() {
+        return graph.getOccupiedLocations();
+    }
+
+    @Override
+    protected void movePhase(boolean toEdges) {
+        if (toEdges) {
+            moveToEdge();
+        } else {
+            moveToNode();
         }
-        for (Army army: armies) {
+    }
+
+    /**
+     * Handles the step of the simulation that moves units from a node to an edge. The neighbours of a node are
+     * indexed, so picking a random one does not depend on how many edges the node has.
+     */
+    private void moveToEdge() {
+        collectArmies(Node.class);
+        for (Army army: movingArmies) {
             Node currentLocation = (Node)army.getLocation();
-            List<Node> adjacentNodes = currentLocation.getAdjacentNodes();
-            Node destNode = adjacentNodes.get(randomizer.nextInt(adjacentNodes.size()));
-            army.setOnWayTo(destNode);
-            army.moveArmy(currentLocation.getEdgeTo(destNode));
+            int adjacentNodesNum = currentLocation.getAdjacentNodesNum();
+            if (adjacentNodesNum == 0) {
+                // nowhere to go, the army stays where it is.
+                continue;
+            }
+            int dest = army.getRandom().nextInt(adjacentNodesNum);
+            army.setOnWayTo(currentLocation.getAdjacentNode(dest));
+            army.moveArmy(currentLocation.getAdjacentEdge(dest), stepEventSink);
         }
+        movingArmies.clear();
     }
 
     /**
      * Handles the step of the simulation that moves units from an edge to a node.
      */
     private void moveToNode() {
-        List<Army> armies = new ArrayList<>();
-        for (Edge edge: graph.getEdges()) {
-            armies.addAll(edge.getArmiesPresent());
-        }
-        for (Army army: armies) {
-            army.moveArmy(army.getOnWayTo());
+        collectArmies(Edge.class);
+        for (Army army: movingArmies) {
+            army.moveArmy(army.getOnWayTo(), stepEventSink);
             army.setOnWayTo(null);
         }
+        movingArmies.clear();
     }
 
     /**
-     * Simulate one step of the simulation.
-     * Then increment the step phase.
+     * Collect the armies that are at a certain kind of location into the list of moving armies. They are collected
+     * first, because moving them changes the armies at the locations. Armies left in the list by a phase that failed
+     * are dropped.
+     * @param locationType The kind of location, node or edge.
      */
-    public void simulateStep() {
-        if (currentStepPhase % 2 == 0) {
-            boolean battleHappened = resolveBattles();
-            if (!battleHappened) {
-                // if no battle happened, simulate next step as well.
-                incrementStepPhase();
-                simulateStep();
+    private void collectArmies(Class<? extends ArmyLocation> locationType) {
+        movingArmies.clear();
+        for (ArmyLocation location: graph.getOccupiedLocations()) {
+            if (locationType.isInstance(location)) {
+                movingArmies.addAll(location.getArmiesPresent());
             }
-        } else if (currentStepPhase == 1) {
-            moveToEdge();
-        } else {
-            moveToNode();
         }
-        incrementStepPhase();
     }
 
     /**
-     * Get all the locations in the graph.
-     * @return A list of all the locations in the graph.
+     * Record every following step of the simulation in a journal.
+     * @param journal The journal, or null to stop recording. Closing the journal is left to the caller.
      */
-    private List<ArmyLocation> getLocations() {
-        List<ArmyLocation> locations = new ArrayList<>();
-        locations.addAll(graph.getNodes());
-        locations.addAll(graph.getEdges());
-        return locations;
+    public void setJournal(SimulationJournal journal) {
+        this.journal = journal;
+        stepEventSink = journal == null ? eventSink : journal.recordEvents(eventSink);
+        if (journal != null && seeded) {
+            journal.recordSeed(seed);
+        }
     }
 
     /**
-     * Check if at least one army from both teams are present at a location.
-     * @param location The location to check.
-     * @return A boolean that is true if both teams are present, false if not.
+     * Set how many steps can be rewound. Only what changed during a step is kept, so a long history is affordable
+     * even for large graphs.
+     * @param steps The maximum amount of steps to keep. Zero to not keep any.
      */
-    private boolean bothTeamsPresent(ArmyLocation location) {
-        List<Army> armies = location.getArmiesPresent();
-        if (armies.size() >= 2) {
-            int teamNum = armies.get(0).getFaction().getTeamNum();
-            for (int i = 1; i < armies.size(); i++) {
-                if (teamNum != armies.get(i).getFaction().getTeamNum()) {
-                    return true;
-                }
+    public void setHistorySize(int steps) {
+        if (history != null) {
+            history.detach();
+        }
+        history = steps > 0 ? new StepHistory(graph, steps) : null;
+    }
+
+    /**
+     * Get the amount of steps that can currently be rewound.
+     * @return The amount of steps.
+     */
+    public int getHistoryLength() {
+        return history == null ? 0 : history.size();
+    }
+
+    /**
+     * Undo the last steps. The armies are put back the way they were before those steps, and the simulation continues
+     * from the step phase it was in then. Every step is undone in a single transaction on the graph.
+     * @param steps The amount of steps to undo.
+     * @return The amount of steps that were undone, fewer if the history is shorter.
+     */
+    public int rewind(int steps) {
+        int rewound = 0;
+        while (rewound < steps && getHistoryLength() > 0) {
+            setStepPhase(history.rewind());
+            rewound++;
+        }
+        return rewound;
+    }
+
+    /**
+     * Set the executor that battles at different locations are resolved on at the same time.
+     * Battles only change the armies at their own location and do not use any randomness, so the outcome does not
+     * depend on the order in which the executor runs them.
+     * @param battleExecutor The executor, for example a ForkJoinPool. If null, battles are resolved one by one.
+     */
+    public void setBattleExecutor(ExecutorService battleExecutor) {
+        this.battleExecutor = battleExecutor;
+    }
+
+    /**
+     * Simulate one step of the simulation.
+     * Then increment the step phase.
+     * The step is a single transaction on the graph, so its observers are notified once instead of once per army.
+     * If the step fails and there is a history, the step is undone before the exception is passed on.
+     */
+    @Override
+    public void simulateStep() {
+        if (history != null) {
+            history.stepStarting(getStepPhase());
+        }
+        boolean finished = false;
+        try {
+            super.simulateStep();
+            finished = true;
+        } finally {
+            if (history != null && finished) {
+                history.stepFinished();
+            } else if (history != null) {
+                setStepPhase(history.stepFailed());
             }
         }
-        return false;
+        if (journal != null) {
+            journal.stepFinished();
+        }
+    }
+
+    /**
+     * Count the armies of a team in the graph. The graph keeps these counts, so this and {@link #isDecided()} take
+     * constant time.
+     * @param teamNum The team.
+     * @return The amount of armies.
+     */
+    @Override
+    public int getArmiesNum(int teamNum) {
+        return graph.getArmiesNum(teamNum);
+    }
+
+    @Override
+    protected void beginChange() {
+        graph.beginChange();
+    }
+
+    @Override
+    protected void commitChange() {
+        graph.commitChange();
     }
 
     /**
-     * Resolve all the battles. Check which locations have both teams present and call the battle function there.
+     * Resolve all the battles. The graph keeps track of which locations have both teams present, so the battle
+     * function is called there.
      * @return If a battle occurred or not.
      */
-    private boolean resolveBattles() {
-        boolean battleHappened = false;
-        for (ArmyLocation location: getLocations()) {
-            if (bothTeamsPresent(location)) {
-                battle(location);
-                battleHappened = true;
+    @Override
+    protected boolean battlePhase() {
+        // copy the contested locations first, since battles change them.
+        battleLocations.clear();
+        battleLocations.addAll(graph.getContestedLocations());
+        boolean battleHappened = !battleLocations.isEmpty();
+        if (battleExecutor == null || battleLocations.size() < 2) {
+            for (ArmyLocation location: battleLocations) {
+                getBattles().battle(location, null);
             }
+        } else {
+            resolveBattlesInParallel(battleLocations);
         }
+        battleLocations.clear();
         return battleHappened;
     }
 
     /**
-     * Resolve a battle at a location.
-     * Add all units from one team to one list and all from the other to another.
-     * Calculate the ratio of the amount of units.
-     * Make first unit from one team fight first unit from the others, etc.
-     * The team with more units get some bonus damage based on the ratio of units. (The idea being that the extra units
-     * would help out since they are not fighting).
-     * Continue fighting until one team has no more units.
-     * @param location The location of the battle.
+     * Resolve the battles at several locations at the same time using the battle executor.
+     * Defeated armies are only removed from their locations once all battles are over, so the observers of the
+     * locations are notified from this thread after the phase instead of from the workers. If a battle fails, the
+     * other battles are still waited for and their defeated armies removed before the failure is passed on, so no
+     * worker changes the graph anymore when the step is undone.
+     * @param battleLocations The locations where a battle takes place.
+     * @throws IllegalStateException If a battle failed. Failures of other battles are added as suppressed exceptions.
      */
-    private void battle(ArmyLocation location) {
-        List<Army> armies;
-        List<Unit> units1 = new ArrayList<>();
-        List<Unit> units2 = new ArrayList<>();
-
-        do {
-            armies = location.getArmiesPresent();
-            units1.clear();
-            units2.clear();
-
-            for (Army army : armies) {
-                if (army.getFaction().getTeamNum() == 0) {
-                    units1.addAll(army.getUnits());
+    private void resolveBattlesInParallel(List<ArmyLocation> battleLocations) {
+        List<Future<List<Army>>> results = new ArrayList<>();
+        for (ArmyLocation location: battleLocations) {
+            results.add(battleExecutor.submit(() -> {
+                List<Army> defeated = new ArrayList<>();
+                getBattles().battle(location, defeated);
+                return defeated;
+            }));
+        }
+        List<Army> defeated = new ArrayList<>();
+        IllegalStateException failure = null;
+        for (Future<List<Army>> result: results) {
+            try {
+                defeated.addAll(waitFor(result));
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new IllegalStateException("Resolving a battle failed", e.getCause());
                 } else {
-                    units2.addAll(army.getUnits());
+                    failure.addSuppressed(e.getCause());
                 }
             }
-            double armyRatio = (double) units1.size() / (double) units2.size();
-            boolean team1Advantage = true;
-            if (armyRatio < 1) {
-                team1Advantage = false;
-                armyRatio = 1 / armyRatio;
-            }
+        }
+        for (Army army: defeated) {
+            army.getLocation().removeArmy(army);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 
-            Unit unit1, unit2;
-            for (int i = 0; i < Math.min(units1.size(), units2.size()); i++) {
-                unit1 = units1.get(i);
-                unit2 = units2.get(i);
-                if (team1Advantage) {
-                    unit2.takeDamage((int) (unit1.getDamage() * armyRatio));
-                    unit1.takeDamage(unit2.getDamage());
-                } else {
-                    unit1.takeDamage((int) (unit2.getDamage() * armyRatio));
-                    unit2.takeDamage(unit1.getDamage());
+    /**
+     * Wait for the result of a battle that was resolved by the battle executor. Battles always end, so an interrupt
+     * does not stop the waiting, but is kept for the caller.
+     * @param result The future result of the battle.
+     * @return The armies that were defeated in the battle.
+     * @throws ExecutionException If the battle failed.
+     */
+    private static List<Army> waitFor(Future<List<Army>> result) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return result.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
                 }
             }
-        } while (bothTeamsPresent(location));
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 }
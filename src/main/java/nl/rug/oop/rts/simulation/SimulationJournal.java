@@ -0,0 +1,414 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.Graph;
+import nl.rug.oop.rts.graph.ModelChange;
+import nl.rug.oop.rts.graph.ModelListener;
+import nl.rug.oop.rts.simulation.events.Event;
+import nl.rug.oop.rts.simulation.events.EventSink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a simulation in an append-only binary file, so it can be audited and replayed with a {@link JournalReplay}.
+ * For every step the journal writes what changed: the armies that moved, were added or were removed, the net change
+ * in units of every army and the events that happened. Every few steps it also writes a keyframe with the full state,
+ * so a replay can jump to any step by starting at the keyframe before it.
+ * The journal listens to the changes of the graph and is told by the {@link Simulation} when a step is finished.
+ * Records are collected in a buffer on the simulating thread, full buffers are written to the file on a background
+ * thread. The layout of the graph should not change while it is recorded.
+ */
+public class SimulationJournal implements ModelListener, AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int BUFFERS = 4;
+    private final Graph graph;
+    private final FileChannel channel;
+    private final int keyframeInterval;
+    private final Map<ArmyLocation, Integer> locationIds = new IdentityHashMap<>();
+    private Map<Army, Integer> armyIds = new IdentityHashMap<>();
+    private int nextArmyId = 0;
+    /**
+     * What happened to armies during the current step. Armies do not override equals, so these maps use identity.
+     */
+    private final Map<Army, ArmyLocation> created = new LinkedHashMap<>();
+    private final Map<Army, ArmyLocation> moved = new LinkedHashMap<>();
+    private final Map<Army, Integer> unitChanges = new LinkedHashMap<>();
+    private final Set<Army> removed = new LinkedHashSet<>();
+    /**
+     * The numbers of the armies that were added during the current step. Events can happen to them before the
+     * journal hears that they were added, so they get their number from whichever comes first.
+     */
+    private final Map<Army, Integer> createdIds = new IdentityHashMap<>();
+    /**
+     * The events of the current step. They are written after the armies created in the step, so every event refers to
+     * an army the replay already knows.
+     */
+    private ByteBuffer stepEvents = ByteBuffer.allocate(1024);
+    private boolean keyframeNeeded = false;
+    private int step = 0;
+    private int[] counts = new int[0];
+    private ByteBuffer buffer;
+    private final BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(BUFFERS);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile IOException failure;
+
+    /**
+     * Constructor for the journal. Creates the file, or empties it if it already exists, and writes the header and a
+     * keyframe with the current state of the graph.
+     * @param graph The graph that is simulated.
+     * @param path The path of the file.
+     * @param keyframeInterval The amount of steps between two keyframes.
+     * @throws IOException If the file cannot be opened.
+     */
+    public SimulationJournal(Graph graph, Path path, int keyframeInterval) throws IOException {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("The keyframe interval should be at least 1");
+        }
+        this.graph = graph;
+        this.keyframeInterval = keyframeInterval;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        for (int i = 0; i < BUFFERS; i++) {
+            freeBuffers.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+        buffer = freeBuffers.remove();
+        List<ArmyLocation> locations = JournalFormat.locations(graph);
+        for (int i = 0; i < locations.size(); i++) {
+            locationIds.put(locations.get(i), i);
+        }
+        buffer.putInt(JournalFormat.MAGIC).putShort(JournalFormat.VERSION).putInt(graph.getNodes().size())
+                .putInt(graph.getEdges().size()).putInt(keyframeInterval);
+        writeKeyframe();
+        graph.addModelListener(this);
+    }
+
+    @Override
+    public void changed(ModelChange change) {
+        Army army = change.getArmy();
+        switch (change.getType()) {
+            case ARMY_ADDED -> {
+                if (removed.remove(army) || armyIds.containsKey(army)) {
+                    moved.put(army, change.getLocation());
+                } else {
+                    created.put(army, change.getLocation());
+                    createdIds.computeIfAbsent(army, unknown -> nextArmyId++);
+                }
+            }
+            case ARMY_REMOVED -> {
+                if (created.remove(army) == null) {
+                    removed.add(army);
+                    moved.remove(army);
+                }
+            }
+            case UNITS_CHANGED -> unitChanges.merge(army, change.getAmount(), Integer::sum);
+            case ARMIES_REPLACED -> {
+                keyframeNeeded = true;
+            }
+            default -> {
+                // the layout of the graph is not part of the journal.
+            }
+        }
+    }
+
+    /**
+     * Record the seed of the simulation.
+     * @param seed The seed.
+     */
+    public void recordSeed(long seed) {
+        ensure(1 + Long.BYTES);
+        buffer.put(JournalFormat.SEED).putLong(seed);
+    }
+
+    /**
+     * Wrap an event sink, so every event is recorded before it is passed on.
+     * @param sink The sink to pass the events on to.
+     * @return The recording sink.
+     */
+    public EventSink recordEvents(EventSink sink) {
+        return (event, army) -> {
+            recordEvent(event, army);
+            sink.eventHappened(event, army);
+        };
+    }
+
+    /**
+     * Record an event that happened to an army. An army the journal does not know yet was added during this step, so
+     * it gets its number now.
+     * @param event The event.
+     * @param army The army.
+     */
+    private void recordEvent(Event event, Army army) {
+        Integer id = armyIds.get(army);
+        if (id == null) {
+            id = createdIds.computeIfAbsent(army, unknown -> nextArmyId++);
+        }
+        int size = 1 + Integer.BYTES * 2 + JournalFormat.stringSize(event.getName());
+        if (stepEvents.remaining() < size) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(stepEvents.capacity() * 2, stepEvents.position() + size));
+            stepEvents.flip();
+            stepEvents = larger.put(stepEvents);
+        }
+        stepEvents.put(JournalFormat.EVENT).putInt(id).putInt(locationIds.getOrDefault(army.getLocation(), -1));
+        JournalFormat.putString(stepEvents, event.getName());
+    }
+
+    /**
+     * Write the changes of the step that just finished, and a keyframe if one is due. Called by the simulation.
+     */
+    public void stepFinished() {
+        graph.flushChanges();
+        step++;
+        if (keyframeNeeded) {
+            // the changes may be about armies the journal never saw, so only the events and the keyframe are written.
+            writeEvents();
+            clearChanges();
+        } else {
+            writeChanges();
+        }
+        ensure(1 + Integer.BYTES);
+        buffer.put(JournalFormat.STEP).putInt(step);
+        if (keyframeNeeded || step % keyframeInterval == 0) {
+            writeKeyframe();
+        }
+    }
+
+    /**
+     * Write the changes collected during the current step. The armies that were removed come last, so the events that
+     * happened to them before can still be replayed.
+     */
+    private void writeChanges() {
+        for (Map.Entry<Army, ArmyLocation> entry : moved.entrySet()) {
+            Integer id = armyIds.get(entry.getKey());
+            if (id == null) {
+                continue;
+            }
+            ensure(1 + Integer.BYTES * 3);
+            buffer.put(JournalFormat.MOVE).putInt(id).putInt(locationIds.get(entry.getValue()))
+                    .putInt(locationIds.getOrDefault(entry.getKey().getOnWayTo(), -1));
+        }
+        for (Map.Entry<Army, Integer> entry : unitChanges.entrySet()) {
+            Integer id = armyIds.get(entry.getKey());
+            // new armies are written with their units at the end of the step, removed ones are gone.
+            if (id != null && entry.getValue() != 0 && !removed.contains(entry.getKey())) {
+                ensure(1 + Integer.BYTES * 2);
+                buffer.put(JournalFormat.UNITS).putInt(id).putInt(entry.getValue());
+            }
+        }
+        writeCreated();
+        writeEvents();
+        for (Army army : removed) {
+            Integer id = armyIds.remove(army);
+            if (id != null) {
+                ensure(1 + Integer.BYTES);
+                buffer.put(JournalFormat.REMOVE).putInt(id);
+            }
+        }
+        clearChanges();
+    }
+
+    /**
+     * Write the armies that were added during the current step, with their units at the end of the step.
+     */
+    private void writeCreated() {
+        for (Map.Entry<Army, ArmyLocation> entry : created.entrySet()) {
+            int id = createdIds.get(entry.getKey());
+            armyIds.put(entry.getKey(), id);
+            ensure(1);
+            buffer.put(JournalFormat.CREATE);
+            writeArmy(entry.getKey(), id, entry.getValue());
+        }
+    }
+
+    /**
+     * Write the events of the current step.
+     */
+    private void writeEvents() {
+        stepEvents.flip();
+        ensure(stepEvents.remaining());
+        buffer.put(stepEvents);
+        stepEvents.clear();
+    }
+
+    private void clearChanges() {
+        created.clear();
+        createdIds.clear();
+        moved.clear();
+        unitChanges.clear();
+        removed.clear();
+    }
+
+    /**
+     * Write a keyframe with all armies in the graph. Armies the journal already knows keep their number.
+     */
+    private void writeKeyframe() {
+        keyframeNeeded = false;
+        Map<Army, Integer> keyframeIds = new IdentityHashMap<>();
+        for (ArmyLocation location : graph.getOccupiedLocations()) {
+            for (Army army : location.getArmiesPresent()) {
+                Integer id = armyIds.get(army);
+                keyframeIds.put(army, id != null ? id : nextArmyId++);
+            }
+        }
+        armyIds = keyframeIds;
+        // a record does not have to fit in one buffer, they are written to the file in order.
+        ensure(1 + Integer.BYTES * 2);
+        buffer.put(JournalFormat.KEYFRAME).putInt(step).putInt(keyframeIds.size());
+        for (ArmyLocation location : graph.getOccupiedLocations()) {
+            for (Army army : location.getArmiesPresent()) {
+                writeArmy(army, keyframeIds.get(army), location);
+            }
+        }
+    }
+
+    /**
+     * Calculate how much space an army takes in the journal. Counts its buckets into the counts array.
+     * @param army The army.
+     * @return The size in bytes.
+     */
+    private int armySize(Army army) {
+        int keysNum = army.getFaction().getUnitNames().size() * UnitHistogram.DAMAGE_VALUES
+                * UnitHistogram.HEALTH_VALUES;
+        if (counts.length != keysNum) {
+            counts = new int[keysNum];
+        }
+        army.countBuckets(counts);
+        int buckets = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                buckets++;
+            }
+        }
+        return JournalFormat.ARMY_SIZE + JournalFormat.stringSize(army.getFaction().getFactionName())
+                + buckets * JournalFormat.BUCKET_SIZE;
+    }
+
+    /**
+     * Write an army with the buckets of its units.
+     * @param army The army.
+     * @param id The number of the army.
+     * @param location The location of the army.
+     */
+    private void writeArmy(Army army, int id, ArmyLocation location) {
+        ensure(armySize(army));
+        buffer.putInt(id).putInt(locationIds.get(location));
+        JournalFormat.putString(buffer, army.getFaction().getFactionName());
+        buffer.putInt(locationIds.getOrDefault(army.getOnWayTo(), -1)).putInt(army.getUnitsNum());
+        int bucketsPosition = buffer.position();
+        buffer.putInt(0);
+        int buckets = 0;
+        for (int key = 0; key < counts.length; key++) {
+            if (counts[key] > 0) {
+                buffer.putShort((short) key).putInt(counts[key]);
+                buckets++;
+            }
+        }
+        buffer.putInt(bucketsPosition, buckets);
+    }
+
+    /**
+     * Make sure the buffer has room for a record. If it does not, the buffer is handed to the writer thread first.
+     * @param size The size of the record in bytes.
+     * @return The buffer.
+     */
+    private ByteBuffer ensure(int size) {
+        if (buffer.remaining() < size) {
+            handOff();
+            if (buffer.remaining() < size) {
+                // larger than a normal buffer, for example a keyframe of a big graph.
+                freeBuffers.add(buffer);
+                buffer = ByteBuffer.allocate(size);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Hand the current buffer to the writer thread, and continue with a free one. Waits if all buffers are being
+     * written, so a slow disk slows down the simulation instead of filling the memory.
+     */
+    private void handOff() {
+        checkFailure();
+        ByteBuffer full = buffer;
+        full.flip();
+        writer.execute(() -> write(full));
+        try {
+            buffer = freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal writer", e);
+        }
+    }
+
+    /**
+     * Write a buffer to the file and give it back. Runs on the writer thread.
+     * @param full The buffer.
+     */
+    private void write(ByteBuffer full) {
+        try {
+            while (full.hasRemaining()) {
+                channel.write(full);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        if (full.capacity() == BUFFER_SIZE) {
+            full.clear();
+            freeBuffers.add(full);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Could not write the journal", failure);
+        }
+    }
+
+    /**
+     * Hand everything recorded so far to the writer thread.
+     */
+    public void flush() {
+        if (buffer.position() > 0) {
+            handOff();
+        }
+    }
+
+    /**
+     * Stop recording, write everything that is left and close the file.
+     * @throws IOException If writing or closing the file failed.
+     */
+    @Override
+    public void close() throws IOException {
+        graph.removeModelListener(this);
+        flush();
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.Graph;
+import nl.rug.oop.rts.graph.ModelChange;
+import nl.rug.oop.rts.graph.ModelListener;
+import nl.rug.oop.rts.graph.Node;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers how to undo the last steps of a simulation. For every step only what changed is kept: the armies of the
+ * locations whose armies changed, and the location, destination and units of the armies that changed. Units are saved
+ * by sharing them with the army, which copies them before changing them, so an army that did not change costs nothing.
+ * Only a limited amount of steps is kept, the oldest ones are forgotten first.
+ * Changing the armies or events of the graph outside a step makes the history useless, so it is then forgotten.
+ * A step that fails halfway is not kept, but undone right away, so the armies are not left halfway through it.
+ * Random streams are not rewound, so simulating again after rewinding can turn out differently.
+ */
+class StepHistory implements ModelListener {
+    private final Graph graph;
+    private final int capacity;
+    private final Deque<StepDelta> steps = new ArrayDeque<>();
+    /**
+     * The armies of every occupied location when the current step started.
+     */
+    private final Map<ArmyLocation, List<Army>> armiesBefore = new IdentityHashMap<>();
+    private final List<ArmyState> statesBefore = new ArrayList<>();
+    private int phaseBefore;
+    /**
+     * Whether the changes the graph reports are made by a step or by rewinding, so they do not clear the history.
+     */
+    private boolean recording = false;
+
+    /**
+     * Constructor for the history. Starts listening to the changes of the graph.
+     * @param graph The graph that is simulated.
+     * @param capacity The maximum amount of steps to keep.
+     */
+    StepHistory(Graph graph, int capacity) {
+        this.graph = graph;
+        this.capacity = capacity;
+        graph.addModelListener(this);
+    }
+
+    /**
+     * Stop listening to the changes of the graph.
+     */
+    void detach() {
+        graph.removeModelListener(this);
+    }
+
+    int size() {
+        return steps.size();
+    }
+
+    @Override
+    public void changed(ModelChange change) {
+        if (recording) {
+            return;
+        }
+        switch (change.getType()) {
+            case NODE_MOVED, RENAMED -> {
+                // does not affect the armies.
+            }
+            default -> steps.clear();
+        }
+    }
+
+    /**
+     * Save the state of every army before a step.
+     * @param phase The step phase of the simulation before the step.
+     */
+    void stepStarting(int phase) {
+        recording = true;
+        phaseBefore = phase;
+        for (ArmyLocation location : graph.getOccupiedLocations()) {
+            List<Army> present = location.getArmiesPresent();
+            armiesBefore.put(location, new ArrayList<>(present));
+            for (Army army : present) {
+                statesBefore.add(new ArmyState(army));
+            }
+        }
+    }
+
+    /**
+     * Keep what changed during the step that just finished, and forget the rest.
+     */
+    void stepFinished() {
+        steps.addLast(finishRecording());
+        if (steps.size() > capacity) {
+            steps.removeFirst();
+        }
+    }
+
+    /**
+     * Undo the step that was being recorded because it failed.
+     * @return The step phase of the simulation before that step.
+     */
+    int stepFailed() {
+        StepDelta delta = finishRecording();
+        undo(delta);
+        return delta.phase;
+    }
+
+    /**
+     * Stop recording the current step.
+     * @return What changed during the step.
+     */
+    private StepDelta finishRecording() {
+        graph.flushChanges();
+        Map<ArmyLocation, List<Army>> changedArmies = new IdentityHashMap<>();
+        for (Map.Entry<ArmyLocation, List<Army>> entry : armiesBefore.entrySet()) {
+            if (!sameArmies(entry.getValue(), entry.getKey().getArmiesPresent())) {
+                changedArmies.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (ArmyLocation location : graph.getOccupiedLocations()) {
+            if (!armiesBefore.containsKey(location)) {
+                changedArmies.put(location, List.of());
+            }
+        }
+        List<ArmyState> changedStates = new ArrayList<>();
+        for (ArmyState state : statesBefore) {
+            if (state.changed()) {
+                changedStates.add(state);
+            }
+        }
+        armiesBefore.clear();
+        statesBefore.clear();
+        recording = false;
+        return new StepDelta(phaseBefore, changedArmies, changedStates);
+    }
+
+    /**
+     * Check if two lists hold the same armies in the same order.
+     * @param before The armies before.
+     * @param after The armies after.
+     * @return Whether the lists are the same.
+     */
+    private static boolean sameArmies(List<Army> before, List<Army> after) {
+        if (before.size() != after.size()) {
+            return false;
+        }
+        for (int i = 0; i < before.size(); i++) {
+            if (before.get(i) != after.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Undo the last step that is still remembered, in a single transaction on the graph.
+     * @return The step phase of the simulation before that step.
+     */
+    int rewind() {
+        StepDelta delta = steps.removeLast();
+        undo(delta);
+        return delta.phase;
+    }
+
+    /**
+     * Put the armies back the way they were before a step, in a single transaction on the graph.
+     * @param delta What changed during the step.
+     */
+    private void undo(StepDelta delta) {
+        // every location that has to be recounted: the changed ones, and those of the changed armies.
+        Map<ArmyLocation, List<Army>> restored = new IdentityHashMap<>(delta.armies);
+        for (ArmyState state : delta.states) {
+            for (ArmyLocation location : List.of(state.army.getLocation(), state.location)) {
+                restored.putIfAbsent(location, new ArrayList<>(location.getArmiesPresent()));
+            }
+        }
+        recording = true;
+        graph.beginChange();
+        try {
+            for (ArmyLocation location : restored.keySet()) {
+                graph.replaceArmies(location, List.of());
+            }
+            for (ArmyState state : delta.states) {
+                state.restore();
+            }
+            for (Map.Entry<ArmyLocation, List<Army>> entry : restored.entrySet()) {
+                graph.replaceArmies(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            graph.commitChange();
+            recording = false;
+        }
+    }
+
+    /**
+     * What changed during a step.
+     */
+    private static final class StepDelta {
+        private final int phase;
+        private final Map<ArmyLocation, List<Army>> armies;
+        private final List<ArmyState> states;
+
+        private StepDelta(int phase, Map<ArmyLocation, List<Army>> armies, List<ArmyState> states) {
+            this.phase = phase;
+            this.armies = armies;
+            this.states = states;
+        }
+    }
+
+    /**
+     * The location, destination and units of an army at the start of a step.
+     */
+    private static final class ArmyState {
+        private final Army army;
+        private final ArmyLocation location;
+        private final Node onWayTo;
+        private final UnitsImage units;
+
+        private ArmyState(Army army) {
+            this.army = army;
+            this.location = army.getLocation();
+            this.onWayTo = army.getOnWayTo();
+            this.units = army.saveUnits();
+        }
+
+        private boolean changed() {
+            return army.getLocation() != location || army.getOnWayTo() != onWayTo || !army.hasUnits(units);
+        }
+
+        private void restore() {
+            army.setLocation(location);
+            army.setOnWayTo(onWayTo);
+            army.restoreUnits(units);
+        }
+    }
+}
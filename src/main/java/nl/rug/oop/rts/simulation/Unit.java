@@ -2,33 +2,29 @@ package nl.rug.oop.rts.simulation;
 
 /**
  * Unit class. Has a name, the damage it deals and its health. Belongs to an army.
+ * A unit is a view on a position in the unit arrays of its army, so it does not hold any state itself.
+ * The view is only valid until units are removed from the army.
  */
 public class Unit {
-    private String name;
-    private int damage;
-    private int health;
-    private Army army;
+    private final Army army;
+    private final int index;
 
     /**
      * Constructor for unit.
-     * @param name The name of this unit.
-     * @param damage The damage this unit deals.
-     * @param health The health this unit starts with.
      * @param army The army this unit belongs to.
+     * @param index The position of this unit in its army.
      */
-    public Unit(String name, int damage, int health, Army army) {
-        this.name = name;
-        this.damage = damage;
-        this.health = health;
+    Unit(Army army, int index) {
         this.army = army;
+        this.index = index;
     }
 
     public String getName() {
-        return name;
+        return army.getUnitName(index);
     }
 
     public int getDamage() {
-        return damage;
+        return army.getUnitDamage(index);
     }
 
     /**
@@ -37,13 +33,14 @@ public class Unit {
      * @param damage The amount of damage the unit takes.
      */
     public void takeDamage(int damage) {
-        health -= damage;
-        if (health <= 0) {
-            army.removeUnit(this);
-        }
+        army.damageUnit(index, damage);
     }
 
     public int getHealth() {
-        return health;
+        return army.getUnitHealth(index);
+    }
+
+    int getIndex() {
+        return index;
     }
 }
@@ -0,0 +1,238 @@
+package nl.rug.oop.rts.simulation;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores the units of a compressed army as counts per (type, damage, health) bucket instead of one entry per unit.
+ * Units only differ in their type, a damage value and a health value from a small range, so even a huge army has at
+ * most a few thousand different buckets.
+ * The units are ordered by bucket: first by type, then by damage, then by health. The position of a unit in this order
+ * is its index, but indices change whenever the health of a unit changes.
+ * The counts are normally kept in an array, but a {@link MappedArmyStore} can move them into mapped memory outside the
+ * heap, where they are changed in place.
+ */
+class UnitHistogram {
+    /**
+     * The amount of different damage values a unit can have.
+     */
+    static final int DAMAGE_VALUES = Army.STAT_RANGE;
+    /**
+     * The amount of different health values a living unit can have: from 1 up to the highest starting health.
+     */
+    static final int HEALTH_VALUES = Army.MIN_STAT + Army.STAT_RANGE - 1;
+    private int[] counts;
+    /**
+     * The counts if they are kept in mapped memory, in which case the array is null.
+     */
+    private IntBuffer mapped;
+    private int size;
+    /**
+     * For every bucket, the amount of units in it and in all buckets before it. Only valid if indexed is true.
+     */
+    private int[] cumulative;
+    private boolean indexed;
+
+    /**
+     * Constructor for an empty histogram.
+     * @param typesNum The amount of unit types of the faction of the army.
+     */
+    UnitHistogram(int typesNum) {
+        counts = new int[typesNum * DAMAGE_VALUES * HEALTH_VALUES];
+    }
+
+    /**
+     * Constructor for a histogram whose counts are already in mapped memory.
+     * @param mapped The counts.
+     * @param size The total of the counts.
+     */
+    UnitHistogram(IntBuffer mapped, int size) {
+        this.mapped = mapped;
+        this.size = size;
+    }
+
+    /**
+     * Create a copy of this histogram. The copy keeps its counts in an array, also if this histogram does not.
+     * @return The copy.
+     */
+    UnitHistogram copy() {
+        UnitHistogram copy = new UnitHistogram(0);
+        copy.counts = new int[keysNum()];
+        copyCounts(copy.counts);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Move the counts into mapped memory, where they are kept from now on.
+     * @param block The memory, with room for {@link #keysNum()} counts.
+     */
+    void moveTo(IntBuffer block) {
+        block.put(0, counts);
+        mapped = block;
+        counts = null;
+    }
+
+    /**
+     * Move the counts back into an array, so the mapped memory can be used for something else.
+     */
+    void moveToHeap() {
+        int[] heapCounts = new int[keysNum()];
+        copyCounts(heapCounts);
+        counts = heapCounts;
+        mapped = null;
+    }
+
+    boolean isMapped() {
+        return mapped != null;
+    }
+
+    /**
+     * Get the bucket of a unit.
+     * @param type The type of the unit.
+     * @param damage The damage of the unit.
+     * @param health The health of the unit, at least 1.
+     * @return The position of the bucket in the counts.
+     */
+    static int key(int type, int damage, int health) {
+        if (damage < Army.MIN_STAT || damage >= Army.MIN_STAT + DAMAGE_VALUES || health < 1 || health > HEALTH_VALUES) {
+            throw new IllegalArgumentException("No bucket for damage " + damage + " and health " + health);
+        }
+        return (type * DAMAGE_VALUES + damage - Army.MIN_STAT) * HEALTH_VALUES + health - 1;
+    }
+
+    static int typeOf(int key) {
+        return key / (DAMAGE_VALUES * HEALTH_VALUES);
+    }
+
+    static int damageOf(int key) {
+        return key / HEALTH_VALUES % DAMAGE_VALUES + Army.MIN_STAT;
+    }
+
+    static int healthOf(int key) {
+        return key % HEALTH_VALUES + 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int keysNum() {
+        return mapped != null ? mapped.limit() : counts.length;
+    }
+
+    int getCount(int key) {
+        return mapped != null ? mapped.get(key) : counts[key];
+    }
+
+    /**
+     * Add units to a bucket, or remove them if the amount is negative.
+     * @param key The bucket.
+     * @param amount The amount of units.
+     */
+    void add(int key, int amount) {
+        if (mapped != null) {
+            mapped.put(key, mapped.get(key) + amount);
+        } else {
+            counts[key] += amount;
+        }
+        size += amount;
+        indexed = false;
+    }
+
+    /**
+     * Remove units from the back: from the last buckets first.
+     * @param amount The amount of units to remove.
+     */
+    void removeFromBack(int amount) {
+        for (int key = keysNum() - 1; key >= 0 && amount > 0; key--) {
+            int removed = Math.min(amount, getCount(key));
+            add(key, -removed);
+            amount -= removed;
+        }
+    }
+
+    /**
+     * Replace all counts, for example with the survivors of a battle.
+     * @param newCounts The new counts. The histogram uses the array itself, so it should not be changed afterwards,
+     *                  unless the counts are in mapped memory, where they are copied to.
+     * @param newSize The total of the new counts.
+     */
+    void replaceCounts(int[] newCounts, int newSize) {
+        if (mapped != null) {
+            mapped.put(0, newCounts, 0, mapped.limit());
+        } else {
+            counts = newCounts;
+        }
+        size = newSize;
+        indexed = false;
+    }
+
+    /**
+     * Copy the counts into an array.
+     * @param target The array to copy into. Should have a length of at least {@link #keysNum()}.
+     */
+    void copyCounts(int[] target) {
+        if (mapped != null) {
+            mapped.get(0, target, 0, mapped.limit());
+        } else {
+            System.arraycopy(counts, 0, target, 0, counts.length);
+        }
+    }
+
+    /**
+     * Find the bucket of the unit at a position.
+     * @param index The position of the unit.
+     * @return The bucket the unit is in.
+     */
+    int locate(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        if (!indexed) {
+            int keysNum = keysNum();
+            if (cumulative == null || cumulative.length != keysNum) {
+                cumulative = new int[keysNum];
+            }
+            int total = 0;
+            for (int key = 0; key < keysNum; key++) {
+                total += getCount(key);
+                cumulative[key] = total;
+            }
+            indexed = true;
+        }
+        int key = Arrays.binarySearch(cumulative, index + 1);
+        if (key < 0) {
+            return -key - 1;
+        }
+        // several buckets can end at the same position, the unit is in the first one.
+        while (key > 0 && cumulative[key - 1] == index + 1) {
+            key--;
+        }
+        return key;
+    }
+
+    /**
+     * Calculate the total damage of all units.
+     * @return The sum of the damage of every unit.
+     */
+    long getTotalDamage() {
+        long total = 0;
+        for (int key = 0; key < keysNum(); key++) {
+            total += (long) getCount(key) * damageOf(key);
+        }
+        return total;
+    }
+
+    /**
+     * Calculate the total health of all units.
+     * @return The sum of the health of every unit.
+     */
+    long getTotalHealth() {
+        long total = 0;
+        for (int key = 0; key < keysNum(); key++) {
+            total += (long) getCount(key) * healthOf(key);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,41 @@
+package nl.rug.oop.rts.simulation;
+
+/**
+ * The units of an army at some moment, saved with {@link Army#saveUnits()}. The arrays or histogram are shared with
+ * the army, which copies them before changing them.
+ */
+final class UnitsImage {
+    private final int[] damage;
+    private final int[] health;
+    private final byte[] types;
+    private final UnitHistogram histogram;
+    private final int unitsNum;
+
+    UnitsImage(int[] damage, int[] health, byte[] types, UnitHistogram histogram, int unitsNum) {
+        this.damage = damage;
+        this.health = health;
+        this.types = types;
+        this.histogram = histogram;
+        this.unitsNum = unitsNum;
+    }
+
+    int[] getDamage() {
+        return damage;
+    }
+
+    int[] getHealth() {
+        return health;
+    }
+
+    byte[] getTypes() {
+        return types;
+    }
+
+    UnitHistogram getHistogram() {
+        return histogram;
+    }
+
+    int getUnitsNum() {
+        return unitsNum;
+    }
+}
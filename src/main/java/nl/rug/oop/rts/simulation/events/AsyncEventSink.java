@@ -0,0 +1,95 @@
+package nl.rug.oop.rts.simulation.events;
+
+import nl.rug.oop.rts.simulation.Army;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Event sink that never makes the simulation wait. The message of every event is put in a bounded queue, and a
+ * background thread hands the messages to a consumer in batches, for example a log panel or a file.
+ * If the consumer cannot keep up and the queue is full, new messages are dropped. The consumer is told how many
+ * messages were dropped once it has caught up.
+ */
+public class AsyncEventSink implements EventSink, AutoCloseable {
+    private static final int BATCH_SIZE = 256;
+    private final BlockingQueue<String> queue;
+    private final Consumer<List<String>> consumer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor for the sink. Starts the background thread.
+     * @param capacity The maximum amount of messages waiting in the queue.
+     * @param consumer The consumer that gets the messages. Called on the background thread only.
+     */
+    public AsyncEventSink(int capacity, Consumer<List<String>> consumer) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.consumer = consumer;
+        this.worker = new Thread(this::deliver, "event-log");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void eventHappened(Event event, Army army) {
+        if (closed || !queue.offer(event.getMessage(army))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the amount of messages that were dropped because the queue was full or the sink was closed.
+     * @return The amount of dropped messages.
+     */
+    public long getDroppedNum() {
+        return dropped.get();
+    }
+
+    /**
+     * Hand the messages in the queue to the consumer until the sink is closed and the queue is empty.
+     */
+    private void deliver() {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        long reported = 0;
+        try {
+            while (!closed || !queue.isEmpty()) {
+                String first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                }
+                long droppedNow = dropped.get();
+                if (droppedNow != reported && queue.isEmpty()) {
+                    batch.add((droppedNow - reported) + " more events happened but were not shown.");
+                    reported = droppedNow;
+                }
+                if (!batch.isEmpty()) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop accepting messages, hand the remaining ones to the consumer and wait for the background thread to stop.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
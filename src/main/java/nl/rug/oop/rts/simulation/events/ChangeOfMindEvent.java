@@ -1,8 +1,10 @@
 package nl.rug.oop.rts.simulation.events;
 
 import nl.rug.oop.rts.simulation.Army;
+import nl.rug.oop.rts.simulation.ArmyRandom;
 import nl.rug.oop.rts.simulation.factions.Faction;
 
+
 /**
  * Event that causes the army to split into two with one half joining the other team.
  * Extends event.
@@ -19,7 +21,8 @@ public class ChangeOfMindEvent extends Event {
 
     /**
      * Process the event. Split the army in two, with the second half becoming an army belonging to a random faction
-     * of the other team.
+     * of the other team. The new army gets a random stream split off from the stream of the original army, and is
+     * compressed if the original army is.
      * @param army The army that the event is happening to.
      */
     @Override
@@ -28,8 +31,13 @@ public class ChangeOfMindEvent extends Event {
         int newNum = unitsNum / 2;
         army.removeUnits(newNum);
         int newTeam = Math.abs(army.getFaction().getTeamNum() - 1);
-        Faction faction = Faction.createRandomFaction(newTeam);
-        Army newArmy = new Army(newNum, faction, army.getLocation());
+        Faction faction = Faction.createRandomFaction(newTeam, army.getRandom());
+        ArmyRandom random = army.getRandom().split();
+        Army newArmy = army.isCompressed()
+                ? Army.createCompressed(newNum, faction, army.getLocation(), random)
+                : new Army(newNum, faction, army.getLocation(), random);
+        newArmy.setOnWayTo(army.getOnWayTo());
+        newArmy.setDestination(army.getDestination());
         army.getLocation().addArmy(newArmy);
     }
 }
@@ -2,8 +2,6 @@ package nl.rug.oop.rts.simulation.events;
 
 import nl.rug.oop.rts.simulation.Army;
 
-import javax.swing.*;
-
 /**
  * Abstract event class. An event can be on an army location. Each event has a different effect. When an army
  * moves to a location with an event, there is a chance the event triggers.
@@ -20,12 +18,13 @@ public abstract class Event {
     protected String explanation;
 
     /**
-     * Create a popup sharing with the user the event that happened and to which army.
+     * Create the message telling the user the event that happened and to which army.
      * @param army The army the event happened to.
+     * @return The message.
      */
-    public void createPopUp(Army army) {
-        JOptionPane.showMessageDialog(null, "The following event happened to the army " +
-                "of faction " + army.getFaction().getFactionName() + ":\n" + explanation);
+    public String getMessage(Army army) {
+        return "The following event happened to the army " +
+                "of faction " + army.getFaction().getFactionName() + ":\n" + explanation;
     }
 
     /**
@@ -35,13 +34,14 @@ public abstract class Event {
     public abstract void processEvent(Army army);
 
     /**
-     * Carry out the event. First call the processEvent method which changes the state of the graph, then create a
-     * popup telling the user what happened.
+     * Carry out the event. First call the processEvent method which changes the state of the graph, then tell the
+     * sink what happened.
      * @param army The army the event is happening to.
+     * @param sink The sink that is notified of the event.
      */
-    public void carryOutEvent(Army army) {
+    public void carryOutEvent(Army army, EventSink sink) {
         processEvent(army);
-        createPopUp(army);
+        sink.eventHappened(this, army);
     }
 
     /**
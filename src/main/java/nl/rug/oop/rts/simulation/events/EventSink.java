@@ -0,0 +1,16 @@
+package nl.rug.oop.rts.simulation.events;
+
+import nl.rug.oop.rts.simulation.Army;
+
+/**
+ * Interface for everything that wants to be told when an event happened to an army.
+ * The simulation hands every triggered event to its sink, so it never has to know about dialogs or other views.
+ */
+public interface EventSink {
+    /**
+     * Sink that ignores all events. Useful for headless runs.
+     */
+    EventSink NONE = (event, army) -> { };
+
+    void eventHappened(Event event, Army army);
+}
@@ -0,0 +1,46 @@
+package nl.rug.oop.rts.simulation.events;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Writes event messages to a text file, one message per line. Meant for headless runs, as the consumer of an
+ * {@link AsyncEventSink}, so writing the file never slows down the simulation.
+ */
+public class FileEventLog implements Consumer<List<String>>, Closeable {
+    private final BufferedWriter writer;
+
+    /**
+     * Constructor for the log. Creates the file, or empties it if it already exists.
+     * @param path The path of the file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public FileEventLog(Path path) throws IOException {
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void accept(List<String> messages) {
+        try {
+            for (String message : messages) {
+                // keep one message per line.
+                writer.write(message.replace('\n', ' '));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to the event log", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -1,7 +1,7 @@
 package nl.rug.oop.rts.simulation.factions;
 
 import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 /**
  * Abstract class representing a faction. Each faction has a couple of unit names to choose from and belongs to a team,
@@ -24,10 +24,10 @@ public abstract class Faction {
     /**
      * Create a random faction belonging to the specified team.
      * @param teamNum The number of the team the faction should belong to.
+     * @param random The random stream used to pick the faction.
      * @return The newly created faction.
      */
-    public static Faction createRandomFaction(int teamNum) {
-        Random random = new Random();
+    public static Faction createRandomFaction(int teamNum, RandomGenerator random) {
         if (teamNum == 0) {
             int randInt = random.nextInt(3);
             return switch (randInt) {
@@ -44,6 +44,22 @@ public abstract class Faction {
         }
     }
 
+    /**
+     * Create a faction by its name.
+     * @param factionName The name of the faction, as returned by {@link #getFactionName()}.
+     * @return The newly created faction, or null if there is no faction with that name.
+     */
+    public static Faction createFaction(String factionName) {
+        return switch (factionName) {
+            case "Men" -> new Men();
+            case "Dwarves" -> new Dwarves();
+            case "Elves" -> new Elves();
+            case "Mordor" -> new Mordor();
+            case "Isengard" -> new Isengard();
+            default -> null;
+        };
+    }
+
     /**
      * Getter for teamName.
      * @return The name of the team this faction belongs to.
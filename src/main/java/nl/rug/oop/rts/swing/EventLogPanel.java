@@ -0,0 +1,97 @@
+package nl.rug.oop.rts.swing;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Panel that shows the events that happened in a scrolling log, instead of a dialog per event. Only the most recent
+ * lines are kept. Messages can be handed to it from any thread. They wait in a buffer of at most as many lines as the
+ * log keeps, which a single task on the event dispatch thread empties into the log, so a thread that reports events
+ * faster than the log can show them does not fill up the event queue.
+ */
+public class EventLogPanel extends JPanel implements Consumer<List<String>> {
+    private static final int MAX_LINES = 500;
+    private final JTextArea textArea = new JTextArea();
+    /**
+     * The lines that were handed to the panel but are not in the log yet. Guarded by itself.
+     */
+    private final Deque<String> pending = new ArrayDeque<>();
+    /**
+     * Whether a task to empty the pending lines into the log is waiting on the event dispatch thread. Guarded by the
+     * pending lines.
+     */
+    private boolean drainScheduled = false;
+
+    /**
+     * Constructor. Sets up the title and the scrolling text area.
+     */
+    public EventLogPanel() {
+        setLayout(new BorderLayout());
+        JLabel title = new JLabel("Events");
+        title.setFont(new Font("SansSerif", Font.PLAIN, 20));
+        add(title, BorderLayout.NORTH);
+        textArea.setEditable(false);
+        textArea.setLineWrap(true);
+        textArea.setWrapStyleWord(true);
+        add(new JScrollPane(textArea), BorderLayout.CENTER);
+    }
+
+    /**
+     * Add messages to the end of the log and scroll down to them. If the oldest pending lines would not fit in the
+     * log anymore, they are dropped right away.
+     * @param messages The messages.
+     */
+    @Override
+    public void accept(List<String> messages) {
+        synchronized (pending) {
+            for (String message : messages) {
+                pending.addLast(message.replace('\n', ' '));
+                if (pending.size() > MAX_LINES) {
+                    pending.removeFirst();
+                }
+            }
+            if (drainScheduled || pending.isEmpty()) {
+                return;
+            }
+            drainScheduled = true;
+        }
+        SwingUtilities.invokeLater(this::drain);
+    }
+
+    /**
+     * Move the pending lines into the log.
+     */
+    private void drain() {
+        StringBuilder text = new StringBuilder();
+        synchronized (pending) {
+            for (String line : pending) {
+                text.append(line).append('\n');
+            }
+            pending.clear();
+            drainScheduled = false;
+        }
+        append(text.toString());
+    }
+
+    /**
+     * Append text and remove the oldest lines if there are too many.
+     * @param text The text to append.
+     */
+    private void append(String text) {
+        textArea.append(text);
+        int extraLines = textArea.getLineCount() - 1 - MAX_LINES;
+        if (extraLines > 0) {
+            try {
+                textArea.replaceRange("", 0, textArea.getLineStartOffset(extraLines));
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        textArea.setCaretPosition(textArea.getDocument().getLength());
+    }
+}
@@ -3,6 +3,7 @@ package nl.rug.oop.rts.swing;
 import nl.rug.oop.rts.graph.ArmyLocation;
 import nl.rug.oop.rts.graph.Graph;
 import nl.rug.oop.rts.simulation.Army;
+import nl.rug.oop.rts.simulation.AutoPlayer;
 import nl.rug.oop.rts.simulation.Simulation;
 import nl.rug.oop.rts.simulation.events.Event;
 import nl.rug.oop.rts.simulation.factions.*;
@@ -12,43 +13,72 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.nio.file.Path;
 
 /**
  * Main frame class.
+ * The simulation is run by an {@link AutoPlayer}, so steps never run on the event dispatch thread. While the player is
+ * busy the graph cannot be edited.
  */
 public class Frame extends JFrame {
+    private static final String[] SPEED_NAMES = {
+        "1 step/s", "2 steps/s", "5 steps/s", "10 steps/s", "30 steps/s", "Max"
+    };
+    private static final double[] SPEEDS = {1, 2, 5, 10, 30, 0};
     private int width = 1400;
     private int height = 900;
     private MainPanel mainPanel;
     private OptionsMenu optionsMenu;
+    private final AutoPlayer player;
+    private JButton playButton;
 
     /**
      * Constructor for Frame.
      * @param graph The graph object.
      * @param sim The simulation object.
+     * @param eventLog The panel that shows the events that happen during the simulation.
      */
-    public Frame(Graph graph, Simulation sim) {
+    public Frame(Graph graph, Simulation sim, EventLogPanel eventLog) {
         //set up the window.
         this.setTitle(("OMG its a game!"));
         this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         this.setSize(width, height);
         this.setLayout(new BorderLayout());
 
-        ArrayList<JButton> buttons = addButtons(graph, sim);
-        addPanels(graph, buttons);
+        player = new AutoPlayer(sim, graph);
+        Map<String, JButton> buttons = addButtons(graph);
+        addPanels(graph, buttons, eventLog);
+        player.setFrameRenderer(mainPanel::renderFrame);
+        player.addObserver(() -> SwingUtilities.invokeLater(this::playerChanged));
     }
 
     /**
-     * Add the two panels to the frame.
-     * The two panels are the options menu on the left and the main panel which will be on the right.
-     * They will be configured using a JSplitPane.
+     * Update the play button and allow editing again once the player is no longer busy. Show an error if a step
+     * failed.
+     */
+    private void playerChanged() {
+        playButton.setText(player.isPlaying() ? "Pause" : "Play");
+        mainPanel.setEditable(!player.isBusy());
+        RuntimeException failure = player.takeFailure();
+        if (failure != null) {
+            JOptionPane.showMessageDialog(this, "The simulation failed: " + failure.getMessage(),
+                    "Simulation error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Add the panels to the frame.
+     * The options menu with the event log below it is on the left and the main panel is on the right.
+     * They will be configured using JSplitPanes.
      * @param graph The graph object.
-     * @param buttons The button list that is added to a menu bar in the main panel.
+     * @param buttons The buttons of the menu bar by name.
+     * @param eventLog The panel that shows the events that happen during the simulation.
      */
-    protected void addPanels(Graph graph, ArrayList<JButton> buttons) {
+    protected void addPanels(Graph graph, Map<String, JButton> buttons, EventLogPanel eventLog) {
         OptionsMenu optionsMenu = new OptionsMenu();
         MainPanel mainPanel = new MainPanel(graph, buttons, optionsMenu);
 
@@ -57,7 +87,9 @@ public class Frame extends JFrame {
 
         this.mainPanel = mainPanel;
         this.optionsMenu = optionsMenu;
-        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, optionsMenu, mainPanel);
+        JSplitPane sidePane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, optionsMenu, eventLog);
+        sidePane.setDividerLocation(height / 2);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, sidePane, mainPanel);
         splitPane.setOneTouchExpandable(true);
         splitPane.setDividerLocation(150);
         this.add(splitPane, BorderLayout.CENTER);
@@ -83,30 +115,37 @@ public class Frame extends JFrame {
     /**
      * Create all the buttons used in the menu bar in the main panel.
      * @param graph The graph object.
-     * @param sim The simulation object.
-     * @return A list of the buttons.
+     * @return The buttons by name, in the order they are shown.
      */
-    private ArrayList<JButton> createButtons(Graph graph, Simulation sim) {
+    private Map<String, JButton> createButtons(Graph graph) {
         JButton addNodeButton = new JButton("Add Node");
-        addNodeButton.addActionListener(e -> graph.createNode(new Point(getWidth() / 2, getHeight() / 2)));
+        addNodeButton.addActionListener(e -> {
+            if (mainPanel.isEditable()) {
+                graph.createNode(new Point(getWidth() / 2, getHeight() / 2));
+            }
+        });
 
         JButton removeNodeButton = getRemoveNodeButton(graph);
         JButton addEdgeButton = getAddEdgeButton(graph);
         JButton removeEdgeButton = getRemoveEdgeButton(graph);
         JButton addArmyButton = getAddArmyButton(graph);
-        JButton simulateStepButton = getSimulateStepButton(sim);
+        JButton simulateStepButton = getSimulateStepButton();
+        JButton rewindStepButton = getRewindStepButton();
         JButton addEventButton = getAddEventButton();
         JButton toJsonButton = getJsonButton(graph);
+        playButton = getPlayButton();
 
-        ArrayList<JButton> buttons = new ArrayList<>();
-        buttons.add(addNodeButton);
-        buttons.add(removeNodeButton);
-        buttons.add(addEdgeButton);
-        buttons.add(removeEdgeButton);
-        buttons.add(addArmyButton);
-        buttons.add(simulateStepButton);
-        buttons.add(addEventButton);
-        buttons.add(toJsonButton);
+        Map<String, JButton> buttons = new LinkedHashMap<>();
+        buttons.put("addNode", addNodeButton);
+        buttons.put("removeNode", removeNodeButton);
+        buttons.put("addEdge", addEdgeButton);
+        buttons.put("removeEdge", removeEdgeButton);
+        buttons.put("addArmy", addArmyButton);
+        buttons.put("simulateStep", simulateStepButton);
+        buttons.put("rewindStep", rewindStepButton);
+        buttons.put("addEvent", addEventButton);
+        buttons.put("toJson", toJsonButton);
+        buttons.put("play", playButton);
         return buttons;
     }
 
@@ -115,6 +154,9 @@ public class Frame extends JFrame {
         removeNodeButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                if (!mainPanel.isEditable()) {
+                    return;
+                }
                 graph.removeNode(mainPanel.getSelectedNode());
                 mainPanel.clearSelectedNode();
             }
@@ -127,7 +169,7 @@ public class Frame extends JFrame {
         addEdgeButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                mainPanel.setWaiting(true);
+                mainPanel.setWaiting(mainPanel.isEditable());
             }
         });
         return addEdgeButton;
@@ -138,6 +180,9 @@ public class Frame extends JFrame {
         removeEdgeButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                if (!mainPanel.isEditable()) {
+                    return;
+                }
                 graph.removeEdge(mainPanel.getSelectedEdge());
                 mainPanel.clearSelectedEdge();
             }
@@ -150,6 +195,9 @@ public class Frame extends JFrame {
         toJsonButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                if (!mainPanel.isEditable()) {
+                    return;
+                }
                 JFileChooser chooser = new JFileChooser();
                 FileNameExtensionFilter filter = new FileNameExtensionFilter("JSON files", "json");
                 chooser.setFileFilter(filter);
@@ -189,7 +237,7 @@ public class Frame extends JFrame {
                         eventNames.get(0)
                 ).toString();
                 ArmyLocation selectedLoc = mainPanel.getSelectedLocation();
-                if (selectedEventName != null && selectedLoc != null) {
+                if (selectedEventName != null && selectedLoc != null && mainPanel.isEditable()) {
                     selectedLoc.addEvent(Event.createEvent(selectedEventName));
                 }
             }
@@ -219,8 +267,8 @@ public class Frame extends JFrame {
                         factionNames.get(0)
                 ).toString();
 
-                if (selectedFactionName != null && mainPanel.getSelectedNode() != null) {
-                    Faction faction = getSelectedFaction(selectedFactionName);
+                if (selectedFactionName != null && mainPanel.getSelectedNode() != null && mainPanel.isEditable()) {
+                    Faction faction = Faction.createFaction(selectedFactionName);
                     Army army = new Army(10, faction, mainPanel.getSelectedNode());
                     graph.addArmy(mainPanel.getSelectedNode(), army);
                 }
@@ -229,43 +277,74 @@ public class Frame extends JFrame {
         return addArmyButton;
     }
 
-    private JButton getSimulateStepButton(Simulation sim) {
+    private JButton getSimulateStepButton() {
         JButton simulateStepButton = new JButton("Simulate step");
         simulateStepButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                sim.simulateStep();
+                mainPanel.setEditable(false);
+                player.step();
             }
         });
         return simulateStepButton;
     }
 
-    private Faction getSelectedFaction(String selectedFactionName) {
-        return switch (selectedFactionName) {
-            case "Men" -> new Men();
-            case "Dwarves" -> new Dwarves();
-            case "Elves" -> new Elves();
-            case "Mordor" -> new Mordor();
-            case "Isengard" -> new Isengard();
-            default -> null;
-        };
+    private JButton getRewindStepButton() {
+        JButton rewindStepButton = new JButton("Rewind step");
+        rewindStepButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                mainPanel.setEditable(false);
+                player.rewind();
+            }
+        });
+        return rewindStepButton;
+    }
+
+    private JButton getPlayButton() {
+        JButton button = new JButton("Play");
+        button.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (player.isPlaying()) {
+                    player.pause();
+                } else {
+                    mainPanel.setEditable(false);
+                    player.play();
+                }
+            }
+        });
+        return button;
+    }
+
+    /**
+     * Create the box to choose the speed of the player with.
+     * @return The box.
+     */
+    private JComboBox<String> createSpeedBox() {
+        JComboBox<String> speedBox = new JComboBox<>(SPEED_NAMES);
+        speedBox.setSelectedIndex(1);
+        speedBox.setMaximumSize(speedBox.getPreferredSize());
+        player.setStepsPerSecond(SPEEDS[1]);
+        speedBox.addActionListener(e -> player.setStepsPerSecond(SPEEDS[speedBox.getSelectedIndex()]));
+        return speedBox;
     }
 
     /**
-     * Create and configure the four buttons for the menu bar for the main panel.
+     * Create and configure the buttons and the speed box for the menu bar for the main panel.
      * @param graph The graph object.
-     * @param sim The simulation object.
-     * @return A list with all the buttons.
+     * @return All the buttons by name.
      */
-    protected ArrayList<JButton> addButtons(Graph graph, Simulation sim) {
-        ArrayList<JButton> buttons = createButtons(graph, sim);
+    protected Map<String, JButton> addButtons(Graph graph) {
+        Map<String, JButton> buttons = createButtons(graph);
         JToolBar toolBar = new JToolBar();
         toolBar.setFloatable(false);
         toolBar.setRollover(true);
 
-        for (JButton button: buttons) {
+        for (JButton button: buttons.values()) {
             toolBar.add(button);
         }
+        toolBar.add(createSpeedBox());
 
         this.add(toolBar, BorderLayout.NORTH);
         return buttons;
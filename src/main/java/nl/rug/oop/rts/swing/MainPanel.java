@@ -11,11 +11,21 @@ import nl.rug.oop.rts.util.TextureLoader;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Main panel class. Used for drawing the graph and controlling the environment.
+ * The graph is not drawn straight onto the panel, but rendered into a frame that the panel shows. Frames are rendered
+ * from the snapshots of the nodes, edges and armies of the graph, without its lock, so rendering never waits for a
+ * step. If the graph is being simulated on another thread, that thread renders a frame between two steps and this
+ * panel only shows the latest one.
  */
 public class MainPanel extends JPanel implements Observer {
     private final Graph graph;
@@ -23,12 +33,42 @@ public class MainPanel extends JPanel implements Observer {
     /**
      * The node that is currently selected. There can only be one node selected at a time. May be NULL.
      */
-    private Node selectedNode;
+    private volatile Node selectedNode;
     /**
      * The edge that is currently selected. There can only be one edge selected at a time. May be NULL.
      */
-    private Edge selectedEdge;
+    private volatile Edge selectedEdge;
     private boolean waiting = false;
+    private boolean editable = true;
+    /**
+     * The frame that is shown, and the frame that is rendered next. Both are only swapped or drawn while holding the
+     * lock of the frames.
+     */
+    private BufferedImage frame;
+    private BufferedImage backFrame;
+    private final Object frameLock = new Object();
+    /**
+     * Held while rendering into the back frame, so two threads never render at the same time.
+     */
+    private final Lock renderLock = new ReentrantLock();
+    /**
+     * The size and background of the panel, kept up to date on the event dispatch thread, so frames can be rendered on
+     * other threads without asking the panel itself.
+     */
+    private volatile int frameWidth;
+    private volatile int frameHeight;
+    private volatile Color frameBackground;
+    /**
+     * Renders a new frame on the event dispatch thread once a scaled texture that was not ready yet is done, instead of
+     * letting the panel itself observe images that are drawn on other threads.
+     */
+    private final ImageObserver textureObserver = (image, flags, x, y, width, height) -> {
+        if ((flags & (ImageObserver.ALLBITS | ImageObserver.FRAMEBITS)) != 0) {
+            SwingUtilities.invokeLater(this::renderFrame);
+            return false;
+        }
+        return (flags & (ImageObserver.ERROR | ImageObserver.ABORT)) == 0;
+    };
     private final JButton deleteNode;
     private final JButton deleteEdge;
     private final JButton addEdge;
@@ -38,10 +78,10 @@ public class MainPanel extends JPanel implements Observer {
     /**
      * Constructor for panel.
      * @param graph The graph that should be drawn.
-     * @param buttons The list of buttons that should be added to the menu bar.
+     * @param buttons The buttons of the menu bar by name. The panel enables and disables the ones that need a selection.
      * @param optionsMenu The other pane, the options menu.
      */
-    public MainPanel(Graph graph, ArrayList<JButton> buttons, OptionsMenu optionsMenu) {
+    public MainPanel(Graph graph, Map<String, JButton> buttons, OptionsMenu optionsMenu) {
         this.setBackground(new Color(215, 196, 196));
         this.setBounds(0, 0, 600, 600);
 
@@ -51,12 +91,44 @@ public class MainPanel extends JPanel implements Observer {
         Mouse handler = new Mouse(graph, this);
         this.addMouseListener(handler);
         this.addMouseMotionListener(handler);
+        updateFrameSettings();
+        this.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                updateFrameSettings();
+            }
+        });
+        this.addPropertyChangeListener("background", e -> updateFrameSettings());
+
+        this.deleteNode = getButton(buttons, "removeNode");
+        this.deleteEdge = getButton(buttons, "removeEdge");
+        this.addEdge = getButton(buttons, "addEdge");
+        this.addArmy = getButton(buttons, "addArmy");
+        this.addEvent = getButton(buttons, "addEvent");
+    }
 
-        this.deleteNode = buttons.get(1);
-        this.deleteEdge = buttons.get(3);
-        this.addEdge = buttons.get(2);
-        this.addArmy = buttons.get(4);
-        this.addEvent = buttons.get(6);
+    /**
+     * Get a button of the menu bar.
+     * @param buttons The buttons by name.
+     * @param name The name of the button.
+     * @return The button.
+     * @throws IllegalArgumentException If there is no button with the name.
+     */
+    private static JButton getButton(Map<String, JButton> buttons, String name) {
+        JButton button = buttons.get(name);
+        if (button == null) {
+            throw new IllegalArgumentException("There is no " + name + " button");
+        }
+        return button;
+    }
+
+    /**
+     * Remember the size and background of the panel for rendering. Called on the event dispatch thread.
+     */
+    private void updateFrameSettings() {
+        frameWidth = Math.max(1, getWidth());
+        frameHeight = Math.max(1, getHeight());
+        frameBackground = getBackground();
     }
 
     /**
@@ -146,15 +218,88 @@ public class MainPanel extends JPanel implements Observer {
     }
 
     /**
-     * Paint the panel. Overriding from Jpanel.
+     * Set whether the user is allowed to change the graph. Should be false while the graph is being simulated.
+     * @param editable Whether the graph can be edited.
+     */
+    public void setEditable(boolean editable) {
+        this.editable = editable;
+    }
+
+    public boolean isEditable() {
+        return editable;
+    }
+
+    /**
+     * Paint the panel by showing the latest frame. Overriding from Jpanel.
+     * If there is no frame yet or the panel changed size, a new frame is rendered first if the graph is not being
+     * changed right now.
      * @param g the <code>Graphics</code> object to protect
      */
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        drawEdges(g);
-        drawNodes(g);
-        drawEvents(g);
+        // the panel can be painted at its new size before it is told that it was resized.
+        updateFrameSettings();
+        boolean stale;
+        synchronized (frameLock) {
+            stale = frame == null || frame.getWidth() != getWidth() || frame.getHeight() != getHeight();
+        }
+        if (stale) {
+            render();
+        }
+        synchronized (frameLock) {
+            if (frame != null) {
+                g.drawImage(frame, 0, 0, this);
+            }
+        }
+    }
+
+    /**
+     * Render a new frame and show it. Can be called from any thread. Does nothing if another thread is rendering a
+     * frame.
+     */
+    public void renderFrame() {
+        if (render()) {
+            repaint();
+        }
+    }
+
+    /**
+     * Render the graph into the back frame and swap it with the shown frame. The frames are swapped before the render
+     * lock is released, so no other render can draw into the frame that is about to be shown.
+     * A frame rendered while another thread simulates a step can show some locations before the step and others after
+     * it.
+     * @return Whether a frame was rendered.
+     */
+    private boolean render() {
+        int width = frameWidth;
+        int height = frameHeight;
+        if (!renderLock.tryLock()) {
+            return false;
+        }
+        try {
+            if (backFrame == null || backFrame.getWidth() != width || backFrame.getHeight() != height) {
+                backFrame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics g = backFrame.createGraphics();
+            try {
+                g.setColor(frameBackground);
+                g.fillRect(0, 0, width, height);
+                drawEdges(g);
+                drawNodes(g);
+                drawEvents(g);
+            } finally {
+                g.dispose();
+            }
+            synchronized (frameLock) {
+                BufferedImage rendered = backFrame;
+                backFrame = frame;
+                frame = rendered;
+            }
+        } finally {
+            renderLock.unlock();
+        }
+        return true;
     }
 
     private Point calculateCenter(Edge edge) {
@@ -164,10 +309,10 @@ public class MainPanel extends JPanel implements Observer {
     }
 
     private void drawEvents(Graphics g) {
-        for (Node node: graph.getNodes()) {
+        for (Node node: graph.getNodesSnapshot()) {
             drawEventsOnLocation(g, node, (Point) node.getPos().clone());
         }
-        for (Edge edge: graph.getEdges()) {
+        for (Edge edge: graph.getEdgesSnapshot()) {
             drawEventsOnLocation(g, edge, calculateCenter(edge));
         }
 
@@ -190,10 +335,10 @@ public class MainPanel extends JPanel implements Observer {
         int offsetChange = 20;
         Point pos = new Point(node.getPos().x - offsetChange - node.getSize() / 2,
                                 node.getPos().y - offsetChange - node.getSize());
-        for (Army army: node.getArmiesPresent()) {
+        for (Army army: node.getArmiesSnapshot()) {
             Image image = TextureLoader.getInstance().getTexture(
                     "faction" + army.getFaction().getFactionName(), 60, 60);
-            g.drawImage(image, pos.x, pos.y, this);
+            g.drawImage(image, pos.x, pos.y, textureObserver);
             pos.x += offsetChange;
         }
     }
@@ -201,10 +346,10 @@ public class MainPanel extends JPanel implements Observer {
     private void drawArmiesOnEdge(Graphics g, Edge edge) {
         int offsetChange = 20;
         Point pos = calculateCenter(edge);
-        for (Army army : edge.getArmiesPresent()) {
+        for (Army army : edge.getArmiesSnapshot()) {
             Image image = TextureLoader.getInstance().getTexture(
                     "faction" + army.getFaction().getFactionName(), 60, 60);
-            g.drawImage(image, pos.x, pos.y, this);
+            g.drawImage(image, pos.x, pos.y, textureObserver);
             pos.x += offsetChange;
         }
     }
@@ -251,7 +396,7 @@ public class MainPanel extends JPanel implements Observer {
      */
     private void drawNodes(Graphics g) {
         drawSelectedNode(g);
-        for (Node node: graph.getNodes()) {
+        for (Node node: graph.getNodesSnapshot()) {
             drawNode(g, node);
         }
     }
@@ -279,16 +424,20 @@ public class MainPanel extends JPanel implements Observer {
      * @param g Graphics argument.
      */
     private void drawEdges(Graphics g) {
-        for (Edge edge: graph.getEdges()) {
+        for (Edge edge: graph.getEdgesSnapshot()) {
             drawEdge(g, edge);
         }
     }
 
     /**
      * Update the view when model is updated. Implements method from Observer interface.
+     * Only renders a new frame for changes made on the event dispatch thread. Changes made by another thread are shown
+     * once that thread renders a frame.
      */
     public void update() {
-        repaint();
+        if (SwingUtilities.isEventDispatchThread()) {
+            renderFrame();
+        }
     }
 
     /**
@@ -74,7 +74,7 @@ public class Mouse extends MouseAdapter {
         Node clickedNode = clickedNode(e);
         Edge clickedEdge = clickedEdge(e);
         if (clickedNode != null) {
-            if (panel.getWaiting()) {
+            if (panel.getWaiting() && panel.isEditable()) {
                 graph.createEdge(panel.getSelectedNode(), clickedNode);
                 panel.clearSelectedNode();
                 panel.update();
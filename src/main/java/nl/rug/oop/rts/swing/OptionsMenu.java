@@ -1,7 +1,8 @@
 package nl.rug.oop.rts.swing;
 
+import nl.rug.oop.rts.BatchedSubject;
+import nl.rug.oop.rts.ChangeBatch;
 import nl.rug.oop.rts.Observer;
-import nl.rug.oop.rts.Subject;
 import nl.rug.oop.rts.graph.Edge;
 import nl.rug.oop.rts.graph.Node;
 
@@ -16,12 +17,13 @@ import java.util.List;
  * Options menu class. Displays relevant information about the selected node or edge and allows the user to change
  * some properties of the selected node or edge.
  */
-public class OptionsMenu extends JPanel implements Subject {
+public class OptionsMenu extends JPanel implements BatchedSubject {
     private JLabel nodeNameLabel, edgeNameLabel, edgeStartLabel, edgeEndLabel, defaultMessage;
     private JTextField nodeNameField, edgeNameField, edgeStartField, edgeEndField;
     private Node selectedNode;
     private Edge selectedEdge;
     private List<Observer> observers = new ArrayList<>();
+    private final ChangeBatch changes = new ChangeBatch();
 
     /**
      * Constructor. Sets a layout and configures all text fields and labels.
@@ -187,7 +189,13 @@ public class OptionsMenu extends JPanel implements Subject {
         edgeNameField.setVisible(false);
         defaultMessage.setVisible(false);
 
-        nodeNameField.setText(node.getName());
+        // setting the text removes and inserts it, which would rename the node and notify the observers twice.
+        beginChange();
+        try {
+            nodeNameField.setText(node.getName());
+        } finally {
+            commitChange();
+        }
         nodeNameLabel.setVisible(true);
         nodeNameField.setVisible(true);
     }
@@ -203,7 +211,12 @@ public class OptionsMenu extends JPanel implements Subject {
         nodeNameLabel.setVisible(false);
         defaultMessage.setVisible(false);
 
-        edgeNameField.setText(edge.getName());
+        beginChange();
+        try {
+            edgeNameField.setText(edge.getName());
+        } finally {
+            commitChange();
+        }
         edgeStartField.setText(edge.getNodes().get(0).getName());
         edgeEndField.setText(edge.getNodes().get(1).getName());
 
@@ -244,12 +257,20 @@ public class OptionsMenu extends JPanel implements Subject {
     }
 
     /**
-     * Update all observers in the observers list.
+     * Update all observers in the observers list, or once the current transaction is committed.
      */
     @Override
     public void updateObservers() {
-        for (Observer observer : observers) {
-            observer.update();
-        }
+        changes.notifyObservers(observers);
+    }
+
+    @Override
+    public void beginChange() {
+        changes.begin();
+    }
+
+    @Override
+    public void commitChange() {
+        changes.commit();
     }
 }
@@ -0,0 +1,108 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.Graph;
+import nl.rug.oop.rts.graph.Node;
+import nl.rug.oop.rts.simulation.events.EventSink;
+import nl.rug.oop.rts.simulation.factions.Faction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares running a graph with an {@link AgentSimulation} on virtual threads with running it with a
+ * {@link Simulation}. Both run the same amount of steps with the same seed on the same graph, a grid of nodes with
+ * armies of both teams spread over it, which is built again before every run. The agents use the random policy, so
+ * both simulations give the same results and the difference is the cost of the agents.
+ * Run it with the main method from the test classpath.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class AgentSimulationBenchmark {
+    private static final long SEED = 23;
+    private static final int GRID_SIZE = 20;
+    private static final int UNITS_PER_ARMY = 20;
+    private static final int STEPS = 50;
+
+    @Param({"200", "3000", "20000"})
+    private int armiesNum;
+
+    private Graph graph;
+
+    /**
+     * Build the graph for the next run.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        graph = new Graph();
+        graph.addObserver(() -> { });
+        Node[] nodes = new Node[GRID_SIZE * GRID_SIZE];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(i, "node" + i, i % GRID_SIZE * 50, i / GRID_SIZE * 50, () -> { });
+            graph.addNode(nodes[i]);
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            if (i % GRID_SIZE < GRID_SIZE - 1) {
+                graph.createEdge(nodes[i], nodes[i + 1]);
+            }
+            if (i + GRID_SIZE < nodes.length) {
+                graph.createEdge(nodes[i], nodes[i + GRID_SIZE]);
+            }
+        }
+        for (int i = 0; i < armiesNum; i++) {
+            Node node = nodes[random.nextInt(nodes.length)];
+            int team = i % 2;
+            graph.addArmy(node, new Army(UNITS_PER_ARMY, Faction.createRandomFaction(team, random), node,
+                    new ArmyRandom(random.nextLong())));
+        }
+    }
+
+    /**
+     * Run the graph with one thread.
+     * @return The report of the run.
+     */
+    @Benchmark
+    public RunReport central() {
+        return new Simulation(graph, EventSink.NONE, SEED).runSteps(STEPS);
+    }
+
+    /**
+     * Run the graph with an agent for every army.
+     * @return The report of the run.
+     */
+    @Benchmark
+    public RunReport agents() {
+        try (AgentSimulation simulation = new AgentSimulation(graph, EventSink.NONE)) {
+            simulation.setSeed(SEED);
+            return simulation.runSteps(STEPS);
+        }
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args Not used.
+     * @throws RunnerException If the benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AgentSimulationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
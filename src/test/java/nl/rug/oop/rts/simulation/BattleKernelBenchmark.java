@@ -0,0 +1,158 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.Node;
+import nl.rug.oop.rts.simulation.factions.Faction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares one battle resolved by the {@link BattleKernel} with the same battle resolved the way it was before the
+ * kernel: every unit an object, and the unit lists of both teams built again every round.
+ * Both fight the same seeded armies of two factions per team, which are built again before every battle.
+ * Run it with the main method from the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BattleKernelBenchmark {
+    private static final long SEED = 42;
+    private static final int ARMIES_PER_TEAM = 2;
+
+    /**
+     * The amount of units of every army.
+     */
+    @Param({"1000", "10000", "100000"})
+    private int unitsNum;
+
+    private final BattleKernel kernel = new BattleKernel();
+    private Node node;
+    private List<List<Fighter>> fighterArmies;
+    private int[] fighterTeams;
+
+    /**
+     * Build the armies of the next battle, once for the kernel and once as objects.
+     */
+    @Setup(Level.Invocation)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        node = new Node(0, "Battlefield", 0, 0, () -> { });
+        fighterArmies = new ArrayList<>();
+        fighterTeams = new int[2 * ARMIES_PER_TEAM];
+        for (int i = 0; i < 2 * ARMIES_PER_TEAM; i++) {
+            int team = i % 2;
+            Army army = new Army(unitsNum, Faction.createRandomFaction(team, random), node,
+                    new ArmyRandom(random.nextLong()));
+            node.addArmy(army);
+            List<Fighter> fighters = new ArrayList<>(unitsNum);
+            for (int unit = 0; unit < army.getUnitsNum(); unit++) {
+                fighters.add(new Fighter(army.getUnitDamage(unit), army.getUnitHealth(unit)));
+            }
+            fighterArmies.add(fighters);
+            fighterTeams[i] = team;
+        }
+    }
+
+    /**
+     * Resolve the battle with the kernel.
+     * @return The armies that are left, so the battle is not optimized away.
+     */
+    @Benchmark
+    public List<Army> kernel() {
+        kernel.battle(node);
+        return node.getArmiesPresent();
+    }
+
+    /**
+     * Resolve the battle with unit objects.
+     * @return The units that are left, so the battle is not optimized away.
+     */
+    @Benchmark
+    public int objects() {
+        List<Fighter> units1 = new ArrayList<>();
+        List<Fighter> units2 = new ArrayList<>();
+        do {
+            units1.clear();
+            units2.clear();
+            for (int i = 0; i < fighterArmies.size(); i++) {
+                (fighterTeams[i] == 0 ? units1 : units2).addAll(fighterArmies.get(i));
+            }
+            double armyRatio = (double) units1.size() / (double) units2.size();
+            boolean team1Advantage = true;
+            if (armyRatio < 1) {
+                team1Advantage = false;
+                armyRatio = 1 / armyRatio;
+            }
+            for (int i = 0; i < Math.min(units1.size(), units2.size()); i++) {
+                Fighter unit1 = units1.get(i);
+                Fighter unit2 = units2.get(i);
+                if (team1Advantage) {
+                    unit2.health -= (int) (unit1.damage * armyRatio);
+                    unit1.health -= unit2.damage;
+                } else {
+                    unit1.health -= (int) (unit2.damage * armyRatio);
+                    unit2.health -= unit1.damage;
+                }
+            }
+            for (List<Fighter> army : fighterArmies) {
+                army.removeIf(unit -> unit.health <= 0);
+            }
+        } while (hasUnits(0) && hasUnits(1));
+        int left = 0;
+        for (List<Fighter> army : fighterArmies) {
+            left += army.size();
+        }
+        return left;
+    }
+
+    private boolean hasUnits(int team) {
+        for (int i = 0; i < fighterArmies.size(); i++) {
+            if (fighterTeams[i] == team && !fighterArmies.get(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args Not used.
+     * @throws RunnerException If the benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BattleKernelBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * A unit as its own object, like units were before the kernel.
+     */
+    private static final class Fighter {
+        private final int damage;
+        private int health;
+
+        Fighter(int damage, int health) {
+            this.damage = damage;
+            this.health = health;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.Node;
+import nl.rug.oop.rts.simulation.factions.Faction;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the aggregate {@link LanchesterBattle} with the exact {@link BattleKernel} on the same seeded battles.
+ * Every battle has one to three armies per team, and the smaller team has between half and all of the units of the
+ * bigger one.
+ */
+public class LanchesterBattleTest {
+    /**
+     * The largest difference in the survivors of a team as a fraction of the units of the bigger team, and in the
+     * units lost in the whole battle as a fraction of the units the exact battle loses. With the default exponent,
+     * the largest errors over these battles are about 6.5% and 7%.
+     */
+    private static final double MAX_ERROR = 0.08;
+    /**
+     * The largest difference in the units a single army loses, as a fraction of the units of the bigger team. The
+     * exact battle takes the losses of a team from its armies in the order they fight in, while the aggregate one
+     * divides them by size, so single armies differ up to about 15%.
+     */
+    private static final double MAX_ARMY_ERROR = 0.2;
+    private static final int[] TEAM_SIZES = {200, 2_000, 20_000, 200_000};
+    private static final int BATTLES_PER_SIZE = 5;
+
+    @Test
+    public void aggregateBattleStaysCloseToExactBattle() {
+        SplittableRandom random = new SplittableRandom(8);
+        for (int teamSize : TEAM_SIZES) {
+            for (int battle = 0; battle < BATTLES_PER_SIZE; battle++) {
+                compare(teamSize, random);
+            }
+        }
+    }
+
+    /**
+     * Fight one battle both ways and check the differences.
+     * @param teamSize The amount of units of the bigger team.
+     * @param random The random stream the battle is built from.
+     */
+    private static void compare(int teamSize, SplittableRandom random) {
+        Node exactNode = new Node(0, "Exact", 0, 0, () -> { });
+        Node aggregateNode = new Node(1, "Aggregate", 0, 0, () -> { });
+        List<Army> exactArmies = new ArrayList<>();
+        List<Army> aggregateArmies = new ArrayList<>();
+        int biggerTeam = random.nextInt(2);
+        int[] initial = new int[2];
+        for (int team = 0; team < 2; team++) {
+            int units = team == biggerTeam ? teamSize : teamSize / 2 + random.nextInt(teamSize / 2 + 1);
+            int armiesNum = 1 + random.nextInt(3);
+            for (int i = 0; i < armiesNum; i++) {
+                int armyUnits = i == armiesNum - 1 ? units : units / armiesNum;
+                units -= armyUnits;
+                Army army = new Army(armyUnits, Faction.createRandomFaction(team, random), exactNode,
+                        new ArmyRandom(random.nextLong()));
+                Army copy = army.copy(aggregateNode);
+                exactNode.addArmy(army);
+                aggregateNode.addArmy(copy);
+                exactArmies.add(army);
+                aggregateArmies.add(copy);
+                initial[team] += armyUnits;
+            }
+        }
+
+        new BattleKernel().battle(exactNode);
+        new LanchesterBattle().battle(aggregateNode);
+
+        String battle = initial[0] + " against " + initial[1] + " units";
+        int bigger = Math.max(initial[0], initial[1]);
+        assertEquals(exactNode.getUnitsNum(0) > 0, aggregateNode.getUnitsNum(0) > 0, "winner of " + battle);
+        for (int team = 0; team < 2; team++) {
+            int difference = Math.abs(exactNode.getUnitsNum(team) - aggregateNode.getUnitsNum(team));
+            assertTrue(difference <= MAX_ERROR * bigger, "survivors of team " + team + " in " + battle
+                    + " differ by " + difference);
+        }
+        int exactLosses = initial[0] + initial[1] - exactNode.getUnitsNum(0) - exactNode.getUnitsNum(1);
+        int aggregateLosses = initial[0] + initial[1] - aggregateNode.getUnitsNum(0) - aggregateNode.getUnitsNum(1);
+        assertTrue(Math.abs(exactLosses - aggregateLosses) <= MAX_ERROR * exactLosses, "losses in " + battle
+                + " are " + aggregateLosses + " instead of " + exactLosses);
+        for (int i = 0; i < exactArmies.size(); i++) {
+            int difference = Math.abs(exactArmies.get(i).getUnitsNum() - aggregateArmies.get(i).getUnitsNum());
+            assertTrue(difference <= MAX_ARMY_ERROR * bigger, "losses of army " + i + " in " + battle
+                    + " differ by " + difference);
+        }
+    }
+}
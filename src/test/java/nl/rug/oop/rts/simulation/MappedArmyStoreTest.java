@@ -0,0 +1,220 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.CompactGraph;
+import nl.rug.oop.rts.simulation.events.ChangeOfMindEvent;
+import nl.rug.oop.rts.simulation.events.EventSink;
+import nl.rug.oop.rts.simulation.events.FogEvent;
+import nl.rug.oop.rts.simulation.factions.Faction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a {@link CompactSimulation} restored from a {@link MappedArmyStore} goes on exactly like one that was
+ * never checkpointed, and that a checkpoint that was cut off while it was written leaves the one before it in place.
+ * Half of the armies are compressed, and a change of mind event creates new armies during steps.
+ */
+public class MappedArmyStoreTest {
+    private static final long SEED = 17;
+    private static final int NODES_NUM = 12;
+    private static final int STEPS = 20;
+    /**
+     * After these steps a checkpoint is written.
+     */
+    private static final int[] CHECKPOINT_STEPS = {5, 8, 11};
+    /**
+     * The size of the header of the file, and the byte in it that says which slot is current, as laid out in
+     * {@link MappedArmyStore}.
+     */
+    private static final int HEADER_SIZE = 48;
+    private static final int CURRENT = 6;
+
+    @Test
+    public void restoredSimulationGoesOnLikeTheOriginal(@TempDir Path dir) throws IOException {
+        List<String> states = run();
+        Path file = dir.resolve("restore.checkpoint");
+        try (MappedArmyStore store = new MappedArmyStore(file)) {
+            assertFalse(store.hasCheckpoint(), "a new file has no checkpoint");
+            assertThrows(IllegalStateException.class, () -> CompactSimulation.restore(store, EventSink.NONE),
+                    "restoring without a checkpoint");
+
+            CompactSimulation simulation = new CompactSimulation(buildGraph(), EventSink.NONE);
+            for (int step = 1; step <= STEPS; step++) {
+                simulation.simulateStep();
+                if (step == CHECKPOINT_STEPS[0]) {
+                    simulation.checkpoint(store);
+                }
+                assertEquals(states.get(step), describe(simulation.getGraph()), "state after step " + step
+                        + " of the simulation that wrote a checkpoint");
+            }
+            assertTrue(store.hasCheckpoint(), "checkpoint written");
+            continueRestored(store, CHECKPOINT_STEPS[0], states);
+        }
+        // the checkpoint is still there when the file is opened again.
+        try (MappedArmyStore store = new MappedArmyStore(file)) {
+            continueRestored(store, CHECKPOINT_STEPS[0], states);
+        }
+    }
+
+    @Test
+    public void cutOffCheckpointLeavesThePreviousOne(@TempDir Path dir) throws IOException {
+        List<String> states = run();
+        Path file = dir.resolve("flip.checkpoint");
+        List<byte[]> files = new ArrayList<>();
+        try (MappedArmyStore store = new MappedArmyStore(file)) {
+            CompactSimulation simulation = new CompactSimulation(buildGraph(), EventSink.NONE);
+            int checkpoint = 0;
+            for (int step = 1; checkpoint < CHECKPOINT_STEPS.length; step++) {
+                simulation.simulateStep();
+                if (step == CHECKPOINT_STEPS[checkpoint]) {
+                    simulation.checkpoint(store);
+                    files.add(Files.readAllBytes(file));
+                    checkpoint++;
+                }
+            }
+        }
+        byte[] previous = files.get(1);
+        byte[] last = files.get(2);
+        assertTrue(previous[CURRENT] != last[CURRENT], "the last checkpoint went into the other slot");
+
+        // the new slot is on disk, but the flip is not.
+        byte[] notFlipped = last.clone();
+        notFlipped[CURRENT] = previous[CURRENT];
+        Files.write(file, notFlipped);
+        try (MappedArmyStore store = new MappedArmyStore(file)) {
+            continueRestored(store, CHECKPOINT_STEPS[1], states);
+        }
+
+        // the header was never touched, and the new slot was cut off halfway.
+        byte[] cutOff = Arrays.copyOf(previous, Math.max(previous.length, last.length));
+        List<Integer> written = new ArrayList<>();
+        for (int i = HEADER_SIZE; i < last.length; i++) {
+            if (i >= previous.length || previous[i] != last[i]) {
+                written.add(i);
+            }
+        }
+        assertFalse(written.isEmpty(), "the last checkpoint wrote its slot");
+        for (int i = 0; i < written.size() / 2; i++) {
+            cutOff[written.get(i)] = last[written.get(i)];
+        }
+        Files.write(file, cutOff);
+        try (MappedArmyStore store = new MappedArmyStore(file)) {
+            continueRestored(store, CHECKPOINT_STEPS[1], states);
+        }
+
+        Files.write(file, last);
+        try (MappedArmyStore store = new MappedArmyStore(file)) {
+            continueRestored(store, CHECKPOINT_STEPS[2], states);
+        }
+    }
+
+    /**
+     * Simulate the graph without checkpoints.
+     * @return The state of the graph after every step. Step 0 is the state before the first step.
+     */
+    private static List<String> run() {
+        CompactSimulation simulation = new CompactSimulation(buildGraph(), EventSink.NONE);
+        List<String> states = new ArrayList<>();
+        states.add(describe(simulation.getGraph()));
+        for (int step = 1; step <= STEPS; step++) {
+            simulation.simulateStep();
+            states.add(describe(simulation.getGraph()));
+        }
+        return states;
+    }
+
+    /**
+     * Restore the checkpoint in a store and check that it goes on like the simulation without checkpoints.
+     * @param store The store.
+     * @param checkpointStep The step after which the checkpoint was written.
+     * @param states The states of the simulation without checkpoints.
+     * @throws IOException If the store cannot be read.
+     */
+    private static void continueRestored(MappedArmyStore store, int checkpointStep, List<String> states)
+            throws IOException {
+        CompactSimulation restored = CompactSimulation.restore(store, EventSink.NONE);
+        assertEquals(states.get(checkpointStep), describe(restored.getGraph()), "restored state of step "
+                + checkpointStep);
+        for (int step = checkpointStep + 1; step <= STEPS; step++) {
+            restored.simulateStep();
+            assertEquals(states.get(step), describe(restored.getGraph()), "state after step " + step
+                    + " of the simulation restored from step " + checkpointStep);
+        }
+    }
+
+    /**
+     * Build a ring of nodes with events and armies of both teams, half of them compressed.
+     * @return The graph.
+     */
+    private static CompactGraph buildGraph() {
+        int[] nodeX = new int[NODES_NUM];
+        int[] nodeY = new int[NODES_NUM];
+        int[] edgeNodes = new int[2 * NODES_NUM];
+        for (int i = 0; i < NODES_NUM; i++) {
+            nodeX[i] = i * 50;
+            edgeNodes[2 * i] = i;
+            edgeNodes[2 * i + 1] = (i + 1) % NODES_NUM;
+        }
+        CompactGraph graph = new CompactGraph(nodeX, nodeY, edgeNodes);
+        for (int i = 0; i < NODES_NUM; i++) {
+            graph.getNodeLocation(i).addEvent(i % 3 == 0 ? new ChangeOfMindEvent() : new FogEvent());
+            graph.getEdgeLocation(i).addEvent(new FogEvent());
+        }
+        ArmyRandom random = new ArmyRandom(SEED);
+        for (int i = 0; i < 3 * NODES_NUM; i++) {
+            CompactGraph.Location location = graph.getNodeLocation(i * 5 % NODES_NUM);
+            Faction faction = Faction.createRandomFaction(i % 2, random);
+            int unitsNum = 40 + 10 * i;
+            location.addArmy(i % 4 < 2 ? Army.createCompressed(unitsNum, faction, location, random.split())
+                    : new Army(unitsNum, faction, location, random.split()));
+        }
+        return graph;
+    }
+
+    /**
+     * Describe every army of a graph, location by location in the order of their armies, and check that the counts of
+     * the graph match its armies.
+     * @param graph The graph.
+     * @return The description.
+     */
+    private static String describe(CompactGraph graph) {
+        StringBuilder description = new StringBuilder();
+        int[] armiesNum = new int[2];
+        long[] unitsNum = new long[2];
+        for (int number = 0; number < graph.getNodesNum() + graph.getEdgesNum(); number++) {
+            CompactGraph.Location location = graph.getLocationIfPresent(number);
+            if (location == null || location.getArmiesPresent().isEmpty()) {
+                continue;
+            }
+            description.append(number).append(':');
+            for (Army army : location.getArmiesPresent()) {
+                assertEquals(location, army.getLocation(), "location of an army");
+                int team = army.getFaction().getTeamNum();
+                armiesNum[team]++;
+                unitsNum[team] += army.getUnitsNum();
+                description.append(' ').append(army.getFaction().getFactionName())
+                        .append(army.isCompressed() ? " compressed " : " ").append(army.getUnitsNum())
+                        .append(" units, damage ").append(army.getTotalDamage())
+                        .append(", health ").append(army.getTotalHealth())
+                        .append(", to ").append(army.getDestination());
+            }
+            description.append('\n');
+        }
+        for (int team = 0; team < 2; team++) {
+            assertEquals(armiesNum[team], graph.getArmiesNum(team), "armies of team " + team + " in the graph");
+            assertEquals(unitsNum[team], graph.getUnitsNum(team), "units of team " + team + " in the graph");
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.CompactGraph;
+import nl.rug.oop.rts.simulation.events.ChangeOfMindEvent;
+import nl.rug.oop.rts.simulation.events.EventSink;
+import nl.rug.oop.rts.simulation.events.FogEvent;
+import nl.rug.oop.rts.simulation.factions.Faction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares running a large compact graph with a {@link PartitionedSimulation} split into a number of regions, each on
+ * its own thread, with running it with a {@link CompactSimulation}. Both run the same amount of steps with the same
+ * seed on a graph with random edges between nearby nodes, a few events and armies of both teams spread over it, which
+ * is built again before every run. The compact simulation does not depend on the amount of regions, and is run with
+ * every amount to compare against.
+ * Run it with the main method from the test classpath.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class PartitionedSimulationBenchmark {
+    private static final long SEED = 29;
+    private static final int NODES_NUM = 200_000;
+    private static final int EDGES_PER_NODE = 3;
+    /**
+     * Every edge connects a node to one of the nodes after it up to this distance.
+     */
+    private static final int EDGE_REACH = 50;
+    private static final int NODES_PER_ARMY = 20;
+    private static final int NODES_PER_EVENT = 100;
+    private static final int UNITS_PER_ARMY = 20;
+    private static final int STEPS = 30;
+
+    @Param({"1", "2", "4", "8", "16"})
+    private int regionsNum;
+
+    private ExecutorService executor;
+    private CompactGraph graph;
+
+    /**
+     * Start a thread for every region.
+     */
+    @Setup(Level.Trial)
+    public void startThreads() {
+        executor = Executors.newFixedThreadPool(regionsNum);
+    }
+
+    /**
+     * Build the graph for the next run, split into regions.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        ArmyRandom random = new ArmyRandom(SEED);
+        int[] edgeNodes = new int[2 * EDGES_PER_NODE * NODES_NUM];
+        for (int edge = 0; edge < EDGES_PER_NODE * NODES_NUM; edge++) {
+            int node = random.nextInt(NODES_NUM);
+            edgeNodes[2 * edge] = node;
+            edgeNodes[2 * edge + 1] = (node + 1 + random.nextInt(EDGE_REACH)) % NODES_NUM;
+        }
+        graph = new CompactGraph(new int[NODES_NUM], new int[NODES_NUM], edgeNodes);
+        for (int i = 0; i < NODES_NUM / NODES_PER_EVENT; i++) {
+            graph.getNodeLocation(random.nextInt(NODES_NUM)).addEvent(i % 2 == 0 ? new FogEvent()
+                    : new ChangeOfMindEvent());
+        }
+        for (int i = 0; i < NODES_NUM / NODES_PER_ARMY; i++) {
+            CompactGraph.Location location = graph.getNodeLocation(random.nextInt(NODES_NUM));
+            location.addArmy(new Army(UNITS_PER_ARMY, Faction.createRandomFaction(i % 2, random), location,
+                    random.split()));
+        }
+        graph.partition(regionsNum);
+    }
+
+    /**
+     * Stop the threads of the regions.
+     */
+    @TearDown(Level.Trial)
+    public void stopThreads() {
+        executor.shutdown();
+    }
+
+    /**
+     * Run the graph with a thread for every region.
+     * @return The report of the run.
+     */
+    @Benchmark
+    public RunReport partitioned() {
+        PartitionedSimulation simulation = new PartitionedSimulation(graph, EventSink.NONE, executor);
+        simulation.setSeed(SEED);
+        return simulation.runSteps(STEPS);
+    }
+
+    /**
+     * Run the graph as a single region on the calling thread.
+     * @return The report of the run.
+     */
+    @Benchmark
+    public RunReport compact() {
+        CompactSimulation simulation = new CompactSimulation(graph, EventSink.NONE);
+        simulation.setSeed(SEED);
+        return simulation.runSteps(STEPS);
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args Not used.
+     * @throws RunnerException If the benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PartitionedSimulationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
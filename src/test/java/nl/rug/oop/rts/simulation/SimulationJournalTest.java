@@ -0,0 +1,193 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.Edge;
+import nl.rug.oop.rts.graph.Graph;
+import nl.rug.oop.rts.graph.Node;
+import nl.rug.oop.rts.simulation.events.ChangeOfMindEvent;
+import nl.rug.oop.rts.simulation.events.FogEvent;
+import nl.rug.oop.rts.simulation.factions.Faction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records a seeded simulation in a {@link SimulationJournal} and checks that a {@link JournalReplay} puts a copy of the
+ * graph in the recorded state after every step. Every location has an event, and new armies are added between steps,
+ * so events also happen to armies the journal first sees during a step.
+ */
+public class SimulationJournalTest {
+    private static final long SEED = 11;
+    private static final int NODES_NUM = 12;
+    private static final int STEPS = 40;
+    private static final int KEYFRAME_INTERVAL = 7;
+    /**
+     * Before these steps an army is added to the graph.
+     */
+    private static final int[] REINFORCED_STEPS = {3, 10, 22};
+
+    @Test
+    public void seekRestoresEveryRecordedStep(@TempDir Path dir) throws IOException {
+        Recording recording = record(dir.resolve("seek.journal"));
+        JournalReplay replay = new JournalReplay(recording.path, recording.layout);
+        assertEquals(STEPS, replay.getLastStep(), "last step");
+        assertTrue(replay.isSeeded(), "seeded");
+        assertEquals(SEED, replay.getSeed(), "seed");
+        // backwards first, so every seek has to start again at a keyframe.
+        for (int step = STEPS; step >= 0; step--) {
+            replay.seek(step);
+            assertEquals(step, replay.getStep(), "step after seeking");
+            assertEquals(recording.states.get(step), describe(recording.layout), "state after seeking step " + step);
+        }
+        for (int step : new int[] {KEYFRAME_INTERVAL, KEYFRAME_INTERVAL - 1, KEYFRAME_INTERVAL + 1, STEPS / 2}) {
+            replay.seek(step);
+            assertEquals(recording.states.get(step), describe(recording.layout), "state after seeking step " + step);
+        }
+    }
+
+    @Test
+    public void nextStepReplaysStatesAndEvents(@TempDir Path dir) throws IOException {
+        Recording recording = record(dir.resolve("next.journal"));
+        JournalReplay replay = new JournalReplay(recording.path, recording.layout);
+        List<String> events = new ArrayList<>();
+        for (int step = 1; step <= STEPS; step++) {
+            events.clear();
+            assertTrue(replay.nextStep((event, army) -> events.add(describe(event.getName(), army))),
+                    "step " + step + " is replayed");
+            assertEquals(step, replay.getStep(), "step after replaying");
+            assertEquals(recording.states.get(step), describe(recording.layout), "state after replaying step " + step);
+            assertEquals(recording.events.get(step), events, "events of step " + step);
+        }
+        assertFalse(replay.nextStep((event, army) -> { }), "no step after the last one");
+    }
+
+    /**
+     * Simulate a graph while recording it.
+     * @param path The path of the journal.
+     * @return The recorded states and events, and an empty copy of the graph to replay into.
+     * @throws IOException If the journal cannot be written.
+     */
+    private static Recording record(Path path) throws IOException {
+        Graph graph = buildGraph();
+        Recording recording = new Recording(path, graph.copy());
+        List<String> stepEvents = new ArrayList<>();
+        ArmyRandom random = new ArmyRandom(SEED + 1);
+        try (SimulationJournal journal = new SimulationJournal(graph, path, KEYFRAME_INTERVAL)) {
+            Simulation simulation = new Simulation(graph, (event, army) -> stepEvents.add(
+                    describe(event.getName(), army)), SEED);
+            simulation.setJournal(journal);
+            recording.states.add(describe(graph));
+            recording.events.add(List.of());
+            int reinforced = 0;
+            for (int step = 1; step <= STEPS; step++) {
+                if (reinforced < REINFORCED_STEPS.length && REINFORCED_STEPS[reinforced] == step) {
+                    Node node = graph.getNodes().get(step % NODES_NUM);
+                    graph.addArmy(node, new Army(30, Faction.createRandomFaction(step % 2, random), node,
+                            random.split()));
+                    reinforced++;
+                }
+                stepEvents.clear();
+                simulation.simulateStep();
+                recording.states.add(describe(graph));
+                recording.events.add(new ArrayList<>(stepEvents));
+            }
+        }
+        int eventsNum = 0;
+        for (List<String> events : recording.events) {
+            eventsNum += events.size();
+        }
+        assertTrue(eventsNum > STEPS, "the recording has events, but only " + eventsNum);
+        return recording;
+    }
+
+    /**
+     * Build a ring of nodes with an event at every node and edge and armies of both teams.
+     * @return The graph.
+     */
+    static Graph buildGraph() {
+        Graph graph = new Graph();
+        graph.addObserver(() -> { });
+        for (int i = 0; i < NODES_NUM; i++) {
+            graph.createNode(new Point(i * 50, 0));
+        }
+        for (int i = 0; i < NODES_NUM; i++) {
+            graph.createEdge(graph.getNodes().get(i), graph.getNodes().get((i + 1) % NODES_NUM));
+        }
+        for (int i = 0; i < NODES_NUM; i++) {
+            graph.getNodes().get(i).addEvent(i % 3 == 0 ? new ChangeOfMindEvent() : new FogEvent());
+            graph.getEdges().get(i).addEvent(new FogEvent());
+        }
+        ArmyRandom random = new ArmyRandom(SEED);
+        for (int i = 0; i < 2 * NODES_NUM; i++) {
+            Node node = graph.getNodes().get(i * 5 % NODES_NUM);
+            graph.addArmy(node, new Army(20 + i, Faction.createRandomFaction(i % 2, random), node, random.split()));
+        }
+        return graph;
+    }
+
+    /**
+     * Describe the armies of a graph, location by location. The armies of a location are sorted, since a replay does
+     * not have to add them in the same order.
+     * @param graph The graph.
+     * @return The description.
+     */
+    static String describe(Graph graph) {
+        StringBuilder description = new StringBuilder();
+        for (Node node : graph.getNodes()) {
+            describe(description, node);
+        }
+        for (Edge edge : graph.getEdges()) {
+            describe(description, edge);
+        }
+        return description.toString();
+    }
+
+    private static void describe(StringBuilder description, ArmyLocation location) {
+        List<String> armies = new ArrayList<>();
+        for (Army army : location.getArmiesPresent()) {
+            armies.add(army.getFaction().getFactionName() + " " + army.getUnitsNum() + " to "
+                    + (army.getOnWayTo() == null ? "-" : army.getOnWayTo().getName()));
+        }
+        Collections.sort(armies);
+        description.append(name(location)).append(": ").append(armies).append('\n');
+    }
+
+    private static String describe(String event, Army army) {
+        return event + " at " + name(army.getLocation()) + " to " + army.getFaction().getFactionName();
+    }
+
+    private static String name(ArmyLocation location) {
+        return location instanceof Node node ? node.getName() : ((Edge) location).getName();
+    }
+
+    /**
+     * What happened during a recorded simulation.
+     */
+    private static final class Recording {
+        private final Path path;
+        private final Graph layout;
+        /**
+         * For every step, the state of the graph after it. Step 0 is the state before the first step.
+         */
+        private final List<String> states = new ArrayList<>();
+        /**
+         * For every step, the events that happened during it.
+         */
+        private final List<List<String>> events = new ArrayList<>();
+
+        Recording(Path path, Graph layout) {
+            this.path = path;
+            this.layout = layout;
+        }
+    }
+}
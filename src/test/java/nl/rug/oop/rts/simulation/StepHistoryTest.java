@@ -0,0 +1,157 @@
+package nl.rug.oop.rts.simulation;
+
+import nl.rug.oop.rts.graph.ArmyLocation;
+import nl.rug.oop.rts.graph.Edge;
+import nl.rug.oop.rts.graph.Graph;
+import nl.rug.oop.rts.graph.Node;
+import nl.rug.oop.rts.simulation.events.ChangeOfMindEvent;
+import nl.rug.oop.rts.simulation.events.FogEvent;
+import nl.rug.oop.rts.simulation.factions.Faction;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that rewinding a {@link Simulation} with a history puts every army back the way it was before the rewound
+ * steps, and that a step that fails halfway is undone. Half of the armies are compressed, and a change of mind event
+ * creates new armies during steps.
+ */
+public class StepHistoryTest {
+    private static final long SEED = 5;
+    private static final int NODES_NUM = 10;
+    private static final int HISTORY_SIZE = 10;
+    private static final int STEPS = 15;
+
+    @Test
+    public void rewindRestoresTheStateBeforeTheSteps() {
+        Graph graph = buildGraph();
+        Simulation simulation = new Simulation(graph, (event, army) -> { }, SEED);
+        simulation.setHistorySize(HISTORY_SIZE);
+        Map<Army, Integer> names = new IdentityHashMap<>();
+        List<String> states = new ArrayList<>();
+        states.add(describe(graph, names));
+        for (int step = 1; step <= STEPS; step++) {
+            simulation.simulateStep();
+            states.add(describe(graph, names));
+        }
+        assertEquals(HISTORY_SIZE, simulation.getHistoryLength(), "only the last steps are kept");
+
+        assertEquals(4, simulation.rewind(4), "rewound steps");
+        assertEquals(states.get(STEPS - 4), describe(graph, names), "state after rewinding 4 steps");
+        assertEquals(HISTORY_SIZE - 4, simulation.getHistoryLength(), "history after rewinding 4 steps");
+
+        assertEquals(HISTORY_SIZE - 4, simulation.rewind(STEPS), "rewound steps when asking for more than are kept");
+        assertEquals(states.get(STEPS - HISTORY_SIZE), describe(graph, names), "state after rewinding all steps");
+        assertEquals(0, simulation.rewind(1), "nothing left to rewind");
+    }
+
+    @Test
+    public void failedStepIsUndone() {
+        Graph graph = buildGraph();
+        int[] eventsUntilFailure = {-1};
+        Simulation simulation = new Simulation(graph, (event, army) -> {
+            if (eventsUntilFailure[0] >= 0 && eventsUntilFailure[0]-- == 0) {
+                throw new IllegalStateException("Event failed");
+            }
+        }, SEED);
+        simulation.setHistorySize(HISTORY_SIZE);
+        Map<Army, Integer> names = new IdentityHashMap<>();
+        for (int step = 1; step <= 3; step++) {
+            simulation.simulateStep();
+        }
+        for (int failure = 0; failure < 5; failure++) {
+            String before = describe(graph, names);
+            int historyBefore = simulation.getHistoryLength();
+            // fail on the third event of the next step that has one, halfway through moving the armies.
+            eventsUntilFailure[0] = 2;
+            while (eventsUntilFailure[0] >= 0) {
+                before = describe(graph, names);
+                historyBefore = simulation.getHistoryLength();
+                try {
+                    simulation.simulateStep();
+                } catch (IllegalStateException e) {
+                    assertEquals("Event failed", e.getMessage(), "the exception of the event is passed on");
+                    break;
+                }
+            }
+            assertEquals(before, describe(graph, names), "state after failure " + failure);
+            assertEquals(historyBefore, simulation.getHistoryLength(), "the failed step is not kept");
+            simulation.simulateStep();
+        }
+        eventsUntilFailure[0] = 0;
+        assertThrows(IllegalStateException.class, () -> simulation.runSteps(STEPS), "a run of steps fails as well");
+        simulation.rewind(HISTORY_SIZE);
+        describe(graph, names);
+    }
+
+    /**
+     * Build a ring of nodes with events and armies of both teams, half of them compressed.
+     * @return The graph.
+     */
+    private static Graph buildGraph() {
+        Graph graph = new Graph();
+        graph.addObserver(() -> { });
+        for (int i = 0; i < NODES_NUM; i++) {
+            graph.createNode(new Point(i * 50, 0));
+        }
+        for (int i = 0; i < NODES_NUM; i++) {
+            graph.createEdge(graph.getNodes().get(i), graph.getNodes().get((i + 1) % NODES_NUM));
+        }
+        for (int i = 0; i < NODES_NUM; i++) {
+            graph.getNodes().get(i).addEvent(i % 2 == 0 ? new ChangeOfMindEvent() : new FogEvent());
+            graph.getEdges().get(i).addEvent(new FogEvent());
+        }
+        ArmyRandom random = new ArmyRandom(SEED);
+        for (int i = 0; i < 3 * NODES_NUM; i++) {
+            Node node = graph.getNodes().get(i * 3 % NODES_NUM);
+            Faction faction = Faction.createRandomFaction(i % 2, random);
+            int unitsNum = 50 + 10 * i;
+            graph.addArmy(node, i % 4 < 2 ? Army.createCompressed(unitsNum, faction, node, random.split())
+                    : new Army(unitsNum, faction, node, random.split()));
+        }
+        return graph;
+    }
+
+    /**
+     * Describe every army of a graph, location by location in the order of their armies, and check that the counts of
+     * the graph match its armies.
+     * @param graph The graph.
+     * @param names The number of every army seen so far, to tell armies apart. New armies are added to it.
+     * @return The description.
+     */
+    private static String describe(Graph graph, Map<Army, Integer> names) {
+        StringBuilder description = new StringBuilder();
+        int[] armiesNum = new int[2];
+        long[] unitsNum = new long[2];
+        List<ArmyLocation> locations = new ArrayList<>(graph.getNodes());
+        locations.addAll(graph.getEdges());
+        for (ArmyLocation location : locations) {
+            description.append(location instanceof Node node ? node.getName() : ((Edge) location).getName())
+                    .append(':');
+            for (Army army : location.getArmiesPresent()) {
+                assertEquals(location, army.getLocation(), "location of an army");
+                int team = army.getFaction().getTeamNum();
+                armiesNum[team]++;
+                unitsNum[team] += army.getUnitsNum();
+                description.append(" army ").append(names.computeIfAbsent(army, unknown -> names.size()))
+                        .append(army.isCompressed() ? " compressed " : " ").append(army.getUnitsNum())
+                        .append(" units, damage ").append(army.getTotalDamage())
+                        .append(", health ").append(army.getTotalHealth()).append(", to ")
+                        .append(army.getOnWayTo() == null ? "-" : army.getOnWayTo().getName());
+            }
+            description.append('\n');
+        }
+        for (int team = 0; team < 2; team++) {
+            assertEquals(armiesNum[team], graph.getArmiesNum(team), "armies of team " + team + " in the graph");
+            assertEquals(unitsNum[team], graph.getUnitsNum(team), "units of team " + team + " in the graph");
+        }
+        return description.toString();
+    }
+}